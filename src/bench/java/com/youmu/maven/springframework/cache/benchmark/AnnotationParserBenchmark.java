@@ -0,0 +1,58 @@
+package com.youmu.maven.springframework.cache.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.interceptor.CacheOperation;
+
+import com.youmu.maven.springframework.cache.benchmark.BenchmarkCaches.DefaultUserService;
+import com.youmu.maven.springframework.cache.parser.ExpireableCacheAnnotationParser;
+
+/**
+ * @Author: YOUMU
+ * @Description: {@link ExpireableCacheAnnotationParser} parsing a method with
+ *               a default key and one with a SpEL key
+ * @Date: 2017/10/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class AnnotationParserBenchmark {
+
+    private ExpireableCacheAnnotationParser parser;
+
+    private Method defaultKey;
+
+    private Method spelKey;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        parser = new ExpireableCacheAnnotationParser();
+        defaultKey = DefaultUserService.class.getMethod("find", Long.class);
+        spelKey = DefaultUserService.class.getMethod("findByKey", Long.class);
+    }
+
+    @Benchmark
+    public Collection<CacheOperation> parseDefaultKey() {
+        return parser.parseCacheAnnotations(defaultKey);
+    }
+
+    @Benchmark
+    public Collection<CacheOperation> parseSpelKey() {
+        return parser.parseCacheAnnotations(spelKey);
+    }
+}
@@ -0,0 +1,92 @@
+package com.youmu.maven.springframework.cache.benchmark;
+
+import java.util.Collections;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import com.youmu.maven.springframework.cache.annotation.ExpireableCachePut;
+import com.youmu.maven.springframework.cache.annotation.ExpireableCacheable;
+import com.youmu.maven.springframework.cache.cache.LocalExpireableCache;
+import com.youmu.maven.springframework.cache.support.redis.FakeRedisConnectionFactory;
+import com.youmu.maven.springframework.cache.support.redis.RedisExpireableCacheManager;
+
+/**
+ * @Author: YOUMU
+ * @Description: the cache managers and the annotated service shared by the
+ *               benchmarks, an in-heap {@link LocalExpireableCache} and a
+ *               {@link RedisExpireableCacheManager} over an in-process redis
+ * @Date: 2017/10/18
+ */
+public final class BenchmarkCaches {
+
+    private BenchmarkCaches() {
+    }
+
+    public static CacheManager localCacheManager() {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(Collections.singletonList(
+                new LocalExpireableCache("user", 100000, Long.MAX_VALUE, null, 0, true)));
+        cacheManager.afterPropertiesSet();
+        return cacheManager;
+    }
+
+    public static RedisExpireableCacheManager redisCacheManager() {
+        FakeRedisConnectionFactory connectionFactory = new FakeRedisConnectionFactory();
+        connectionFactory.setRecording(false);
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        RedisExpireableCacheManager cacheManager = new RedisExpireableCacheManager(redisTemplate);
+        cacheManager.afterPropertiesSet();
+        return cacheManager;
+    }
+
+    public interface UserService {
+
+        String find(Long id);
+
+        String findByKey(Long id);
+
+        String findMissing(Long id);
+
+        String save(Long id);
+
+        void delete(Long id);
+    }
+
+    public static class DefaultUserService implements UserService {
+
+        @Override
+        @ExpireableCacheable(value = "user", expire = 60)
+        public String find(Long id) {
+            return "user" + id;
+        }
+
+        @Override
+        @ExpireableCacheable(value = "user", expire = 60, key = "'user:' + #id")
+        public String findByKey(Long id) {
+            return "user" + id;
+        }
+
+        @Override
+        @ExpireableCacheable(value = "user", expire = 60, key = "'missing:' + #id",
+                unless = "#result == null")
+        public String findMissing(Long id) {
+            return null;
+        }
+
+        @Override
+        @ExpireableCachePut(value = "user", expire = 60)
+        public String save(Long id) {
+            return "user" + id;
+        }
+
+        @Override
+        @CacheEvict("user")
+        public void delete(Long id) {
+        }
+    }
+}
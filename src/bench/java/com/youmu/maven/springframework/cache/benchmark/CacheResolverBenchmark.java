@@ -0,0 +1,96 @@
+package com.youmu.maven.springframework.cache.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.CacheOperation;
+import org.springframework.cache.interceptor.CacheOperationInvocationContext;
+
+import com.youmu.maven.springframework.cache.benchmark.BenchmarkCaches.DefaultUserService;
+import com.youmu.maven.springframework.cache.parser.ExpireableCacheAnnotationParser;
+import com.youmu.maven.springframework.cache.support.redis.DataRedisCacheResolver;
+
+/**
+ * @Author: YOUMU
+ * @Description: {@link DataRedisCacheResolver#resolveCaches} of an operation
+ *               resolved before, and the resolution of its decorated caches
+ * @Date: 2017/10/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class CacheResolverBenchmark {
+
+    private ExposedCacheResolver resolver;
+
+    private CacheOperationInvocationContext<CacheOperation> context;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        resolver = new ExposedCacheResolver(BenchmarkCaches.redisCacheManager());
+        final Method method = DefaultUserService.class.getMethod("find", Long.class);
+        final CacheOperation operation = new ExpireableCacheAnnotationParser()
+                .parseCacheAnnotations(method).iterator().next();
+        final Object target = new DefaultUserService();
+        context = new CacheOperationInvocationContext<CacheOperation>() {
+            @Override
+            public CacheOperation getOperation() {
+                return operation;
+            }
+
+            @Override
+            public Object getTarget() {
+                return target;
+            }
+
+            @Override
+            public Method getMethod() {
+                return method;
+            }
+
+            @Override
+            public Object[] getArgs() {
+                return new Object[] { 1L };
+            }
+        };
+        resolver.resolveCaches(context);
+    }
+
+    @Benchmark
+    public Collection<? extends Cache> resolveCached() {
+        return resolver.resolveCaches(context);
+    }
+
+    @Benchmark
+    public Collection<? extends Cache> resolveUncached() {
+        return resolver.resolveUncached(context);
+    }
+
+    private static final class ExposedCacheResolver extends DataRedisCacheResolver {
+
+        private ExposedCacheResolver(CacheManager cacheManager) {
+            super(cacheManager);
+        }
+
+        private Collection<? extends Cache> resolveUncached(
+                CacheOperationInvocationContext<?> context) {
+            return doResolveCaches(context);
+        }
+    }
+}
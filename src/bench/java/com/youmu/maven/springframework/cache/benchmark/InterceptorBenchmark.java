@@ -0,0 +1,89 @@
+package com.youmu.maven.springframework.cache.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.cache.annotation.AnnotationCacheOperationSource;
+
+import com.youmu.maven.springframework.cache.benchmark.BenchmarkCaches.DefaultUserService;
+import com.youmu.maven.springframework.cache.benchmark.BenchmarkCaches.UserService;
+import com.youmu.maven.springframework.cache.interceptor.CustomableCacheInterceptor;
+import com.youmu.maven.springframework.cache.parser.ExpireableCacheAnnotationParser;
+import com.youmu.maven.springframework.cache.support.redis.DataRedisCacheResolver;
+
+/**
+ * @Author: YOUMU
+ * @Description: an invocation through {@link CustomableCacheInterceptor} on
+ *               the hit, miss, put and evict paths, with a default key and a
+ *               SpEL key, against the local and the redis caches
+ * @Date: 2017/10/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class InterceptorBenchmark {
+
+    @Param({ "local", "redis" })
+    public String backend;
+
+    private UserService userService;
+
+    @Setup
+    public void setUp() {
+        CustomableCacheInterceptor interceptor = new CustomableCacheInterceptor();
+        interceptor.setCacheOperationSources(
+                new AnnotationCacheOperationSource(new ExpireableCacheAnnotationParser()));
+        if ("redis".equals(backend)) {
+            interceptor.setCacheResolver(
+                    new DataRedisCacheResolver(BenchmarkCaches.redisCacheManager()));
+        } else {
+            interceptor.setCacheManager(BenchmarkCaches.localCacheManager());
+        }
+        interceptor.afterPropertiesSet();
+        interceptor.afterSingletonsInstantiated();
+        ProxyFactory proxyFactory = new ProxyFactory(new DefaultUserService());
+        proxyFactory.addAdvice(interceptor);
+        userService = (UserService) proxyFactory.getProxy();
+        userService.find(1L);
+        userService.findByKey(1L);
+    }
+
+    @Benchmark
+    public String hitDefaultKey() {
+        return userService.find(1L);
+    }
+
+    @Benchmark
+    public String hitSpelKey() {
+        return userService.findByKey(1L);
+    }
+
+    @Benchmark
+    public String miss() {
+        return userService.findMissing(1L);
+    }
+
+    @Benchmark
+    public String put() {
+        return userService.save(2L);
+    }
+
+    @Benchmark
+    public void evict() {
+        userService.delete(3L);
+    }
+}
@@ -0,0 +1,96 @@
+package com.youmu.maven.springframework.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.interceptor.CacheOperation;
+
+import com.youmu.maven.springframework.cache.utils.CacheUtils;
+
+/**
+ * @Author: YOUMU
+ * @Description: the operation of a method annotated with
+ *               {@link com.youmu.maven.springframework.cache.annotation.ExpireableBatchCacheable},
+ *               caching the value of every id of its collection
+ *               argument under its own key in every cache of the operation
+ * @Date: 2017/10/13
+ */
+public class ExpireableBatchCacheableOperation extends CacheOperation implements Expireable {
+
+    private final long expire;
+
+    private final TimeUnit timeUnit;
+
+    private final int argument;
+
+    private final String resultKey;
+
+    public ExpireableBatchCacheableOperation(Builder b) {
+        super(b);
+        this.expire = b.expire;
+        this.timeUnit = b.timeUnit;
+        this.argument = b.argument;
+        this.resultKey = b.resultKey;
+    }
+
+    @Override
+    public long getExpire() {
+        return expire;
+    }
+
+    @Override
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    public int getArgument() {
+        return argument;
+    }
+
+    public String getResultKey() {
+        return resultKey;
+    }
+
+    public static class Builder extends CacheOperation.Builder {
+
+        private long expire;
+
+        private TimeUnit timeUnit;
+
+        private int argument = -1;
+
+        private String resultKey;
+
+        public void setExpire(long expire) {
+            this.expire = expire;
+        }
+
+        public void setTimeUnit(TimeUnit timeUnit) {
+            this.timeUnit = timeUnit;
+        }
+
+        public void setArgument(int argument) {
+            this.argument = argument;
+        }
+
+        public void setResultKey(String resultKey) {
+            this.resultKey = resultKey;
+        }
+
+        @Override
+        protected StringBuilder getOperationDescription() {
+            StringBuilder sb = CacheUtils.addExpireableDesc(super.getOperationDescription(),
+                    this.expire, this.timeUnit);
+            sb.append(" | argument='");
+            sb.append(this.argument);
+            sb.append("' | resultKey='");
+            sb.append(this.resultKey);
+            sb.append("'");
+            return sb;
+        }
+
+        @Override
+        public ExpireableBatchCacheableOperation build() {
+            return new ExpireableBatchCacheableOperation(this);
+        }
+    }
+}
@@ -16,10 +16,19 @@ public class ExpireableCacheableOperation extends CacheableOperation implements
 
     private TimeUnit timeUnit;
 
+    private double beta;
+
+    private long refreshAfter;
+
+    private long staleIfError;
+
     public ExpireableCacheableOperation(Builder b) {
         super(b);
         this.expire = b.expire;
         this.timeUnit = b.timeUnit;
+        this.beta = b.beta;
+        this.refreshAfter = b.refreshAfter;
+        this.staleIfError = b.staleIfError;
     }
 
     @Override
@@ -32,12 +41,61 @@ public class ExpireableCacheableOperation extends CacheableOperation implements
         return timeUnit;
     }
 
+    public double getBeta() {
+        return beta;
+    }
+
+    public long getRefreshAfter() {
+        return refreshAfter;
+    }
+
+    /**
+     * @return the refresh after write in milliseconds, {@code 0} if disabled
+     */
+    public long getRefreshAfterMillis() {
+        return refreshAfter > 0 && null != timeUnit ? timeUnit.toMillis(refreshAfter) : 0;
+    }
+
+    public long getStaleIfError() {
+        return staleIfError;
+    }
+
+    /**
+     * @return how long an expired value may still be served when the method
+     *         throws in milliseconds, {@code 0} if disabled
+     */
+    public long getStaleIfErrorMillis() {
+        return staleIfError > 0 && expire > 0 && null != timeUnit
+                ? timeUnit.toMillis(staleIfError) : 0;
+    }
+
+    /**
+     * @return whether reads may refresh the value before it expires
+     */
+    public boolean isRefreshAhead() {
+        return beta > 0 && expire > 0;
+    }
+
+    /**
+     * @return whether the cached value is stored as an
+     *         {@link com.youmu.maven.springframework.cache.cache.ExpireableValue}
+     */
+    public boolean isValueWrapped() {
+        return isRefreshAhead() || getRefreshAfterMillis() > 0 || getStaleIfErrorMillis() > 0;
+    }
+
     public static class Builder extends CacheableOperation.Builder {
 
         private long expire;
 
         private TimeUnit timeUnit;
 
+        private double beta;
+
+        private long refreshAfter;
+
+        private long staleIfError;
+
         public void setExpire(long expire) {
             this.expire = expire;
         }
@@ -46,10 +104,30 @@ public class ExpireableCacheableOperation extends CacheableOperation implements
             this.timeUnit = timeUnit;
         }
 
+        public void setBeta(double beta) {
+            this.beta = beta;
+        }
+
+        public void setRefreshAfter(long refreshAfter) {
+            this.refreshAfter = refreshAfter;
+        }
+
+        public void setStaleIfError(long staleIfError) {
+            this.staleIfError = staleIfError;
+        }
+
         @Override
         protected StringBuilder getOperationDescription() {
-            return CacheUtils.addExpireableDesc(super.getOperationDescription(), this.expire,
-                    this.timeUnit);
+            StringBuilder sb = CacheUtils.addExpireableDesc(super.getOperationDescription(),
+                    this.expire, this.timeUnit);
+            sb.append(" | beta='");
+            sb.append(this.beta);
+            sb.append("' | refreshAfter='");
+            sb.append(this.refreshAfter);
+            sb.append("' | staleIfError='");
+            sb.append(this.staleIfError);
+            sb.append("'");
+            return sb;
         }
 
         @Override
@@ -0,0 +1,58 @@
+package com.youmu.maven.springframework.cache.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.annotation.AliasFor;
+
+/**
+ * @Author: YOUMU
+ * @Description: caches a method taking a collection of ids per id, like
+ *               {@code List<User> findUsers(List<Long> ids)}. The cached ids
+ *               are read in one batch, the method is invoked with the missing
+ *               ids only and its values are written back in one batch. Every
+ *               id is its own cache key, the same key a single-id method
+ *               cached with the default key generator uses. The method returns
+ *               a {@link java.util.Collection} or a {@link java.util.Map} by id
+ * @Date: 2017/10/13
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface ExpireableBatchCacheable {
+
+    @AliasFor("cacheNames")
+    String[] value() default {};
+
+    @AliasFor("value")
+    String[] cacheNames() default {};
+
+    String cacheManager() default "";
+
+    String cacheResolver() default "";
+
+    String condition() default "";
+
+    long expire() default 0;
+
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     * the index of the collection of ids among the parameters, {@code -1} for
+     * the first collection parameter
+     */
+    int argument() default -1;
+
+    /**
+     * the property of a returned element holding its id, when the method
+     * returns a collection. Empty means the method returns the values in the
+     * order of the ids, one per id
+     */
+    String resultKey() default "";
+}
@@ -45,4 +45,29 @@ public @interface ExpireableCacheable {
 
     TimeUnit timeUnit() default TimeUnit.SECONDS;
 
+    /**
+     * probabilistic early refresh (XFetch), a read close to the expire
+     * recomputes the value with a probability growing with {@code beta} and
+     * the time the last computation took, while the other callers keep the
+     * cached value. {@code 0} disables it, {@code 1} is the usual setting, it
+     * needs an {@link #expire()}
+     */
+    double beta() default 0;
+
+    /**
+     * refresh after write, in {@link #timeUnit()}. A read of an entry older
+     * than this gets the cached value while the method is invoked again in the
+     * background, at most once at a time per entry. {@code 0} disables it
+     * @see com.youmu.maven.springframework.cache.interceptor.CustomableCacheInterceptor#setRefreshExecutor
+     */
+    long refreshAfter() default 0;
+
+    /**
+     * stale if error, in {@link #timeUnit()}. Entries are kept this much
+     * longer than the {@link #expire()}, and once expired they are only
+     * returned when the method throws. {@code 0} disables it, it needs an
+     * {@link #expire()} and does not support {@link #sync()}
+     */
+    long staleIfError() default 0;
+
 }
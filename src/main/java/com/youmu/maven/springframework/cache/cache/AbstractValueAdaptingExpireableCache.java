@@ -1,13 +1,24 @@
 package com.youmu.maven.springframework.cache.cache;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import org.springframework.cache.support.AbstractValueAdaptingCache;
 
+import com.youmu.maven.springframework.cache.utils.SingleFlight;
+
 /**
  * @Author: YOUMU
  * @Description:
  * @Date: 2017/09/19
  */
-public abstract class AbstractValueAdaptingExpireableCache extends AbstractValueAdaptingCache implements ExpireableCache {
+public abstract class AbstractValueAdaptingExpireableCache extends AbstractValueAdaptingCache implements BatchExpireableCache {
+
+	private final SingleFlight loads = new SingleFlight();
+
 	/**
 	 * Create an {@code AbstractValueAdaptingCache} with the given setting.
 	 *
@@ -16,4 +27,79 @@ public abstract class AbstractValueAdaptingExpireableCache extends AbstractValue
 	protected AbstractValueAdaptingExpireableCache(boolean allowNullValues) {
 		super(allowNullValues);
 	}
+
+	@Override
+	public void put(Object key, Object value) {
+		put(key, value, 0);
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		return putIfAbsent(key, value, 0);
+	}
+
+	/**
+	 * Look the keys up one by one, subclasses with a batch read should
+	 * override it.
+	 */
+	@Override
+	public List<ValueWrapper> getAll(Collection<?> keys) {
+		List<ValueWrapper> values = new ArrayList<>(keys.size());
+		for (Object key : keys) {
+			values.add(get(key));
+		}
+		return values;
+	}
+
+	/**
+	 * Write the entries one by one, subclasses with a batch write should
+	 * override it.
+	 */
+	@Override
+	public void putAll(Map<?, ?> entries, long expire) {
+		for (Map.Entry<?, ?> entry : entries.entrySet()) {
+			put(entry.getKey(), entry.getValue(), expire);
+		}
+	}
+
+	/**
+	 * Evict the keys one by one, subclasses with a batch delete should
+	 * override it.
+	 */
+	@Override
+	public void evictAll(Collection<?> keys) {
+		for (Object key : keys) {
+			evict(key);
+		}
+	}
+
+	/**
+	 * Load the value of a key only once at a time in this jvm, subclasses with
+	 * a distributed lock should override it.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(final Object key, final Callable<T> valueLoader) {
+		ValueWrapper cached = get(key);
+		if (null != cached) {
+			return (T) cached.get();
+		}
+		return loads.execute(key, new Callable<T>() {
+			@Override
+			public T call() {
+				ValueWrapper cached = get(key);
+				if (null != cached) {
+					return (T) cached.get();
+				}
+				T value;
+				try {
+					value = valueLoader.call();
+				} catch (Throwable ex) {
+					throw new ValueRetrievalException(key, valueLoader, ex);
+				}
+				put(key, value);
+				return value;
+			}
+		});
+	}
 }
@@ -0,0 +1,33 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: YOUMU
+ * @Description: an {@link ExpireableCache} reading and writing many keys in
+ *               one round trip, used by
+ *               {@link com.youmu.maven.springframework.cache.annotation.ExpireableBatchCacheable}
+ * @Date: 2017/10/13
+ */
+public interface BatchExpireableCache extends ExpireableCache {
+
+    /**
+     * @param keys the keys to look up
+     * @return the entries in the order of the keys, {@code null} for a miss
+     */
+    public List<ValueWrapper> getAll(Collection<?> keys);
+
+    /**
+     * @param entries the values by key
+     * @param expire the time to live of every entry in milliseconds,
+     *            {@code <= 0} means the cache default applies
+     */
+    public void putAll(Map<?, ?> entries, long expire);
+
+    /**
+     * @param keys the keys to remove
+     */
+    public void evictAll(Collection<?> keys);
+}
@@ -0,0 +1,198 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.youmu.maven.springframework.cache.metrics.CacheMetrics;
+
+/**
+ * @Author: YOUMU
+ * @Description: the circuit breaker of one cache name. A call slower than the
+ *               read timeout or failing counts as a failure, once the failures
+ *               of the last calls pass the threshold the circuit opens and the
+ *               cache is bypassed for the open duration, then a few probes are
+ *               let through and close it again if they all succeed. Calls are
+ *               counted without locking, only the transitions are synchronized
+ * @Date: 2017/10/19
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final long readTimeoutNanos;
+
+    private final int failureRateThreshold;
+
+    private final long openDurationNanos;
+
+    private final int halfOpenProbes;
+
+    private final CacheMetrics metrics;
+
+    private final int windowSize;
+
+    // replaced on every transition
+    private volatile Permit permit;
+
+    /**
+     * @param name the cache name
+     * @param readTimeout the milliseconds a call may take before it counts as
+     *            a failure
+     * @param failureRateThreshold the percentage of failed calls of the window
+     *            opening the circuit
+     * @param windowSize the number of last calls the failure rate is taken
+     *            over, the circuit never opens before as many calls
+     * @param openDuration the milliseconds the cache is bypassed before it is
+     *            probed
+     * @param halfOpenProbes the number of successful probes closing the
+     *            circuit
+     * @param metrics the receiver of the state changes, {@code null} for none
+     */
+    public CircuitBreaker(String name, long readTimeout, int failureRateThreshold, int windowSize,
+            long openDuration, int halfOpenProbes, CacheMetrics metrics) {
+        Assert.isTrue(readTimeout > 0, "readTimeout must be positive");
+        Assert.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 100,
+                "failureRateThreshold must be between 1 and 100");
+        Assert.isTrue(windowSize > 0, "windowSize must be positive");
+        Assert.isTrue(halfOpenProbes > 0, "halfOpenProbes must be positive");
+        this.name = name;
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeout);
+        this.failureRateThreshold = failureRateThreshold;
+        this.windowSize = windowSize;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.halfOpenProbes = halfOpenProbes;
+        this.metrics = metrics;
+        this.permit = new Permit(State.CLOSED, windowSize);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return permit.state;
+    }
+
+    /**
+     * @return the permit of the state admitting the call, {@code null} if the
+     *         cache may not be called. Every permitted call must be followed by
+     *         {@link #onSuccess} or {@link #onFailure} with the permit
+     */
+    public Permit tryAcquire() {
+        Permit permit = this.permit;
+        if (permit.state == State.CLOSED) {
+            return permit;
+        }
+        if (permit.state == State.OPEN) {
+            if (System.nanoTime() - permit.since < openDurationNanos) {
+                return null;
+            }
+            permit = transition(permit, State.HALF_OPEN);
+            if (permit.state != State.HALF_OPEN) {
+                return permit.state == State.CLOSED ? permit : null;
+            }
+        }
+        return permit.probes.incrementAndGet() <= halfOpenProbes ? permit : null;
+    }
+
+    /**
+     * @param startNanos the {@link System#nanoTime()} the call started at
+     */
+    public void onSuccess(Permit permit, long startNanos) {
+        record(permit, System.nanoTime() - startNanos > readTimeoutNanos);
+    }
+
+    public void onFailure(Permit permit) {
+        record(permit, true);
+    }
+
+    /**
+     * Lock free but for the transitions, a call admitted by a previous state
+     * is ignored, so calls admitted while closed and completing while half
+     * open are not taken for probes.
+     */
+    private void record(Permit permit, boolean failure) {
+        if (permit != this.permit) {
+            return;
+        }
+        if (permit.state == State.CLOSED) {
+            long call = permit.calls.getAndIncrement();
+            int outcome = failure ? 1 : 0;
+            int failures = permit.failures.addAndGet(
+                    outcome - permit.outcomes.getAndSet((int) (call % windowSize), outcome));
+            if (call + 1 >= windowSize && failures * 100 >= failureRateThreshold * windowSize) {
+                transition(permit, State.OPEN);
+            }
+        } else if (permit.state == State.HALF_OPEN) {
+            if (failure) {
+                transition(permit, State.OPEN);
+            } else if (permit.probeSuccesses.incrementAndGet() == halfOpenProbes) {
+                transition(permit, State.CLOSED);
+            }
+        }
+    }
+
+    /**
+     * @return the current permit, the one of the new state unless another
+     *         thread left the expected state first
+     */
+    private synchronized Permit transition(Permit expected, State to) {
+        if (permit != expected) {
+            return permit;
+        }
+        State from = expected.state;
+        permit = new Permit(to, windowSize);
+        if (to == State.OPEN) {
+            logger.warn(">>>>>>>>>>circuit of cache '" + name + "' " + from + " -> " + to);
+        } else {
+            logger.info(">>>>>>>>>>circuit of cache '" + name + "' " + from + " -> " + to);
+        }
+        if (null != metrics) {
+            metrics.recordStateChange(name, from, to);
+        }
+        return permit;
+    }
+
+    /**
+     * Tags the calls admitted by one state of the breaker, and counts their
+     * outcomes.
+     */
+    public static final class Permit {
+
+        private final State state;
+
+        private final long since = System.nanoTime();
+
+        // the outcomes of the last calls while closed, 1 for a failure
+        private final AtomicIntegerArray outcomes;
+
+        private final AtomicLong calls = new AtomicLong();
+
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private final AtomicInteger probes = new AtomicInteger();
+
+        private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+        private Permit(State state, int windowSize) {
+            this.state = state;
+            this.outcomes = state == State.CLOSED ? new AtomicIntegerArray(windowSize) : null;
+        }
+
+        public State getState() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.springframework.cache.Cache;
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: guards a remote cache with a {@link CircuitBreaker}. While the
+ *               circuit is open every read is a miss and every write becomes
+ *               an eviction of its keys, so the callers invoke their methods
+ *               directly instead of waiting on a slow redis. Evictions and
+ *               clears always go through, a cache coming back must not serve
+ *               what was removed or written meanwhile
+ * @Date: 2017/10/19
+ */
+public class CircuitBreakerExpireableCache implements BatchExpireableCache {
+
+    private final Cache targetCache;
+
+    private final CircuitBreaker circuitBreaker;
+
+    public CircuitBreakerExpireableCache(Cache targetCache, CircuitBreaker circuitBreaker) {
+        Assert.notNull(targetCache, "Target Cache must not be null");
+        Assert.notNull(circuitBreaker, "CircuitBreaker must not be null");
+        this.targetCache = targetCache;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public Cache getTargetCache() {
+        return targetCache;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Override
+    public String getName() {
+        return targetCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return targetCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (null == permit) {
+            return null;
+        }
+        long startNanos = System.nanoTime();
+        ValueWrapper value;
+        try {
+            value = targetCache.get(key);
+        } catch (RuntimeException ex) {
+            circuitBreaker.onFailure(permit);
+            throw ex;
+        }
+        circuitBreaker.onSuccess(permit, startNanos);
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper value = get(key);
+        Object cached = null == value ? null : value.get();
+        if (cached != null && type != null && !type.isInstance(cached)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + cached);
+        }
+        return (T) cached;
+    }
+
+    /**
+     * Looks up and writes through the breaker, the loader is not timed.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (null != cached) {
+            return (T) cached.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Throwable ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return putIfAbsent(key, value, 0);
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (null == permit) {
+            // the value in the target is older than the skipped write
+            evict(key);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            if (expire > 0 && targetCache instanceof ExpireableCache) {
+                ((ExpireableCache) targetCache).put(key, value, expire);
+            } else {
+                targetCache.put(key, value);
+            }
+        } catch (RuntimeException ex) {
+            circuitBreaker.onFailure(permit);
+            throw ex;
+        }
+        circuitBreaker.onSuccess(permit, startNanos);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (null == permit) {
+            // the caller keeps its value, the target must not keep another
+            evict(key);
+            return null;
+        }
+        long startNanos = System.nanoTime();
+        ValueWrapper existing;
+        try {
+            if (expire > 0 && targetCache instanceof ExpireableCache) {
+                existing = ((ExpireableCache) targetCache).putIfAbsent(key, value, expire);
+            } else {
+                existing = targetCache.putIfAbsent(key, value);
+            }
+        } catch (RuntimeException ex) {
+            circuitBreaker.onFailure(permit);
+            throw ex;
+        }
+        circuitBreaker.onSuccess(permit, startNanos);
+        return existing;
+    }
+
+    @Override
+    public List<ValueWrapper> getAll(Collection<?> keys) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (null == permit) {
+            return Collections.nCopies(keys.size(), null);
+        }
+        long startNanos = System.nanoTime();
+        List<ValueWrapper> values;
+        try {
+            if (targetCache instanceof BatchExpireableCache) {
+                values = ((BatchExpireableCache) targetCache).getAll(keys);
+            } else {
+                values = new ArrayList<>(keys.size());
+                for (Object key : keys) {
+                    values.add(targetCache.get(key));
+                }
+            }
+        } catch (RuntimeException ex) {
+            circuitBreaker.onFailure(permit);
+            throw ex;
+        }
+        circuitBreaker.onSuccess(permit, startNanos);
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries, long expire) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (null == permit) {
+            evictAll(entries.keySet());
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            if (targetCache instanceof BatchExpireableCache) {
+                ((BatchExpireableCache) targetCache).putAll(entries, expire);
+            } else {
+                for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                    if (expire > 0 && targetCache instanceof ExpireableCache) {
+                        ((ExpireableCache) targetCache).put(entry.getKey(), entry.getValue(),
+                                expire);
+                    } else {
+                        targetCache.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            circuitBreaker.onFailure(permit);
+            throw ex;
+        }
+        circuitBreaker.onSuccess(permit, startNanos);
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        if (targetCache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) targetCache).evictAll(keys);
+            return;
+        }
+        for (Object key : keys) {
+            targetCache.evict(key);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        targetCache.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        targetCache.clear();
+    }
+}
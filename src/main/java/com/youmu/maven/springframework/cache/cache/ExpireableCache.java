@@ -4,7 +4,9 @@ import org.springframework.cache.Cache;
 
 /**
  * @Author: YOUMU
- * @Description:
+ * @Description: a {@link Cache} whose writes may carry their own time to live,
+ *               the {@code expire} is always in milliseconds and a value
+ *               {@code <= 0} means the cache default applies
  * @Date: 2017/09/19
  */
 public interface ExpireableCache extends Cache {
@@ -0,0 +1,156 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.springframework.util.Assert;
+
+import com.youmu.maven.springframework.cache.utils.SingleFlight;
+
+/**
+ * @Author: YOUMU
+ * @Description: binds the expire of one cache operation to a shared
+ *               {@link ExpireableCache}, so every plain {@link #put} of the
+ *               operation carries its own time to live
+ * @Date: 2017/09/27
+ */
+public class ExpireableCacheDecorator implements BatchExpireableCache {
+
+    private final ExpireableCache targetCache;
+
+    private final long expire;
+
+    private final SingleFlight loads = new SingleFlight();
+
+    /**
+     * @param targetCache the shared cache of the cache name
+     * @param expire the expire of the operation in milliseconds
+     */
+    public ExpireableCacheDecorator(ExpireableCache targetCache, long expire) {
+        Assert.notNull(targetCache, "Target Cache must not be null");
+        this.targetCache = targetCache;
+        this.expire = expire;
+    }
+
+    public ExpireableCache getTargetCache() {
+        return targetCache;
+    }
+
+    public long getExpire() {
+        return expire;
+    }
+
+    @Override
+    public String getName() {
+        return targetCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return targetCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return targetCache.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return targetCache.get(key, type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Callable<T> valueLoader) {
+        ValueWrapper cached = targetCache.get(key);
+        if (null != cached) {
+            return (T) cached.get();
+        }
+        return loads.execute(key, new Callable<T>() {
+            @Override
+            public T call() {
+                ValueWrapper cached = targetCache.get(key);
+                if (null != cached) {
+                    return (T) cached.get();
+                }
+                T value;
+                try {
+                    value = valueLoader.call();
+                } catch (Throwable ex) {
+                    throw new ValueRetrievalException(key, valueLoader, ex);
+                }
+                put(key, value);
+                return value;
+            }
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        targetCache.put(key, value, expire);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return targetCache.putIfAbsent(key, value, expire);
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        targetCache.put(key, value, expire);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        return targetCache.putIfAbsent(key, value, expire);
+    }
+
+    @Override
+    public List<ValueWrapper> getAll(Collection<?> keys) {
+        if (targetCache instanceof BatchExpireableCache) {
+            return ((BatchExpireableCache) targetCache).getAll(keys);
+        }
+        List<ValueWrapper> values = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            values.add(targetCache.get(key));
+        }
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries, long expire) {
+        long ttl = expire > 0 ? expire : this.expire;
+        if (targetCache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) targetCache).putAll(entries, ttl);
+            return;
+        }
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            targetCache.put(entry.getKey(), entry.getValue(), ttl);
+        }
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        if (targetCache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) targetCache).evictAll(keys);
+            return;
+        }
+        for (Object key : keys) {
+            targetCache.evict(key);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        targetCache.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        targetCache.clear();
+    }
+}
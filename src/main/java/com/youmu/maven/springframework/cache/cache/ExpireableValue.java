@@ -0,0 +1,85 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.io.Serializable;
+
+/**
+ * @Author: YOUMU
+ * @Description: a cached value stored with when it was computed, how long the
+ *               computation took and how long it is meant to live, the
+ *               interceptor unwraps it on every read
+ * @Date: 2017/10/09
+ */
+@SuppressWarnings("serial")
+public class ExpireableValue implements Serializable {
+
+    private Object value;
+
+    private long createTime;
+
+    private long loadTime;
+
+    private long expire;
+
+    public ExpireableValue() {
+    }
+
+    /**
+     * @param value the cached value
+     * @param createTime when the value was computed, in epoch milliseconds
+     * @param loadTime how long the computation took in milliseconds
+     * @param expire how long the value is meant to live in milliseconds,
+     *            {@code <= 0} if unknown
+     */
+    public ExpireableValue(Object value, long createTime, long loadTime, long expire) {
+        this.value = value;
+        this.createTime = createTime;
+        this.loadTime = loadTime;
+        this.expire = expire;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(long createTime) {
+        this.createTime = createTime;
+    }
+
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    public void setLoadTime(long loadTime) {
+        this.loadTime = loadTime;
+    }
+
+    public long getExpire() {
+        return expire;
+    }
+
+    public void setExpire(long expire) {
+        this.expire = expire;
+    }
+
+    /**
+     * @return when the value stops being valid in epoch milliseconds,
+     *         {@link Long#MAX_VALUE} if it never does
+     */
+    public long getExpireTime() {
+        return expire > 0 ? createTime + expire : Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpireableValue [value=" + value + ", createTime=" + createTime + ", loadTime="
+                + loadTime + ", expire=" + expire + "]";
+    }
+}
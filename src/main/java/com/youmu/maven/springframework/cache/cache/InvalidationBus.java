@@ -0,0 +1,235 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: keeps the local caches of every node coherent. Keys written or
+ *               evicted on this node are collected per cache name during a
+ *               short window and published as one message, every other node
+ *               drops them from its local cache
+ * @Date: 2017/09/29
+ */
+public class InvalidationBus implements InvalidationTransport.Listener, DisposableBean {
+
+    private static Logger logger = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final InvalidationTransport transport;
+
+    private final Map<String, ExpireableCache> localCaches = new ConcurrentHashMap<>(16);
+
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService flushExecutor;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private RedisSerializer<Object> serializer = new JdkSerializationRedisSerializer();
+
+    private long window = 10;
+
+    // guarded by this
+    private Map<String, Set<Object>> pendingKeys = new HashMap<>();
+
+    // guarded by this
+    private Set<String> pendingClears = new HashSet<>();
+
+    public InvalidationBus(InvalidationTransport transport) {
+        Assert.notNull(transport, "InvalidationTransport must not be null");
+        this.transport = transport;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cache-invalidation-bus");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        transport.subscribe(this);
+    }
+
+    /**
+     * @param window milliseconds during which invalidations are coalesced
+     */
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    public void setSerializer(RedisSerializer<Object> serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * Receive the invalidations of other nodes for the local cache.
+     */
+    public void register(ExpireableCache localCache) {
+        localCaches.put(localCache.getName(), localCache);
+    }
+
+    /**
+     * Receive the invalidations of other nodes for every cache name, whether
+     * it has a local cache here or not.
+     */
+    public void addListener(InvalidationListener listener) {
+        Assert.notNull(listener, "InvalidationListener must not be null");
+        listeners.add(listener);
+    }
+
+    public void invalidate(String cacheName, Object key) {
+        synchronized (this) {
+            if (pendingClears.contains(cacheName)) {
+                return;
+            }
+            Set<Object> keys = pendingKeys.get(cacheName);
+            if (null == keys) {
+                keys = new HashSet<>();
+                pendingKeys.put(cacheName, keys);
+            }
+            keys.add(key);
+        }
+        scheduleFlush();
+    }
+
+    public void invalidateAll(String cacheName) {
+        synchronized (this) {
+            pendingKeys.remove(cacheName);
+            pendingClears.add(cacheName);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Publish the pending invalidations now.
+     */
+    public void flush() {
+        flushScheduled.set(false);
+        Map<String, Set<Object>> keys;
+        Set<String> clears;
+        synchronized (this) {
+            if (pendingKeys.isEmpty() && pendingClears.isEmpty()) {
+                return;
+            }
+            keys = pendingKeys;
+            clears = pendingClears;
+            pendingKeys = new HashMap<>();
+            pendingClears = new HashSet<>();
+        }
+        for (String cacheName : clears) {
+            publish(new InvalidationMessage(nodeId, cacheName, true, new Object[0]));
+        }
+        for (Map.Entry<String, Set<Object>> entry : keys.entrySet()) {
+            publish(new InvalidationMessage(nodeId, entry.getKey(), false,
+                    entry.getValue().toArray()));
+        }
+    }
+
+    @Override
+    public void onMessage(byte[] body) {
+        InvalidationMessage message;
+        try {
+            message = (InvalidationMessage) serializer.deserialize(body);
+        } catch (RuntimeException ex) {
+            logger.error(">>>>>>>>>>unreadable invalidation message", ex);
+            return;
+        }
+        if (null == message || nodeId.equals(message.nodeId)) {
+            return;
+        }
+        ExpireableCache localCache = localCaches.get(message.cacheName);
+        if (message.clear) {
+            if (null != localCache) {
+                localCache.clear();
+            }
+            for (InvalidationListener listener : listeners) {
+                listener.onInvalidateAll(message.cacheName);
+            }
+        } else {
+            for (Object key : message.keys) {
+                if (null != localCache) {
+                    localCache.evict(key);
+                }
+                for (InvalidationListener listener : listeners) {
+                    listener.onInvalidate(message.cacheName, key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+        flushExecutor.shutdown();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            flushExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publish(InvalidationMessage message) {
+        try {
+            transport.publish(serializer.serialize(message));
+        } catch (RuntimeException ex) {
+            // the local entries of other nodes still die by their ttl
+            logger.error(">>>>>>>>>>publish invalidation of cache " + message.cacheName, ex);
+        }
+    }
+
+    /**
+     * Drops the copies of the keys invalidated by other nodes that are kept
+     * outside of the local caches.
+     */
+    public interface InvalidationListener {
+
+        public void onInvalidate(String cacheName, Object key);
+
+        public void onInvalidateAll(String cacheName);
+    }
+
+    @SuppressWarnings("serial")
+    static final class InvalidationMessage implements Serializable {
+
+        private final String nodeId;
+
+        private final String cacheName;
+
+        private final boolean clear;
+
+        private final Object[] keys;
+
+        InvalidationMessage(String nodeId, String cacheName, boolean clear, Object[] keys) {
+            this.nodeId = nodeId;
+            this.cacheName = cacheName;
+            this.clear = clear;
+            this.keys = keys;
+        }
+    }
+}
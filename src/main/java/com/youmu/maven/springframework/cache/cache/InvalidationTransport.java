@@ -0,0 +1,20 @@
+package com.youmu.maven.springframework.cache.cache;
+
+/**
+ * @Author: YOUMU
+ * @Description: broadcasts invalidation messages of local caches to every node
+ * @Date: 2017/09/29
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Send the message to every subscriber, the sender included.
+     */
+    public void publish(byte[] message);
+
+    public void subscribe(Listener listener);
+
+    public interface Listener {
+        public void onMessage(byte[] message);
+    }
+}
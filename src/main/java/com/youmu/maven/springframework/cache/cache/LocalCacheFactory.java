@@ -0,0 +1,15 @@
+package com.youmu.maven.springframework.cache.cache;
+
+/**
+ * @Author: YOUMU
+ * @Description: creates the in-process cache put in front of a remote cache
+ * @Date: 2017/09/28
+ */
+public interface LocalCacheFactory {
+
+    /**
+     * @param name the name of the cache
+     * @return a new local cache, it must allow {@code null} values
+     */
+    public ExpireableCache createCache(String name);
+}
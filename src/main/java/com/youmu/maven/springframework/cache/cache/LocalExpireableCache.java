@@ -0,0 +1,309 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: in-heap cache bounded by size and by weight. Entries are kept
+ *               in least recently used order per segment, and a new entry only
+ *               pushes out the eldest one when it has been seen more often
+ *               (TinyLFU admission), so a scan of cold keys can not flush the
+ *               hot ones. Every entry lives at most {@code expire}
+ *               milliseconds, whatever the write asked for, and is removed by
+ *               a {@link TimingWheel} once it expired even if nobody reads it
+ * @Date: 2017/09/28
+ */
+public class LocalExpireableCache extends AbstractValueAdaptingExpireableCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final String name;
+
+    private final long expire;
+
+    private final Weigher weigher;
+
+    private final TimingWheel timingWheel;
+
+    private final Segment[] segments;
+
+    /**
+     * @param name the name of the cache
+     * @param maximumSize the maximum number of entries
+     * @param maximumWeight the maximum total weight of entries
+     * @param weigher the weigher of entries
+     * @param expire the maximum lifetime of an entry in milliseconds,
+     *            {@code <= 0} means only the write decides
+     * @param allowNullValues whether to allow for {@code null} values
+     */
+    public LocalExpireableCache(String name, long maximumSize, long maximumWeight,
+            Weigher weigher, long expire, boolean allowNullValues) {
+        this(name, maximumSize, maximumWeight, weigher, expire, allowNullValues,
+                TimingWheel.SHARED);
+    }
+
+    /**
+     * @param timingWheel the wheel expiring the entries
+     */
+    public LocalExpireableCache(String name, long maximumSize, long maximumWeight,
+            Weigher weigher, long expire, boolean allowNullValues, TimingWheel timingWheel) {
+        super(allowNullValues);
+        Assert.hasText(name, "CacheName must not be null or empty");
+        Assert.isTrue(maximumSize > 0, "MaximumSize must be positive");
+        Assert.isTrue(maximumWeight > 0, "MaximumWeight must be positive");
+        Assert.notNull(timingWheel, "TimingWheel must not be null");
+        this.name = name;
+        this.expire = expire;
+        this.weigher = null == weigher ? Weigher.SINGLETON : weigher;
+        this.timingWheel = timingWheel;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(divideUp(maximumSize), divideUp(maximumWeight),
+                    timingWheel);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    public long getExpire() {
+        return expire;
+    }
+
+    /**
+     * @return the number of entries, expired ones not yet removed included
+     */
+    public long estimatedSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        long now = System.currentTimeMillis();
+        // outside the lock of the segment, timers take it
+        timingWheel.advanceOnAccess(now);
+        return segmentFor(key).get(key, now);
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        long now = System.currentTimeMillis();
+        timingWheel.advanceOnAccess(now);
+        Object storeValue = toStoreValue(value);
+        segmentFor(key).put(key, storeValue, weigher.weigh(key, value), deadline(expire), false,
+                now);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        long now = System.currentTimeMillis();
+        timingWheel.advanceOnAccess(now);
+        Object storeValue = toStoreValue(value);
+        Object existing = segmentFor(key).put(key, storeValue, weigher.weigh(key, value),
+                deadline(expire), true, now);
+        return toValueWrapper(existing);
+    }
+
+    @Override
+    public void evict(Object key) {
+        segmentFor(key).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private long deadline(long expire) {
+        long lifetime = expire;
+        if (this.expire > 0 && (lifetime <= 0 || lifetime > this.expire)) {
+            lifetime = this.expire;
+        }
+        return lifetime > 0 ? System.currentTimeMillis() + lifetime : 0;
+    }
+
+    private Segment segmentFor(Object key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static long divideUp(long maximum) {
+        // no overflow for Long.MAX_VALUE
+        return Math.max(1, maximum / SEGMENTS + (maximum % SEGMENTS == 0 ? 0 : 1));
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Segment extends ReentrantLock {
+
+        private final LinkedHashMap<Object, Node> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final FrequencySketch sketch;
+
+        private final long maximumSize;
+
+        private final long maximumWeight;
+
+        private final TimingWheel timingWheel;
+
+        private long weight;
+
+        private Segment(long maximumSize, long maximumWeight, TimingWheel timingWheel) {
+            this.maximumSize = maximumSize;
+            this.maximumWeight = maximumWeight;
+            this.timingWheel = timingWheel;
+            this.sketch = new FrequencySketch(maximumSize);
+        }
+
+        private Object get(Object key, long now) {
+            lock();
+            try {
+                sketch.increment(key);
+                Node node = entries.get(key);
+                if (null == node) {
+                    return null;
+                }
+                if (node.isExpired(now)) {
+                    removeNode(key);
+                    return null;
+                }
+                return node.value;
+            } finally {
+                unlock();
+            }
+        }
+
+        private Object put(Object key, Object value, int weight, long deadline,
+                boolean onlyIfAbsent, long now) {
+            lock();
+            try {
+                sketch.increment(key);
+                Node old = entries.get(key);
+                if (null != old && onlyIfAbsent && !old.isExpired(now)) {
+                    return old.value;
+                }
+                if (null != old) {
+                    this.weight -= old.weight;
+                    timingWheel.cancel(old);
+                }
+                Node node = new Node(this, key, value, weight, deadline);
+                entries.put(key, node);
+                timingWheel.schedule(node);
+                this.weight += weight;
+                evict(key, now);
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        private void evict(Object candidate, long now) {
+            while (entries.size() > maximumSize || weight > maximumWeight) {
+                Iterator<Map.Entry<Object, Node>> iterator = entries.entrySet().iterator();
+                Map.Entry<Object, Node> eldest = iterator.next();
+                Object victim = eldest.getKey();
+                if (!victim.equals(candidate) && !eldest.getValue().isExpired(now)
+                        && sketch.frequency(candidate) <= sketch.frequency(victim)) {
+                    // the candidate is not more popular than the eldest entry
+                    victim = candidate;
+                }
+                removeNode(victim);
+            }
+        }
+
+        private void remove(Object key) {
+            lock();
+            try {
+                removeNode(key);
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Remove the node of an expired timer unless it was replaced.
+         */
+        private void expire(Node node) {
+            lock();
+            try {
+                if (entries.get(node.key) == node) {
+                    removeNode(node.key);
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        private void removeNode(Object key) {
+            Node node = entries.remove(key);
+            if (null != node) {
+                weight -= node.weight;
+                timingWheel.cancel(node);
+            }
+        }
+
+        private void clear() {
+            lock();
+            try {
+                for (Node node : entries.values()) {
+                    timingWheel.cancel(node);
+                }
+                entries.clear();
+                weight = 0;
+            } finally {
+                unlock();
+            }
+        }
+
+        private int size() {
+            lock();
+            try {
+                return entries.size();
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private static final class Node extends TimingWheel.Timer {
+
+        private final Segment segment;
+
+        private final Object key;
+
+        private final Object value;
+
+        private final int weight;
+
+        private Node(Segment segment, Object key, Object value, int weight, long deadline) {
+            super(deadline);
+            this.segment = segment;
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        @Override
+        protected void expire() {
+            segment.expire(this);
+        }
+    }
+}
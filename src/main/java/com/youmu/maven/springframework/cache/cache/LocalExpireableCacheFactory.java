@@ -0,0 +1,68 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: YOUMU
+ * @Description: creates {@link LocalExpireableCache}s, by default 10000
+ *               entries living at most 60 seconds
+ * @Date: 2017/09/28
+ */
+public class LocalExpireableCacheFactory implements LocalCacheFactory {
+
+    private long maximumSize = 10000;
+
+    private long maximumWeight = Long.MAX_VALUE;
+
+    private Weigher weigher = Weigher.SINGLETON;
+
+    private long expire = 60;
+
+    private TimeUnit timeUnit = TimeUnit.SECONDS;
+
+    private TimingWheel timingWheel = TimingWheel.SHARED;
+
+    private long maintenanceInterval;
+
+    @Override
+    public ExpireableCache createCache(String name) {
+        if (maintenanceInterval > 0) {
+            timingWheel.startMaintenance(maintenanceInterval);
+        }
+        return new LocalExpireableCache(name, maximumSize, maximumWeight, weigher,
+                timeUnit.toMillis(expire), true, timingWheel);
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    public void setWeigher(Weigher weigher) {
+        this.weigher = weigher;
+    }
+
+    public void setExpire(long expire) {
+        this.expire = expire;
+    }
+
+    public void setTimeUnit(TimeUnit timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+    public void setTimingWheel(TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * @param maintenanceInterval the milliseconds between two advances of the
+     *            timing wheel by its maintenance thread, {@code <= 0} only
+     *            advances it when the caches are used
+     */
+    public void setMaintenanceInterval(long maintenanceInterval) {
+        this.maintenanceInterval = maintenanceInterval;
+    }
+}
@@ -0,0 +1,79 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import com.youmu.maven.springframework.cache.serializer.CompactRedisSerializer;
+
+/**
+ * @Author: YOUMU
+ * @Description: creates {@link MappedFileExpireableCache}s in a sub directory
+ *               per cache name, by default 64MB of files whose entries live
+ *               at most 60 seconds. The sub directory is the URL encoded
+ *               cache name, so distinct names never share one
+ * @Date: 2017/10/17
+ */
+public class MappedFileCacheFactory implements LocalCacheFactory {
+
+    private File directory;
+
+    private long capacity = 64L * 1024 * 1024;
+
+    private long expire = 60;
+
+    private TimeUnit timeUnit = TimeUnit.SECONDS;
+
+    private RedisSerializer<Object> serializer = new CompactRedisSerializer();
+
+    @Override
+    public ExpireableCache createCache(String name) {
+        Assert.notNull(directory, "Directory must not be null");
+        return new MappedFileExpireableCache(name, new File(directory, directoryName(name)),
+                capacity, timeUnit.toMillis(expire), serializer, true);
+    }
+
+    /**
+     * URL encoding is injective, the dots and stars it keeps are encoded too
+     * so no name maps to {@code .} or {@code ..}.
+     */
+    static String directoryName(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @param directory the directory of the caches, only one process may use
+     *            it at a time, the sub directory of every cache is locked
+     *            until the cache is closed
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param capacity the bytes of the files of every cache
+     */
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setExpire(long expire) {
+        this.expire = expire;
+    }
+
+    public void setTimeUnit(TimeUnit timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+    public void setSerializer(RedisSerializer<Object> serializer) {
+        this.serializer = serializer;
+    }
+}
@@ -0,0 +1,157 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: {@link OffHeapExpireableCache} whose segments are memory
+ *               mapped files of a directory. A restarted process opening the
+ *               same directory serves the entries at once, the expired ones
+ *               are dropped by their stored deadlines. The serializer must
+ *               read what the previous process wrote. The directory is
+ *               locked until {@link #close()}, a second cache opening it, in
+ *               this process or another one, fails
+ * @Date: 2017/10/17
+ */
+public class MappedFileExpireableCache extends OffHeapExpireableCache implements Closeable {
+
+    private static final String LOCK_FILE = "cache.lock";
+
+    private final MappedByteBuffer[] mappings;
+
+    private final FileLock lock;
+
+    /**
+     * @param directory the directory of the segment files of this cache only
+     * @param capacity the bytes of all segment files, a cache reopened with
+     *            another capacity starts empty
+     * @throws IllegalStateException if another cache holds the directory
+     */
+    public MappedFileExpireableCache(String name, File directory, long capacity, long expire,
+            RedisSerializer<Object> serializer, boolean allowNullValues) {
+        this(name, lock(directory), directory, segmentCapacity(capacity), expire, serializer,
+                allowNullValues);
+    }
+
+    private MappedFileExpireableCache(String name, FileLock lock, File directory,
+            int segmentCapacity, long expire, RedisSerializer<Object> serializer,
+            boolean allowNullValues) {
+        this(name, lock, mapLocked(lock, directory, segmentCapacity), expire, serializer,
+                allowNullValues);
+    }
+
+    private MappedFileExpireableCache(String name, FileLock lock, MappedByteBuffer[] mappings,
+            long expire, RedisSerializer<Object> serializer, boolean allowNullValues) {
+        super(name, mappings, expire, serializer, allowNullValues);
+        this.mappings = mappings;
+        this.lock = lock;
+    }
+
+    /**
+     * Write the segments to the disk, the entries survive a crash of the
+     * process without it but not a crash of the machine.
+     */
+    public void flush() {
+        for (MappedByteBuffer mapping : mappings) {
+            mapping.force();
+        }
+    }
+
+    /**
+     * Write the segments to the disk and release the directory, the cache
+     * must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            release(lock);
+        }
+    }
+
+    private static FileLock lock(File directory) {
+        Assert.notNull(directory, "Directory must not be null");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Can not create cache directory " + directory);
+        }
+        File file = new File(directory, LOCK_FILE);
+        FileChannel channel = null;
+        try {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            FileLock lock = channel.tryLock();
+            if (null != lock) {
+                return lock;
+            }
+        } catch (OverlappingFileLockException ex) {
+            // held by another cache of this process
+        } catch (IOException ex) {
+            closeQuietly(channel);
+            throw new IllegalStateException("Can not lock cache directory " + directory, ex);
+        }
+        closeQuietly(channel);
+        throw new IllegalStateException("Cache directory " + directory + " is in use");
+    }
+
+    private static MappedByteBuffer[] mapLocked(FileLock lock, File directory,
+            int segmentCapacity) {
+        try {
+            return map(directory, segmentCapacity);
+        } catch (RuntimeException ex) {
+            try {
+                release(lock);
+            } catch (IOException releaseEx) {
+                ex.addSuppressed(releaseEx);
+            }
+            throw ex;
+        }
+    }
+
+    private static void release(FileLock lock) throws IOException {
+        try {
+            lock.release();
+        } finally {
+            lock.channel().close();
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (null != channel) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // nothing to release
+            }
+        }
+    }
+
+    private static MappedByteBuffer[] map(File directory, int segmentCapacity) {
+        MappedByteBuffer[] mappings = new MappedByteBuffer[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            File file = new File(directory, "segment-" + i + ".dat");
+            try (RandomAccessFile segmentFile = new RandomAccessFile(file, "rw")) {
+                if (segmentFile.length() != segmentCapacity) {
+                    // written for another capacity, start over
+                    segmentFile.setLength(0);
+                    segmentFile.setLength(segmentCapacity);
+                }
+                // the mapping stays valid once the file is closed
+                mappings[i] = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                        segmentCapacity);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Can not map cache file " + file, ex);
+            }
+        }
+        return mappings;
+    }
+}
@@ -0,0 +1,50 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.youmu.maven.springframework.cache.serializer.CompactRedisSerializer;
+
+/**
+ * @Author: YOUMU
+ * @Description: creates {@link OffHeapExpireableCache}s, by default 64MB of
+ *               direct memory whose entries live at most 60 seconds. Pick it
+ *               per cache name for the caches whose values do not fit the heap
+ * @Date: 2017/10/17
+ */
+public class OffHeapCacheFactory implements LocalCacheFactory {
+
+    private long capacity = 64L * 1024 * 1024;
+
+    private long expire = 60;
+
+    private TimeUnit timeUnit = TimeUnit.SECONDS;
+
+    private RedisSerializer<Object> serializer = new CompactRedisSerializer();
+
+    @Override
+    public ExpireableCache createCache(String name) {
+        return new OffHeapExpireableCache(name, capacity, timeUnit.toMillis(expire), serializer,
+                true);
+    }
+
+    /**
+     * @param capacity the direct memory of every cache in bytes
+     */
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setExpire(long expire) {
+        this.expire = expire;
+    }
+
+    public void setTimeUnit(TimeUnit timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+    public void setSerializer(RedisSerializer<Object> serializer) {
+        this.serializer = serializer;
+    }
+}
@@ -0,0 +1,534 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.Assert;
+
+import com.youmu.maven.springframework.cache.key.EncodedKey;
+
+/**
+ * @Author: YOUMU
+ * @Description: in-process cache keeping its keys and values serialized in
+ *               direct memory, so millions of entries cost the garbage
+ *               collector nothing. Each segment appends its entries to its
+ *               own slab and finds them through an open addressing index of
+ *               int arrays. A full slab is compacted, dropping the expired
+ *               entries and then the oldest ones. Every entry lives at most
+ *               {@code expire} milliseconds, whatever the write asked for.
+ *               A slab given to the cache is read back first, so its entries
+ *               survive as long as its memory does
+ * @Date: 2017/10/17
+ */
+public class OffHeapExpireableCache extends AbstractValueAdaptingExpireableCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapExpireableCache.class);
+
+    protected static final int SEGMENTS = 16;
+
+    // magic and compacting flag at the start of every slab
+    protected static final int SLAB_HEADER = 8;
+
+    // key length, value length and deadline in front of every entry
+    private static final int HEADER = 16;
+
+    private static final int MAGIC = 0x594D4301;
+
+    // the deadline of a removed entry
+    private static final long DELETED_DEADLINE = -1;
+
+    // an encoded key is written behind a byte no serializer starts with
+    private static final byte ENCODED_KEY = 0;
+
+    private final String name;
+
+    private final long expire;
+
+    private final RedisSerializer<Object> serializer;
+
+    private final Segment[] segments;
+
+    /**
+     * @param name the name of the cache
+     * @param capacity the direct memory of the cache in bytes
+     * @param expire the maximum lifetime of an entry in milliseconds,
+     *            {@code <= 0} means only the write decides
+     * @param serializer the serializer of keys and values, equal keys must
+     *            serialize to equal bytes
+     * @param allowNullValues whether to allow for {@code null} values
+     */
+    public OffHeapExpireableCache(String name, long capacity, long expire,
+            RedisSerializer<Object> serializer, boolean allowNullValues) {
+        this(name, allocateSlabs(capacity), expire, serializer, allowNullValues);
+    }
+
+    /**
+     * @param slabs the {@link #SEGMENTS} buffers holding the entries, whatever
+     *            a previous cache left in them is read back
+     */
+    protected OffHeapExpireableCache(String name, ByteBuffer[] slabs, long expire,
+            RedisSerializer<Object> serializer, boolean allowNullValues) {
+        super(allowNullValues);
+        Assert.hasText(name, "CacheName must not be null or empty");
+        Assert.notNull(serializer, "Serializer must not be null");
+        Assert.isTrue(null != slabs && slabs.length == SEGMENTS,
+                "Slabs must be " + SEGMENTS + " buffers");
+        this.name = name;
+        this.expire = expire;
+        this.serializer = serializer;
+        this.segments = new Segment[SEGMENTS];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(slabs[i], now);
+        }
+    }
+
+    /**
+     * @return the bytes of every slab for a cache of the given capacity
+     */
+    protected static int segmentCapacity(long capacity) {
+        long segmentCapacity = (capacity + SEGMENTS - 1) / SEGMENTS;
+        Assert.isTrue(
+                segmentCapacity > SLAB_HEADER + HEADER && segmentCapacity <= Integer.MAX_VALUE,
+                "Capacity must be between " + SEGMENTS * (SLAB_HEADER + HEADER) + " and "
+                        + SEGMENTS + " * Integer.MAX_VALUE bytes");
+        return (int) segmentCapacity;
+    }
+
+    private static ByteBuffer[] allocateSlabs(long capacity) {
+        int segmentCapacity = segmentCapacity(capacity);
+        ByteBuffer[] slabs = new ByteBuffer[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            slabs[i] = ByteBuffer.allocateDirect(segmentCapacity);
+        }
+        return slabs;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    public long getExpire() {
+        return expire;
+    }
+
+    /**
+     * @return the number of entries, expired ones not yet removed included
+     */
+    public long estimatedSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        byte[] keyBytes = toKeyBytes(key);
+        int hash = hash(keyBytes);
+        byte[] valueBytes = segmentFor(hash).get(keyBytes, hash, System.currentTimeMillis());
+        if (null == valueBytes) {
+            return null;
+        }
+        try {
+            return serializer.deserialize(valueBytes);
+        } catch (SerializationException ex) {
+            // written with other serializer settings, by a previous process
+            logger.warn(">>>>>>>>>>cache {} dropped an unreadable value", name, ex);
+            evict(key);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        byte[] keyBytes = toKeyBytes(key);
+        int hash = hash(keyBytes);
+        segmentFor(hash).put(keyBytes, hash, serializer.serialize(toStoreValue(value)),
+                deadline(expire), false, System.currentTimeMillis());
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        byte[] keyBytes = toKeyBytes(key);
+        int hash = hash(keyBytes);
+        byte[] existing = segmentFor(hash).put(keyBytes, hash,
+                serializer.serialize(toStoreValue(value)), deadline(expire), true,
+                System.currentTimeMillis());
+        return null == existing ? null : toValueWrapper(serializer.deserialize(existing));
+    }
+
+    @Override
+    public void evict(Object key) {
+        byte[] keyBytes = toKeyBytes(key);
+        int hash = hash(keyBytes);
+        segmentFor(hash).remove(keyBytes, hash);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private byte[] toKeyBytes(Object key) {
+        if (key instanceof EncodedKey) {
+            byte[] encoded = ((EncodedKey) key).getBytes();
+            byte[] keyBytes = new byte[encoded.length + 1];
+            keyBytes[0] = ENCODED_KEY;
+            System.arraycopy(encoded, 0, keyBytes, 1, encoded.length);
+            return keyBytes;
+        }
+        return serializer.serialize(key);
+    }
+
+    private long deadline(long expire) {
+        long lifetime = expire;
+        if (this.expire > 0 && (lifetime <= 0 || lifetime > this.expire)) {
+            lifetime = this.expire;
+        }
+        return lifetime > 0 ? System.currentTimeMillis() + lifetime : 0;
+    }
+
+    private Segment segmentFor(int hash) {
+        // the slots of a segment use the low bits
+        return segments[(hash >>> 28) & (SEGMENTS - 1)];
+    }
+
+    private static int hash(byte[] keyBytes) {
+        int hash = Arrays.hashCode(keyBytes) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Segment extends ReentrantLock {
+
+        private static final int EMPTY = -1;
+
+        private static final int DELETED = -2;
+
+        private final ByteBuffer slab;
+
+        private int writeOffset;
+
+        private int[] hashes;
+
+        private int[] offsets;
+
+        private int size;
+
+        // live and deleted slots
+        private int used;
+
+        private byte[] chunk;
+
+        private Segment(ByteBuffer slab, long now) {
+            this.slab = slab;
+            resetIndex(16);
+            recover(now);
+        }
+
+        /**
+         * Index the entries of the slab, a slab without the magic or left
+         * while compacting starts empty.
+         */
+        private void recover(long now) {
+            if (slab.getInt(0) != MAGIC || slab.getInt(4) != 0) {
+                slab.putInt(0, MAGIC);
+                slab.putInt(4, 0);
+                reset();
+                return;
+            }
+            int offset = SLAB_HEADER;
+            while (offset + HEADER <= slab.capacity()) {
+                int keyLength = slab.getInt(offset);
+                int valueLength = slab.getInt(offset + 4);
+                if (keyLength <= 0 || valueLength < 0
+                        || (long) offset + HEADER + keyLength + valueLength > slab.capacity()) {
+                    break;
+                }
+                long deadline = slab.getLong(offset + 8);
+                if (deadline != DELETED_DEADLINE && (deadline == 0 || deadline > now)) {
+                    byte[] keyBytes = new byte[keyLength];
+                    slab.position(offset + HEADER);
+                    slab.get(keyBytes);
+                    int hash = hash(keyBytes);
+                    int slot = find(keyBytes, hash);
+                    if (slot >= 0) {
+                        delete(slot);
+                    }
+                    if ((used + 1) * 2 > offsets.length) {
+                        rebuildIndex();
+                    }
+                    insert(hash, offset);
+                }
+                offset += HEADER + keyLength + valueLength;
+            }
+            writeOffset = offset;
+            terminate();
+        }
+
+        private byte[] get(byte[] keyBytes, int hash, long now) {
+            lock();
+            try {
+                int slot = find(keyBytes, hash);
+                if (slot < 0) {
+                    return null;
+                }
+                int offset = offsets[slot];
+                if (isExpired(offset, now)) {
+                    delete(slot);
+                    return null;
+                }
+                return readValue(offset);
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * @return the value already present if only absent keys are written
+         */
+        private byte[] put(byte[] keyBytes, int hash, byte[] valueBytes, long deadline,
+                boolean onlyIfAbsent, long now) {
+            lock();
+            try {
+                int slot = find(keyBytes, hash);
+                if (slot >= 0) {
+                    int offset = offsets[slot];
+                    if (onlyIfAbsent && !isExpired(offset, now)) {
+                        return readValue(offset);
+                    }
+                    delete(slot);
+                }
+                int length = HEADER + keyBytes.length + valueBytes.length;
+                if (length > slab.capacity() - SLAB_HEADER) {
+                    // never fits, not cached
+                    return null;
+                }
+                if (writeOffset + length > slab.capacity()) {
+                    compact(length, now);
+                }
+                int offset = writeOffset;
+                slab.putInt(offset + 4, valueBytes.length);
+                slab.putLong(offset + 8, deadline);
+                slab.position(offset + HEADER);
+                slab.put(keyBytes);
+                slab.put(valueBytes);
+                writeOffset = offset + length;
+                terminate();
+                // the key length makes the entry readable, written last
+                slab.putInt(offset, keyBytes.length);
+                if ((used + 1) * 2 > offsets.length) {
+                    rebuildIndex();
+                }
+                insert(hash, offset);
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        private void remove(byte[] keyBytes, int hash) {
+            lock();
+            try {
+                int slot = find(keyBytes, hash);
+                if (slot >= 0) {
+                    delete(slot);
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        private void clear() {
+            lock();
+            try {
+                reset();
+            } finally {
+                unlock();
+            }
+        }
+
+        private int find(byte[] keyBytes, int hash) {
+            int mask = offsets.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                int offset = offsets[slot];
+                if (offset == EMPTY) {
+                    return -1;
+                }
+                if (offset != DELETED && hashes[slot] == hash && keyEquals(offset, keyBytes)) {
+                    return slot;
+                }
+            }
+        }
+
+        private void insert(int hash, int offset) {
+            int mask = offsets.length - 1;
+            int slot = hash & mask;
+            while (offsets[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            if (offsets[slot] == EMPTY) {
+                used++;
+            }
+            hashes[slot] = hash;
+            offsets[slot] = offset;
+            size++;
+        }
+
+        private void delete(int slot) {
+            // the bytes of the entry are reclaimed by the next compaction
+            slab.putLong(offsets[slot] + 8, DELETED_DEADLINE);
+            offsets[slot] = DELETED;
+            size--;
+        }
+
+        private void reset() {
+            writeOffset = SLAB_HEADER;
+            terminate();
+            resetIndex(16);
+        }
+
+        /**
+         * Mark the end of the entries for the next {@link #recover}.
+         */
+        private void terminate() {
+            if (writeOffset + 4 <= slab.capacity()) {
+                slab.putInt(writeOffset, 0);
+            }
+        }
+
+        private boolean keyEquals(int offset, byte[] keyBytes) {
+            if (slab.getInt(offset) != keyBytes.length) {
+                return false;
+            }
+            int start = offset + HEADER;
+            for (int i = 0; i < keyBytes.length; i++) {
+                if (slab.get(start + i) != keyBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isExpired(int offset, long now) {
+            long deadline = slab.getLong(offset + 8);
+            return deadline > 0 && deadline <= now;
+        }
+
+        private byte[] readValue(int offset) {
+            byte[] valueBytes = new byte[slab.getInt(offset + 4)];
+            slab.position(offset + HEADER + slab.getInt(offset));
+            slab.get(valueBytes);
+            return valueBytes;
+        }
+
+        private int lengthAt(int offset) {
+            return HEADER + slab.getInt(offset) + slab.getInt(offset + 4);
+        }
+
+        /**
+         * Slide the live entries to the start of the slab, in the order they
+         * were written. The expired entries are dropped, then the oldest ones
+         * until a quarter of the slab is free besides the new entry.
+         */
+        private void compact(int length, long now) {
+            long[] live = new long[size];
+            int count = 0;
+            long liveBytes = 0;
+            for (int slot = 0; slot < offsets.length; slot++) {
+                int offset = offsets[slot];
+                if (offset >= 0 && !isExpired(offset, now)) {
+                    live[count++] = ((long) offset << 32) | (slot & 0xFFFFFFFFL);
+                    liveBytes += lengthAt(offset);
+                }
+            }
+            Arrays.sort(live, 0, count);
+            int dataCapacity = slab.capacity() - SLAB_HEADER;
+            long target = Math.max(0, dataCapacity - dataCapacity / 4 - length);
+            int first = 0;
+            while (first < count && liveBytes > target) {
+                liveBytes -= lengthAt((int) (live[first++] >>> 32));
+            }
+            int[] oldHashes = hashes;
+            resetIndex(tableSizeFor(count - first));
+            // a slab left while compacting is not read back
+            slab.putInt(4, 1);
+            writeOffset = SLAB_HEADER;
+            for (int i = first; i < count; i++) {
+                int offset = (int) (live[i] >>> 32);
+                int entryLength = lengthAt(offset);
+                move(offset, writeOffset, entryLength);
+                insert(oldHashes[(int) live[i]], writeOffset);
+                writeOffset += entryLength;
+            }
+            terminate();
+            slab.putInt(4, 0);
+        }
+
+        private void rebuildIndex() {
+            int[] oldHashes = hashes;
+            int[] oldOffsets = offsets;
+            resetIndex(tableSizeFor(size + 1));
+            for (int slot = 0; slot < oldOffsets.length; slot++) {
+                if (oldOffsets[slot] >= 0) {
+                    insert(oldHashes[slot], oldOffsets[slot]);
+                }
+            }
+        }
+
+        private void resetIndex(int tableSize) {
+            hashes = new int[tableSize];
+            offsets = new int[tableSize];
+            Arrays.fill(offsets, EMPTY);
+            size = 0;
+            used = 0;
+        }
+
+        /**
+         * Copy towards the start of the slab, a chunk is read completely
+         * before it is written so overlapping ranges are safe.
+         */
+        private void move(int from, int to, int length) {
+            if (from == to) {
+                return;
+            }
+            if (null == chunk) {
+                chunk = new byte[4096];
+            }
+            for (int moved = 0; moved < length; moved += chunk.length) {
+                int count = Math.min(chunk.length, length - moved);
+                slab.position(from + moved);
+                slab.get(chunk, 0, count);
+                slab.position(to + moved);
+                slab.put(chunk, 0, count);
+            }
+        }
+
+        /**
+         * @return a power of two table keeping the index at most a quarter
+         *         full
+         */
+        private static int tableSizeFor(int entries) {
+            int tableSize = 16;
+            while (tableSize < entries * 4) {
+                tableSize <<= 1;
+            }
+            return tableSize;
+        }
+    }
+}
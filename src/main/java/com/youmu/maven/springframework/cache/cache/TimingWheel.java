@@ -0,0 +1,315 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: hierarchical timing wheel expiring timers in amortized O(1).
+ *               Five levels of 64 buckets tick every 16ms, 1s, 65s, 70min and
+ *               75h, a timer is linked into the bucket of its deadline on the
+ *               finest level spanning it and cascades down as time passes.
+ *               The wheel is striped by lock and advanced by the callers of
+ *               {@link #advanceOnAccess}, or by one maintenance thread.
+ *               {@link #SHARED} serves every local cache of the library
+ * @Date: 2017/10/18
+ */
+public class TimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int STRIPES = 16;
+
+    private static final int BUCKETS = 64;
+
+    // milliseconds of a tick are 1 << shift, a level spans the tick of the next
+    private static final int[] SHIFTS = { 4, 10, 16, 22, 28 };
+
+    // after the levels it is built with
+    public static final TimingWheel SHARED = new TimingWheel();
+
+    private final Stripe[] stripes;
+
+    private Thread maintenance;
+
+    public TimingWheel() {
+        long now = System.currentTimeMillis();
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(now);
+        }
+    }
+
+    /**
+     * Link the timer, a timer without a deadline is ignored. The caller may
+     * hold a lock of its own, {@link Timer#expire()} is called without any.
+     */
+    public void schedule(Timer timer) {
+        if (timer.deadline <= 0) {
+            return;
+        }
+        Assert.isNull(timer.stripe, "Timer is scheduled already");
+        Stripe stripe = stripes[ThreadLocalRandom.current().nextInt(STRIPES)];
+        stripe.lock();
+        try {
+            timer.stripe = stripe;
+            stripe.link(timer);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Unlink the timer unless it fired already.
+     */
+    public void cancel(Timer timer) {
+        Stripe stripe = timer.stripe;
+        if (null == stripe) {
+            return;
+        }
+        stripe.lock();
+        try {
+            if (timer.stripe == stripe) {
+                Stripe.unlink(timer);
+                timer.stripe = null;
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Fire the due timers of one stripe when it is a tick behind and not busy,
+     * cheap enough for every cache access. The caller must not hold a lock a
+     * timer takes.
+     */
+    public void advanceOnAccess(long now) {
+        Stripe stripe = stripes[ThreadLocalRandom.current().nextInt(STRIPES)];
+        if ((now >>> SHIFTS[0]) > (stripe.time >>> SHIFTS[0]) && stripe.tryLock()) {
+            List<Timer> expired;
+            try {
+                expired = stripe.advance(now);
+            } finally {
+                stripe.unlock();
+            }
+            fire(expired);
+        }
+    }
+
+    /**
+     * Fire the due timers of every stripe.
+     */
+    public void advance(long now) {
+        for (Stripe stripe : stripes) {
+            List<Timer> expired;
+            stripe.lock();
+            try {
+                expired = stripe.advance(now);
+            } finally {
+                stripe.unlock();
+            }
+            fire(expired);
+        }
+    }
+
+    /**
+     * Advance the wheel every {@code interval} milliseconds from a daemon
+     * thread, so entries nobody reads anymore are released too. Starting it
+     * again changes nothing.
+     */
+    public synchronized void startMaintenance(final long interval) {
+        Assert.isTrue(interval > 0, "interval must be positive");
+        if (null != maintenance) {
+            return;
+        }
+        maintenance = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                maintain(TimeUnit.MILLISECONDS.toNanos(interval));
+            }
+        }, "cache-timing-wheel");
+        maintenance.setDaemon(true);
+        maintenance.start();
+    }
+
+    public synchronized void stopMaintenance() {
+        if (null != maintenance) {
+            Thread stopped = maintenance;
+            maintenance = null;
+            LockSupport.unpark(stopped);
+        }
+    }
+
+    private void maintain(long intervalNanos) {
+        while (isMaintaining(Thread.currentThread())) {
+            LockSupport.parkNanos(this, intervalNanos);
+            try {
+                advance(System.currentTimeMillis());
+            } catch (RuntimeException ex) {
+                logger.error(">>>>>>>>>>timing wheel maintenance", ex);
+            }
+        }
+    }
+
+    private synchronized boolean isMaintaining(Thread thread) {
+        return maintenance == thread;
+    }
+
+    private void fire(List<Timer> expired) {
+        for (Timer timer : expired) {
+            try {
+                timer.expire();
+            } catch (RuntimeException ex) {
+                logger.error(">>>>>>>>>>expiring timer " + timer, ex);
+            }
+        }
+    }
+
+    /**
+     * An entry of the wheel, subclasses are the entries of a cache.
+     */
+    public abstract static class Timer {
+
+        private final long deadline;
+
+        // the stripe linking the timer, written under its lock
+        private volatile Stripe stripe;
+
+        private Timer prev;
+
+        private Timer next;
+
+        /**
+         * @param deadline the time to expire in milliseconds, {@code <= 0}
+         *            never expires
+         */
+        protected Timer(long deadline) {
+            this.deadline = deadline;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isExpired(long now) {
+            return deadline > 0 && deadline <= now;
+        }
+
+        /**
+         * Called once the deadline passed, the timer may have been replaced
+         * meanwhile by its owner.
+         */
+        protected abstract void expire();
+    }
+
+    private static final class Sentinel extends Timer {
+
+        private Sentinel() {
+            super(0);
+        }
+
+        @Override
+        protected void expire() {
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Stripe extends ReentrantLock {
+
+        // the sentinels of the bucket lists
+        private final Timer[][] wheels;
+
+        // the last time advanced to, written under the lock
+        private volatile long time;
+
+        private Stripe(long now) {
+            this.time = now;
+            this.wheels = new Timer[SHIFTS.length][BUCKETS];
+            for (Timer[] wheel : wheels) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    wheel[i] = new Sentinel();
+                    empty(wheel[i]);
+                }
+            }
+        }
+
+        private static void empty(Timer sentinel) {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        private void link(Timer timer) {
+            // a deadline passed already goes to the bucket advanced next
+            long tickTime = Math.max(timer.deadline, time);
+            long delay = tickTime - time;
+            int level = 0;
+            while (level < SHIFTS.length - 1 && delay >= (1L << (SHIFTS[level] + 6))) {
+                level++;
+            }
+            Timer sentinel = wheels[level][(int) (tickTime >>> SHIFTS[level])
+                    & (BUCKETS - 1)];
+            timer.prev = sentinel.prev;
+            timer.next = sentinel;
+            sentinel.prev.next = timer;
+            sentinel.prev = timer;
+        }
+
+        private static void unlink(Timer timer) {
+            timer.prev.next = timer.next;
+            timer.next.prev = timer.prev;
+            timer.prev = null;
+            timer.next = null;
+        }
+
+        /**
+         * Empty the buckets whose ticks passed on every level, relinking the
+         * timers not due yet. Called with the lock held.
+         */
+        private List<Timer> advance(long now) {
+            List<Timer> expired = new ArrayList<>();
+            long previous = time;
+            if (now <= previous) {
+                return expired;
+            }
+            time = now;
+            for (int level = 0; level < SHIFTS.length; level++) {
+                long previousTicks = previous >>> SHIFTS[level];
+                long ticks = now >>> SHIFTS[level];
+                if (ticks <= previousTicks) {
+                    break;
+                }
+                long count = Math.min(ticks - previousTicks + 1, BUCKETS);
+                for (long tick = previousTicks; tick < previousTicks + count; tick++) {
+                    expire(wheels[level][(int) tick & (BUCKETS - 1)], now, expired);
+                }
+            }
+            return expired;
+        }
+
+        private void expire(Timer sentinel, long now, List<Timer> expired) {
+            Timer timer = sentinel.next;
+            // detached first, the timers not due may be relinked here
+            empty(sentinel);
+            while (timer != sentinel) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                if (timer.isExpired(now)) {
+                    timer.stripe = null;
+                    expired.add(timer);
+                } else {
+                    link(timer);
+                }
+                timer = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.springframework.cache.Cache;
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: a near cache, reads are served by the in-process local cache
+ *               and only go to the remote cache on a local miss. Every write
+ *               goes to both, the local copy never outlives the expire of the
+ *               operation nor the lifetime of the local cache
+ * @Date: 2017/09/28
+ */
+public class TwoLevelExpireableCache implements BatchExpireableCache {
+
+    private final ExpireableCache localCache;
+
+    private final Cache remoteCache;
+
+    private final long expire;
+
+    private final InvalidationBus invalidationBus;
+
+    /**
+     * @param localCache the in-process cache, shared by every operation of the
+     *            cache name
+     * @param remoteCache the cache of record
+     * @param expire the expire of the operation in milliseconds, caps the
+     *            lifetime of entries loaded from the remote cache
+     */
+    public TwoLevelExpireableCache(ExpireableCache localCache, Cache remoteCache, long expire) {
+        this(localCache, remoteCache, expire, null);
+    }
+
+    /**
+     * @param invalidationBus tells the other nodes about every write and
+     *            eviction, {@code null} if the local caches of other nodes
+     *            only expire
+     */
+    public TwoLevelExpireableCache(ExpireableCache localCache, Cache remoteCache, long expire,
+            InvalidationBus invalidationBus) {
+        Assert.notNull(localCache, "LocalCache must not be null");
+        Assert.notNull(remoteCache, "RemoteCache must not be null");
+        this.localCache = localCache;
+        this.remoteCache = remoteCache;
+        this.expire = expire;
+        this.invalidationBus = invalidationBus;
+    }
+
+    public ExpireableCache getLocalCache() {
+        return localCache;
+    }
+
+    public Cache getRemoteCache() {
+        return remoteCache;
+    }
+
+    @Override
+    public String getName() {
+        return remoteCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remoteCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper cached = localCache.get(key);
+        if (null != cached) {
+            return cached;
+        }
+        cached = remoteCache.get(key);
+        if (null != cached) {
+            localCache.put(key, cached.get(), expire);
+        }
+        return cached;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper cached = get(key);
+        Object value = null == cached ? null : cached.get();
+        if (null != value && null != type && !type.isInstance(value)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = localCache.get(key);
+        if (null != cached) {
+            return (T) cached.get();
+        }
+        T value = remoteCache.get(key, valueLoader);
+        localCache.put(key, value, expire);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        put(key, value, expire);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return putIfAbsent(key, value, expire);
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        if (remoteCache instanceof ExpireableCache) {
+            ((ExpireableCache) remoteCache).put(key, value, expire);
+        } else {
+            remoteCache.put(key, value);
+        }
+        localCache.put(key, value, expire);
+        invalidateOthers(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        ValueWrapper existing;
+        if (remoteCache instanceof ExpireableCache) {
+            existing = ((ExpireableCache) remoteCache).putIfAbsent(key, value, expire);
+        } else {
+            existing = remoteCache.putIfAbsent(key, value);
+        }
+        localCache.put(key, null == existing ? value : existing.get(), expire);
+        if (null == existing) {
+            invalidateOthers(key);
+        }
+        return existing;
+    }
+
+    /**
+     * Read the local cache first, then the keys it misses from the remote
+     * cache in one batch.
+     */
+    @Override
+    public List<ValueWrapper> getAll(Collection<?> keys) {
+        List<ValueWrapper> values = new ArrayList<>(keys.size());
+        List<Object> missingKeys = new ArrayList<>();
+        for (Object key : keys) {
+            ValueWrapper cached = localCache.get(key);
+            values.add(cached);
+            if (null == cached) {
+                missingKeys.add(key);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return values;
+        }
+        List<ValueWrapper> remoteValues;
+        if (remoteCache instanceof BatchExpireableCache) {
+            remoteValues = ((BatchExpireableCache) remoteCache).getAll(missingKeys);
+        } else {
+            remoteValues = new ArrayList<>(missingKeys.size());
+            for (Object key : missingKeys) {
+                remoteValues.add(remoteCache.get(key));
+            }
+        }
+        int j = 0;
+        for (int i = 0; i < values.size(); i++) {
+            if (null == values.get(i)) {
+                Object key = missingKeys.get(j);
+                ValueWrapper cached = remoteValues.get(j++);
+                if (null != cached) {
+                    localCache.put(key, cached.get(), expire);
+                    values.set(i, cached);
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries, long expire) {
+        if (remoteCache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) remoteCache).putAll(entries, expire);
+        } else {
+            for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                if (remoteCache instanceof ExpireableCache) {
+                    ((ExpireableCache) remoteCache).put(entry.getKey(), entry.getValue(), expire);
+                } else {
+                    remoteCache.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            localCache.put(entry.getKey(), entry.getValue(), expire);
+            invalidateOthers(entry.getKey());
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        remoteCache.evict(key);
+        localCache.evict(key);
+        invalidateOthers(key);
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        if (remoteCache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) remoteCache).evictAll(keys);
+        } else {
+            for (Object key : keys) {
+                remoteCache.evict(key);
+            }
+        }
+        for (Object key : keys) {
+            localCache.evict(key);
+            invalidateOthers(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        remoteCache.clear();
+        localCache.clear();
+        if (null != invalidationBus) {
+            invalidationBus.invalidateAll(getName());
+        }
+    }
+
+    private void invalidateOthers(Object key) {
+        if (null != invalidationBus) {
+            invalidationBus.invalidate(getName(), key);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.youmu.maven.springframework.cache.cache;
+
+/**
+ * @Author: YOUMU
+ * @Description: the weight of an entry of a local cache, used to bound the
+ *               memory of the cache rather than only its size
+ * @Date: 2017/09/28
+ */
+public interface Weigher {
+
+    Weigher SINGLETON = new Weigher() {
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    };
+
+    /**
+     * @return the weight of the entry, never negative
+     */
+    public int weigh(Object key, Object value);
+}
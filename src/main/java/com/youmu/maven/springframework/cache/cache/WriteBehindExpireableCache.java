@@ -0,0 +1,539 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.interceptor.CacheErrorHandler;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: queues the writes and evictions of a cache and applies them
+ *               from a background thread, a batch of puts goes to the target
+ *               in one {@link BatchExpireableCache#putAll}. A batch is flushed
+ *               once it is full or after the flush interval. Until a write is
+ *               applied, reads of this jvm see it from the pending writes.
+ *               When the queue is full the caller applies its write itself.
+ *               With an {@link InvalidationBus} the other nodes are told about
+ *               a write once it reached the target, not when it was queued.
+ *               A failed batch is applied write by write, a write failing
+ *               again is queued again a few times before it is given up
+ * @Date: 2017/10/14
+ */
+public class WriteBehindExpireableCache implements BatchExpireableCache, DisposableBean {
+
+    private static Logger logger = LoggerFactory.getLogger(WriteBehindExpireableCache.class);
+
+    // the attempts of a write before it is given up
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final Cache targetCache;
+
+    private final int queueCapacity;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final Queue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    // the latest write of every key not applied yet
+    private final ConcurrentMap<Object, PendingWrite> pendingWrites = new ConcurrentHashMap<>(256);
+
+    // applying a write, keeps an older write of a key from overtaking a newer
+    private final Object flushLock = new Object();
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private volatile InvalidationBus invalidationBus;
+
+    private volatile CacheErrorHandler errorHandler;
+
+    /**
+     * @param targetCache the cache the writes are applied to
+     * @param queueCapacity the maximum number of queued writes
+     * @param batchSize the maximum number of writes applied at once
+     * @param flushInterval the longest a write waits in the queue in
+     *            milliseconds
+     */
+    public WriteBehindExpireableCache(Cache targetCache, int queueCapacity, int batchSize,
+            long flushInterval) {
+        Assert.notNull(targetCache, "Target Cache must not be null");
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        Assert.isTrue(flushInterval > 0, "flushInterval must be positive");
+        this.targetCache = targetCache;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "cache-write-behind-" + targetCache.getName());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public Cache getTargetCache() {
+        return targetCache;
+    }
+
+    /**
+     * Set the bus telling the near caches of the other nodes about the applied
+     * writes, the near cache in front of this cache must not tell them itself
+     * or they reload the old value before the write is applied.
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * Set the handler of the failed writes of the background thread, a
+     * {@code MetricsCacheErrorHandler} counts them. {@code null}, the default,
+     * only logs them. An exception thrown by the handler is logged.
+     */
+    public void setErrorHandler(CacheErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    public CacheErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    @Override
+    public String getName() {
+        return targetCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return targetCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        PendingWrite write = pendingWrites.get(key);
+        if (null != write) {
+            return write.evict ? null : new SimpleValueWrapper(write.value);
+        }
+        return targetCache.get(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper cached = get(key);
+        Object value = null == cached ? null : cached.get();
+        if (null != value && null != type && !type.isInstance(value)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (null != cached) {
+            return (T) cached.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Throwable ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        submit(new PendingWrite(key, value, expire, false));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return putIfAbsent(key, value, 0);
+    }
+
+    /**
+     * Not queued, the target decides atomically whether the key is absent.
+     */
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        PendingWrite write = pendingWrites.get(key);
+        if (null != write) {
+            if (!write.evict) {
+                return new SimpleValueWrapper(write.value);
+            }
+            flush();
+        }
+        ValueWrapper existing;
+        if (expire > 0 && targetCache instanceof ExpireableCache) {
+            existing = ((ExpireableCache) targetCache).putIfAbsent(key, value, expire);
+        } else {
+            existing = targetCache.putIfAbsent(key, value);
+        }
+        if (null == existing) {
+            invalidateOthers(key);
+        }
+        return existing;
+    }
+
+    @Override
+    public List<ValueWrapper> getAll(Collection<?> keys) {
+        List<ValueWrapper> values = new ArrayList<>(keys.size());
+        List<Object> targetKeys = new ArrayList<>();
+        List<Integer> targetIndexes = new ArrayList<>();
+        for (Object key : keys) {
+            PendingWrite write = pendingWrites.get(key);
+            if (null == write) {
+                targetKeys.add(key);
+                targetIndexes.add(values.size());
+                values.add(null);
+            } else {
+                values.add(write.evict ? null : new SimpleValueWrapper(write.value));
+            }
+        }
+        if (targetKeys.isEmpty()) {
+            return values;
+        }
+        List<ValueWrapper> targetValues;
+        if (targetCache instanceof BatchExpireableCache) {
+            targetValues = ((BatchExpireableCache) targetCache).getAll(targetKeys);
+        } else {
+            targetValues = new ArrayList<>(targetKeys.size());
+            for (Object key : targetKeys) {
+                targetValues.add(targetCache.get(key));
+            }
+        }
+        for (int i = 0; i < targetIndexes.size(); i++) {
+            values.set(targetIndexes.get(i), targetValues.get(i));
+        }
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries, long expire) {
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue(), expire);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        submit(new PendingWrite(key, null, 0, true));
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        for (Object key : keys) {
+            evict(key);
+        }
+    }
+
+    /**
+     * Drop the queued writes and clear the target at once.
+     */
+    @Override
+    public void clear() {
+        synchronized (flushLock) {
+            PendingWrite write;
+            while (null != (write = queue.poll())) {
+                queued.decrementAndGet();
+                pendingWrites.remove(write.key, write);
+            }
+            targetCache.clear();
+        }
+        InvalidationBus bus = invalidationBus;
+        if (null != bus) {
+            bus.invalidateAll(getName());
+        }
+    }
+
+    /**
+     * Apply every queued write now.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            boolean applied = true;
+            while (applied) {
+                applied = applyBatch();
+            }
+        }
+    }
+
+    /**
+     * @return the number of writes waiting in the queue
+     */
+    public int getQueueSize() {
+        return queued.get();
+    }
+
+    /**
+     * Stop the background thread and apply the writes left, later writes are
+     * applied by their callers.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(worker);
+        worker.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1000);
+        flush();
+    }
+
+    private void submit(PendingWrite write) {
+        pendingWrites.put(write.key, write);
+        if (!running) {
+            synchronized (flushLock) {
+                apply(write);
+            }
+            return;
+        }
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            // back pressure, the caller pays the round trip
+            synchronized (flushLock) {
+                apply(write);
+            }
+            return;
+        }
+        queue.offer(write);
+        if (queued.get() >= batchSize) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void work() {
+        while (running) {
+            if (queued.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                logger.error(">>>>>>>>>>write behind of cache " + getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Apply at most one batch of queued writes, the caller holds the flush
+     * lock.
+     *
+     * @return whether writes were applied
+     */
+    private boolean applyBatch() {
+        List<PendingWrite> batch = new ArrayList<>(Math.min(batchSize, queued.get()));
+        PendingWrite write;
+        while (batch.size() < batchSize && null != (write = queue.poll())) {
+            queued.decrementAndGet();
+            // a newer write of the key is queued behind or was already applied
+            if (pendingWrites.get(write.key) == write) {
+                batch.add(write);
+            }
+        }
+        if (batch.isEmpty()) {
+            return null != queue.peek();
+        }
+        Map<Long, List<PendingWrite>> puts = new HashMap<>();
+        List<PendingWrite> evictions = new ArrayList<>();
+        for (PendingWrite pendingWrite : batch) {
+            if (pendingWrite.evict) {
+                evictions.add(pendingWrite);
+                continue;
+            }
+            List<PendingWrite> writes = puts.get(pendingWrite.expire);
+            if (null == writes) {
+                writes = new ArrayList<>();
+                puts.put(pendingWrite.expire, writes);
+            }
+            writes.add(pendingWrite);
+        }
+        if (!evictions.isEmpty()) {
+            List<Object> keys = new ArrayList<>(evictions.size());
+            for (PendingWrite eviction : evictions) {
+                keys.add(eviction.key);
+            }
+            try {
+                evictAll(targetCache, keys);
+                applied(evictions);
+            } catch (RuntimeException ex) {
+                logger.warn(">>>>>>>>>>write behind of " + keys.size()
+                        + " evictions of cache " + getName() + " failed, evicting one by one", ex);
+                retryEach(evictions);
+            }
+        }
+        for (Map.Entry<Long, List<PendingWrite>> entry : puts.entrySet()) {
+            Map<Object, Object> entries = new LinkedHashMap<>();
+            for (PendingWrite put : entry.getValue()) {
+                entries.put(put.key, put.value);
+            }
+            try {
+                putAll(targetCache, entries, entry.getKey());
+                applied(entry.getValue());
+            } catch (RuntimeException ex) {
+                logger.warn(">>>>>>>>>>write behind of " + entries.size() + " puts of cache "
+                        + getName() + " failed, putting one by one", ex);
+                retryEach(entry.getValue());
+            }
+        }
+        return true;
+    }
+
+    private void applied(List<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            pendingWrites.remove(write.key, write);
+            invalidateOthers(write.key);
+        }
+    }
+
+    /**
+     * Apply the writes of a failed batch one by one, a write failing again is
+     * queued again until its attempts run out. A lost eviction would leave
+     * the old value readable, so it must not be dropped silently.
+     */
+    private void retryEach(List<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            try {
+                applyToTarget(write);
+            } catch (RuntimeException ex) {
+                handleError(write, ex);
+                if (++write.attempts < MAX_ATTEMPTS && pendingWrites.get(write.key) == write) {
+                    queued.incrementAndGet();
+                    queue.offer(write);
+                    continue;
+                }
+                logger.error(">>>>>>>>>>giving up write behind of key " + write.key
+                        + " of cache " + getName() + " after " + write.attempts + " attempts");
+            }
+            pendingWrites.remove(write.key, write);
+            invalidateOthers(write.key);
+        }
+    }
+
+    private void handleError(PendingWrite write, RuntimeException ex) {
+        CacheErrorHandler handler = errorHandler;
+        if (null == handler) {
+            logger.error(">>>>>>>>>>write behind of key " + write.key + " of cache " + getName(),
+                    ex);
+            return;
+        }
+        try {
+            if (write.evict) {
+                handler.handleCacheEvictError(ex, this, write.key);
+            } else {
+                handler.handleCachePutError(ex, this, write.key, write.value);
+            }
+        } catch (RuntimeException handlerEx) {
+            // nobody to throw to on the background thread
+            logger.error(">>>>>>>>>>write behind of key " + write.key + " of cache "
+                    + getName(), handlerEx);
+        }
+    }
+
+    private void apply(PendingWrite write) {
+        try {
+            applyToTarget(write);
+        } finally {
+            pendingWrites.remove(write.key, write);
+            invalidateOthers(write.key);
+        }
+    }
+
+    private void applyToTarget(PendingWrite write) {
+        if (write.evict) {
+            targetCache.evict(write.key);
+        } else if (write.expire > 0 && targetCache instanceof ExpireableCache) {
+            ((ExpireableCache) targetCache).put(write.key, write.value, write.expire);
+        } else {
+            targetCache.put(write.key, write.value);
+        }
+    }
+
+    private void invalidateOthers(Object key) {
+        InvalidationBus bus = invalidationBus;
+        if (null != bus) {
+            bus.invalidate(getName(), key);
+        }
+    }
+
+    private static void putAll(Cache cache, Map<Object, Object> entries, long expire) {
+        if (cache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) cache).putAll(entries, expire);
+            return;
+        }
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (expire > 0 && cache instanceof ExpireableCache) {
+                ((ExpireableCache) cache).put(entry.getKey(), entry.getValue(), expire);
+            } else {
+                cache.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static void evictAll(Cache cache, Collection<Object> keys) {
+        if (cache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) cache).evictAll(keys);
+            return;
+        }
+        for (Object key : keys) {
+            cache.evict(key);
+        }
+    }
+
+    private static final class PendingWrite {
+
+        private final Object key;
+
+        private final Object value;
+
+        private final long expire;
+
+        private final boolean evict;
+
+        // guarded by the flush lock
+        private int attempts;
+
+        private PendingWrite(Object key, Object value, long expire, boolean evict) {
+            this.key = key;
+            this.value = value;
+            this.expire = expire;
+            this.evict = evict;
+        }
+    }
+}
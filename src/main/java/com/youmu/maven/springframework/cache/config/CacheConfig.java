@@ -1,6 +1,9 @@
 package com.youmu.maven.springframework.cache.config;
 
+import java.util.concurrent.Executor;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.cache.annotation.AnnotationCacheOperationSource;
 import org.springframework.cache.annotation.EnableCaching;
@@ -15,7 +18,10 @@ import org.springframework.core.annotation.AnnotationAttributes;
 import org.springframework.core.annotation.Order;
 import org.springframework.core.type.AnnotationMetadata;
 
+import com.youmu.maven.springframework.cache.hotkey.HotKeyDetector;
 import com.youmu.maven.springframework.cache.interceptor.CustomableCacheInterceptor;
+import com.youmu.maven.springframework.cache.key.KeyEncoder;
+import com.youmu.maven.springframework.cache.metrics.CacheMetrics;
 import com.youmu.maven.springframework.cache.parser.CustomableCacheAnnotationParser;
 import com.youmu.maven.springframework.cache.parser.ExpireableCacheAnnotationParser;
 
@@ -26,6 +32,21 @@ public class CacheConfig extends ProxyCachingConfiguration {
     @Autowired(required = false)
     private CustomableCacheAnnotationParser cacheAnnotationParser;
 
+    @Autowired(required = false)
+    @Qualifier("cacheRefreshExecutor")
+    private Executor cacheRefreshExecutor;
+
+    @Autowired(required = false)
+    private KeyEncoder keyEncoder;
+
+    @Autowired(required = false)
+    private CacheMetrics cacheMetrics;
+
+    @Autowired(required = false)
+    private HotKeyDetector hotKeyDetector;
+
+    protected AnnotationAttributes enableCustomableCache;
+
     @Override
     @Bean
     @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
@@ -51,11 +72,28 @@ public class CacheConfig extends ProxyCachingConfiguration {
         if (this.errorHandler != null) {
             interceptor.setErrorHandler(this.errorHandler);
         }
+        if (this.keyEncoder != null) {
+            interceptor.setKeyEncoder(this.keyEncoder);
+        }
+        if (this.cacheMetrics != null) {
+            interceptor.setMetrics(this.cacheMetrics);
+        }
+        if (this.hotKeyDetector != null) {
+            interceptor.setHotKeyDetector(this.hotKeyDetector);
+        }
+        if (this.cacheRefreshExecutor != null) {
+            interceptor.setRefreshExecutor(this.cacheRefreshExecutor);
+        }
+        if (this.enableCustomableCache != null) {
+            interceptor.setSingleFlight(this.enableCustomableCache.getBoolean("singleFlight"));
+        }
         return interceptor;
     }
 
     @Override
     public void setImportMetadata(AnnotationMetadata importMetadata) {
+        this.enableCustomableCache = AnnotationAttributes.fromMap(importMetadata
+                .getAnnotationAttributes(EnableCustomableCache.class.getName(), false));
         this.enableCaching = AnnotationAttributes.fromMap(
                 importMetadata.getAnnotationAttributes(EnableCaching.class.getName(), false));
         if (null == this.enableCaching
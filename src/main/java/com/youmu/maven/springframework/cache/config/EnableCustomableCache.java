@@ -28,4 +28,10 @@ public @interface EnableCustomableCache {
     AdviceMode mode() default AdviceMode.PROXY;
 
     int order() default Ordered.LOWEST_PRECEDENCE;
+
+    /**
+     * whether concurrent misses of the same cache key share one invocation
+     * @see com.youmu.maven.springframework.cache.interceptor.CustomableCacheInterceptor#setSingleFlight
+     */
+    boolean singleFlight() default false;
 }
@@ -0,0 +1,475 @@
+package com.youmu.maven.springframework.cache.expression;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.convert.ConversionException;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.expression.ParseException;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.CompoundExpression;
+import org.springframework.expression.spel.ast.Literal;
+import org.springframework.expression.spel.ast.NullLiteral;
+import org.springframework.expression.spel.ast.OpEQ;
+import org.springframework.expression.spel.ast.OpNE;
+import org.springframework.expression.spel.ast.OpPlus;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.StringLiteral;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * @Author: YOUMU
+ * @Description: compiles the common shapes of cache expressions, a parameter
+ *               ({@code #id}, {@code #p0}, {@code #a0}) or {@code #result}, a
+ *               property chain on it ({@code #user.id}), a literal, a string
+ *               concatenation starting with a string literal
+ *               ({@code 'user:' + #id}) and a null check
+ *               ({@code #result == null}). Any other expression is left to SpEL
+ * @Date: 2017/10/12
+ */
+public class CacheExpressionCompiler {
+
+    private static final CacheExpressionCompiler sharedInstance = new CacheExpressionCompiler();
+
+    private static final Object NOT_COMPILABLE = new Object();
+
+    private static final Pattern INDEXED_ARGUMENT = Pattern.compile("[ap]\\d+");
+
+    private static final String RESULT_VARIABLE = "result";
+
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    private final ConversionService conversionService = DefaultConversionService
+            .getSharedInstance();
+
+    // the syntax tree of every analyzed expression of a compilable shape
+    private final Map<String, Object> shapes = new ConcurrentHashMap<>(256);
+
+    /**
+     * @return the compiler shared by the annotation parsers and the
+     *         interceptors, so expressions analyzed while parsing are not
+     *         parsed again
+     */
+    public static CacheExpressionCompiler getSharedInstance() {
+        return sharedInstance;
+    }
+
+    /**
+     * Parse the expression once and remember whether it has a compilable
+     * shape.
+     * @return whether the expression can be compiled
+     */
+    public boolean analyze(String expression) {
+        return StringUtils.hasText(expression) && null != getShape(expression);
+    }
+
+    /**
+     * @param expression the key, condition or unless expression
+     * @param method the annotated method
+     * @param targetClass the target class, its method gives the parameter
+     *            names
+     * @return the compiled expression, {@code null} if SpEL has to evaluate it
+     */
+    public CompiledCacheExpression compile(String expression, Method method,
+            Class<?> targetClass) {
+        if (!StringUtils.hasText(expression) || method.isVarArgs()) {
+            return null;
+        }
+        SpelNode shape = getShape(expression);
+        if (null == shape) {
+            return null;
+        }
+        Method targetMethod = null == targetClass ? method
+                : AopUtils.getMostSpecificMethod(method, targetClass);
+        Binding binding = Binding.of(parameterNameDiscoverer.getParameterNames(targetMethod),
+                method.getParameterTypes().length);
+        if (null == binding) {
+            return null;
+        }
+        Accessor accessor = toAccessor(shape, binding);
+        return null == accessor ? null : new AccessorExpression(expression, accessor);
+    }
+
+    private SpelNode getShape(String expression) {
+        Object shape = shapes.get(expression);
+        if (null == shape) {
+            shape = NOT_COMPILABLE;
+            try {
+                SpelNode ast = ((SpelExpression) parser.parseExpression(expression)).getAST();
+                if (null != toAccessor(ast, null)) {
+                    shape = ast;
+                }
+            } catch (ParseException ex) {
+                // left to SpEL, which reports it when evaluating
+            }
+            shapes.put(expression, shape);
+        }
+        return shape == NOT_COMPILABLE ? null : (SpelNode) shape;
+    }
+
+    /**
+     * @param binding the parameters of the method, {@code null} to only check
+     *            the shape
+     * @return the accessor of the node, {@code null} if it is not compilable
+     */
+    private Accessor toAccessor(SpelNode node, Binding binding) {
+        if (node instanceof VariableReference) {
+            return toVariableAccessor(node.toStringAST().substring(1), binding);
+        }
+        if (node instanceof CompoundExpression) {
+            Accessor accessor = toAccessor(node.getChild(0), binding);
+            for (int i = 1; i < node.getChildCount() && null != accessor; i++) {
+                if (!(node.getChild(i) instanceof PropertyOrFieldReference)) {
+                    return null;
+                }
+                PropertyOrFieldReference reference = (PropertyOrFieldReference) node.getChild(i);
+                accessor = new PropertyAccessor(accessor, reference.getName(),
+                        reference.isNullSafe());
+            }
+            return accessor;
+        }
+        if (node instanceof Literal) {
+            return new LiteralAccessor(((Literal) node).getLiteralValue().getValue());
+        }
+        if (node instanceof OpPlus && node.getChildCount() == 2) {
+            List<SpelNode> operands = new ArrayList<>();
+            collectOperands(node, operands);
+            if (!(operands.get(0) instanceof StringLiteral)) {
+                return null;
+            }
+            Accessor[] parts = new Accessor[operands.size()];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = toAccessor(operands.get(i), binding);
+                if (null == parts[i]) {
+                    return null;
+                }
+            }
+            return new ConcatAccessor(parts, conversionService);
+        }
+        if ((node instanceof OpEQ || node instanceof OpNE) && node.getChildCount() == 2) {
+            SpelNode operand;
+            if (node.getChild(1) instanceof NullLiteral) {
+                operand = node.getChild(0);
+            } else if (node.getChild(0) instanceof NullLiteral) {
+                operand = node.getChild(1);
+            } else {
+                return null;
+            }
+            Accessor accessor = toAccessor(operand, binding);
+            return null == accessor ? null : new NullCheckAccessor(accessor, node instanceof OpEQ);
+        }
+        return null;
+    }
+
+    // 'a' + #b + #c is parsed as ('a' + #b) + #c
+    private void collectOperands(SpelNode node, List<SpelNode> operands) {
+        SpelNode left = node.getChild(0);
+        if (left instanceof OpPlus && left.getChildCount() == 2) {
+            collectOperands(left, operands);
+        } else {
+            operands.add(left);
+        }
+        operands.add(node.getChild(1));
+    }
+
+    private Accessor toVariableAccessor(String name, Binding binding) {
+        if (RESULT_VARIABLE.equals(name)) {
+            return ResultAccessor.INSTANCE;
+        }
+        if (null == binding) {
+            return "root".equals(name) || "this".equals(name) ? null : ResultAccessor.INSTANCE;
+        }
+        int index = binding.indexOf(name);
+        return index < 0 ? null : new ArgumentAccessor(index);
+    }
+
+    /**
+     * the parameters of a method as SpEL sees them
+     */
+    private static final class Binding {
+
+        private final String[] parameterNames;
+
+        private final int parameterCount;
+
+        private Binding(String[] parameterNames, int parameterCount) {
+            this.parameterNames = parameterNames;
+            this.parameterCount = parameterCount;
+        }
+
+        /**
+         * @return the binding, {@code null} if a parameter name shadows a
+         *         variable of SpEL
+         */
+        private static Binding of(String[] parameterNames, int parameterCount) {
+            if (null != parameterNames) {
+                Set<String> names = new HashSet<>();
+                for (String name : parameterNames) {
+                    if (RESULT_VARIABLE.equals(name) || INDEXED_ARGUMENT.matcher(name).matches()
+                            || !names.add(name)) {
+                        return null;
+                    }
+                }
+            }
+            return new Binding(parameterNames, parameterCount);
+        }
+
+        private int indexOf(String name) {
+            if (INDEXED_ARGUMENT.matcher(name).matches()) {
+                int index = Integer.parseInt(name.substring(1));
+                return index < parameterCount ? index : -1;
+            }
+            if (null != parameterNames) {
+                for (int i = 0; i < parameterNames.length; i++) {
+                    if (parameterNames[i].equals(name)) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class AccessorExpression extends CompiledCacheExpression {
+
+        private final Accessor accessor;
+
+        private AccessorExpression(String expression, Accessor accessor) {
+            super(expression);
+            this.accessor = accessor;
+        }
+
+        @Override
+        public Object getValue(Object[] args, Object result) {
+            return accessor.get(args, result);
+        }
+
+        @Override
+        public boolean isResultUsed() {
+            return accessor.isResultUsed();
+        }
+    }
+
+    private interface Accessor {
+
+        Object get(Object[] args, Object result);
+
+        boolean isResultUsed();
+    }
+
+    private static final class ArgumentAccessor implements Accessor {
+
+        private final int index;
+
+        private ArgumentAccessor(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Object get(Object[] args, Object result) {
+            return args[index];
+        }
+
+        @Override
+        public boolean isResultUsed() {
+            return false;
+        }
+    }
+
+    private static final class ResultAccessor implements Accessor {
+
+        private static final ResultAccessor INSTANCE = new ResultAccessor();
+
+        @Override
+        public Object get(Object[] args, Object result) {
+            return result;
+        }
+
+        @Override
+        public boolean isResultUsed() {
+            return true;
+        }
+    }
+
+    private static final class LiteralAccessor implements Accessor {
+
+        private final Object value;
+
+        private LiteralAccessor(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object get(Object[] args, Object result) {
+            return value;
+        }
+
+        @Override
+        public boolean isResultUsed() {
+            return false;
+        }
+    }
+
+    private static final class PropertyAccessor implements Accessor {
+
+        private final Accessor target;
+
+        private final String name;
+
+        private final boolean nullSafe;
+
+        // the getter of the last class seen, most call sites see only one
+        private volatile Getter getter;
+
+        private PropertyAccessor(Accessor target, String name, boolean nullSafe) {
+            this.target = target;
+            this.name = name;
+            this.nullSafe = nullSafe;
+        }
+
+        @Override
+        public Object get(Object[] args, Object result) {
+            Object value = target.get(args, result);
+            if (value == CompiledCacheExpression.UNSUPPORTED) {
+                return value;
+            }
+            if (null == value) {
+                // SpEL reports the null, unless navigating safely
+                return nullSafe ? null : CompiledCacheExpression.UNSUPPORTED;
+            }
+            Method method = getReadMethod(value.getClass());
+            if (null == method) {
+                return CompiledCacheExpression.UNSUPPORTED;
+            }
+            try {
+                return method.invoke(value);
+            } catch (Exception ex) {
+                return CompiledCacheExpression.UNSUPPORTED;
+            }
+        }
+
+        private Method getReadMethod(Class<?> type) {
+            Getter getter = this.getter;
+            if (null == getter || getter.type != type) {
+                Method method = null;
+                try {
+                    PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, name);
+                    method = null == descriptor ? null : descriptor.getReadMethod();
+                } catch (BeansException ex) {
+                    // left to SpEL
+                }
+                if (null != method) {
+                    ReflectionUtils.makeAccessible(method);
+                }
+                getter = new Getter(type, method);
+                this.getter = getter;
+            }
+            return getter.method;
+        }
+
+        @Override
+        public boolean isResultUsed() {
+            return target.isResultUsed();
+        }
+    }
+
+    private static final class Getter {
+
+        private final Class<?> type;
+
+        private final Method method;
+
+        private Getter(Class<?> type, Method method) {
+            this.type = type;
+            this.method = method;
+        }
+    }
+
+    private static final class ConcatAccessor implements Accessor {
+
+        private final Accessor[] parts;
+
+        private final ConversionService conversionService;
+
+        private ConcatAccessor(Accessor[] parts, ConversionService conversionService) {
+            this.parts = parts;
+            this.conversionService = conversionService;
+        }
+
+        @Override
+        public Object get(Object[] args, Object result) {
+            StringBuilder sb = new StringBuilder();
+            for (Accessor part : parts) {
+                Object value = part.get(args, result);
+                if (value == CompiledCacheExpression.UNSUPPORTED) {
+                    return value;
+                }
+                if (null == value || value instanceof String) {
+                    sb.append(value);
+                } else {
+                    try {
+                        sb.append(conversionService.convert(value, String.class));
+                    } catch (ConversionException ex) {
+                        return CompiledCacheExpression.UNSUPPORTED;
+                    }
+                }
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public boolean isResultUsed() {
+            for (Accessor part : parts) {
+                if (part.isResultUsed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class NullCheckAccessor implements Accessor {
+
+        private final Accessor operand;
+
+        private final boolean equal;
+
+        private NullCheckAccessor(Accessor operand, boolean equal) {
+            this.operand = operand;
+            this.equal = equal;
+        }
+
+        @Override
+        public Object get(Object[] args, Object result) {
+            Object value = operand.get(args, result);
+            if (value == CompiledCacheExpression.UNSUPPORTED) {
+                return value;
+            }
+            return (null == value) == equal;
+        }
+
+        @Override
+        public boolean isResultUsed() {
+            return operand.isResultUsed();
+        }
+    }
+}
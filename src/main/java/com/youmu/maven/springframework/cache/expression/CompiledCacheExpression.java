@@ -0,0 +1,44 @@
+package com.youmu.maven.springframework.cache.expression;
+
+/**
+ * @Author: YOUMU
+ * @Description: a key, condition or unless expression of a method evaluated
+ *               straight from the arguments, without an evaluation context.
+ *               Built by {@link CacheExpressionCompiler}
+ * @Date: 2017/10/12
+ */
+public abstract class CompiledCacheExpression {
+
+    /**
+     * returned when the arguments fall outside of what the compiled form
+     * handles, the caller evaluates the expression with SpEL then
+     */
+    public static final Object UNSUPPORTED = new Object();
+
+    private final String expression;
+
+    protected CompiledCacheExpression(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * @param args the arguments of the invocation
+     * @param result the result of the invocation, {@code null} before it
+     * @return the value of the expression or {@link #UNSUPPORTED}
+     */
+    public abstract Object getValue(Object[] args, Object result);
+
+    /**
+     * @return whether the expression reads {@code #result}
+     */
+    public abstract boolean isResultUsed();
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
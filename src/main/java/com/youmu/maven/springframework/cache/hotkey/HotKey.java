@@ -0,0 +1,63 @@
+package com.youmu.maven.springframework.cache.hotkey;
+
+/**
+ * @Author: YOUMU
+ * @Description: a key reported by {@link HotKeyDetector#getTopKeys}, with the
+ *               estimated number of reads in the recent windows
+ * @Date: 2017/10/19
+ */
+public class HotKey {
+
+    private final String cacheName;
+
+    private final Object key;
+
+    private final long count;
+
+    private final long error;
+
+    private final boolean replicated;
+
+    public HotKey(String cacheName, Object key, long count, long error, boolean replicated) {
+        this.cacheName = cacheName;
+        this.key = key;
+        this.count = count;
+        this.error = error;
+        this.replicated = replicated;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * @return the estimated reads, never below the real ones
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return how much {@link #getCount()} may overestimate the reads
+     */
+    public long getError() {
+        return error;
+    }
+
+    /**
+     * @return whether the key is served from the in-process replica right now
+     */
+    public boolean isReplicated() {
+        return replicated;
+    }
+
+    @Override
+    public String toString() {
+        return "HotKey [cacheName=" + cacheName + ", key=" + key + ", count=" + count + ", error="
+                + error + ", replicated=" + replicated + "]";
+    }
+}
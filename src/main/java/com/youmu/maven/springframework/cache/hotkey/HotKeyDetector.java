@@ -0,0 +1,468 @@
+package com.youmu.maven.springframework.cache.hotkey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.util.Assert;
+
+import com.youmu.maven.springframework.cache.cache.InvalidationBus;
+
+/**
+ * @Author: YOUMU
+ * @Description: finds the keys read the most through a Space-Saving sketch of
+ *               sampled reads, and keeps the values of the keys read more than
+ *               the threshold in a short-lived in-process replica so they stop
+ *               hitting one redis shard. The counts are halved every window so
+ *               keys cool down again. Every cache name is counted under its
+ *               own lock, its counters are kept in buckets of equal counts
+ *               ordered by count so the least read is found in O(1)
+ * @Date: 2017/10/19
+ */
+public class HotKeyDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotKeyDetector.class);
+
+    private final ConcurrentMap<String, Stripe> stripes = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<SimpleKey, Replica> replicas = new ConcurrentHashMap<>();
+
+    private volatile InvalidationBus invalidationBus;
+
+    private int capacity = 128;
+
+    private int sampleInterval = 16;
+
+    private long threshold = 1000;
+
+    private long window = 1000;
+
+    private long replicaTtl = 1000;
+
+    /**
+     * @param capacity the number of keys counted at once per cache name, and
+     *            replicated at most
+     */
+    public void setCapacity(int capacity) {
+        Assert.isTrue(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param sampleInterval one read in {@code sampleInterval} is counted,
+     *            {@code 1} counts them all
+     */
+    public void setSampleInterval(int sampleInterval) {
+        Assert.isTrue(sampleInterval > 0, "sampleInterval must be positive");
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * @param threshold the estimated reads a key is promoted from, the reads of
+     *            one window and half of the previous ones add up
+     */
+    public void setThreshold(long threshold) {
+        Assert.isTrue(threshold > 0, "threshold must be positive");
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param window the milliseconds after which the counts are halved
+     */
+    public void setWindow(long window) {
+        Assert.isTrue(window > 0, "window must be positive");
+        this.window = window;
+    }
+
+    /**
+     * @param replicaTtl the milliseconds a promoted value is served from the
+     *            replica at most, shortened to the expire of the entry
+     */
+    public void setReplicaTtl(long replicaTtl) {
+        Assert.isTrue(replicaTtl > 0, "replicaTtl must be positive");
+        this.replicaTtl = replicaTtl;
+    }
+
+    /**
+     * Publish the keys written on this node, and drop the replicas of the keys
+     * written on other nodes, through the bus. {@code null}, the default,
+     * leaves the replicas of other nodes to their ttl.
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        if (null != invalidationBus) {
+            invalidationBus.addListener(new InvalidationBus.InvalidationListener() {
+                @Override
+                public void onInvalidate(String cacheName, Object key) {
+                    dropReplica(cacheName, key);
+                }
+
+                @Override
+                public void onInvalidateAll(String cacheName) {
+                    dropReplicas(cacheName);
+                }
+            });
+        }
+        this.invalidationBus = invalidationBus;
+    }
+
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * @return the value of the key as it was read from the cache, an
+     *         {@code ExpireableValue} is checked like the cached one,
+     *         {@code null} if it is not hot or its replica expired
+     */
+    public Cache.ValueWrapper get(String cacheName, Object key) {
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        SimpleKey id = new SimpleKey(cacheName, key);
+        Replica replica = replicas.get(id);
+        if (null == replica) {
+            return null;
+        }
+        if (replica.deadline <= System.currentTimeMillis()) {
+            replicas.remove(id, replica);
+            return null;
+        }
+        return replica.wrapper;
+    }
+
+    /**
+     * Count a read of the key found in the cache, once per sample interval.
+     * 
+     * @return whether the key is hot and should be promoted
+     */
+    public boolean record(String cacheName, Object key) {
+        if (sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+            return false;
+        }
+        Stripe stripe = stripes.get(cacheName);
+        if (null == stripe) {
+            stripe = new Stripe(cacheName);
+            Stripe existing = stripes.putIfAbsent(cacheName, stripe);
+            if (null != existing) {
+                stripe = existing;
+            }
+        }
+        // the guaranteed reads, a newcomer is never promoted by the count it
+        // took over
+        return stripe.record(key, System.currentTimeMillis()) * sampleInterval >= threshold
+                && !replicas.containsKey(new SimpleKey(cacheName, key));
+    }
+
+    /**
+     * Serve the value of the key from the replica until the ttl passes or
+     * {@code expireTime}, whichever comes first.
+     * 
+     * @param expireTime when the value expires in epoch milliseconds,
+     *            {@code <= 0} if it does not
+     */
+    public void promote(String cacheName, Object key, Object value, long expireTime) {
+        long now = System.currentTimeMillis();
+        long deadline = now + replicaTtl;
+        if (expireTime > 0) {
+            deadline = Math.min(deadline, expireTime);
+        }
+        if (deadline <= now) {
+            return;
+        }
+        if (replicas.size() >= capacity) {
+            purge(now);
+            if (replicas.size() >= capacity) {
+                return;
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(">>>>>>>>>>promoting hot key '" + key + "' of cache '" + cacheName
+                    + "' for " + (deadline - now) + "ms");
+        }
+        replicas.put(new SimpleKey(cacheName, key), new Replica(cacheName, value, deadline));
+    }
+
+    /**
+     * Drop the replica of the key, called on every local write of it. The
+     * other nodes are told through the {@link #setInvalidationBus bus}.
+     */
+    public void evict(String cacheName, Object key) {
+        dropReplica(cacheName, key);
+        InvalidationBus bus = invalidationBus;
+        if (null != bus) {
+            bus.invalidate(cacheName, key);
+        }
+    }
+
+    /**
+     * Drop the replicas of every key of the cache, on this node and the ones
+     * of the {@link #setInvalidationBus bus}.
+     */
+    public void clear(String cacheName) {
+        dropReplicas(cacheName);
+        InvalidationBus bus = invalidationBus;
+        if (null != bus) {
+            bus.invalidateAll(cacheName);
+        }
+    }
+
+    /**
+     * @return the {@code n} keys read the most, the most read first, with
+     *         their counts scaled by the sample interval
+     */
+    public List<HotKey> getTopKeys(int n) {
+        List<Counter> top = new ArrayList<>();
+        for (Stripe stripe : stripes.values()) {
+            stripe.copyTo(top);
+        }
+        Collections.sort(top, new Comparator<Counter>() {
+            @Override
+            public int compare(Counter o1, Counter o2) {
+                return Long.compare(o2.count, o1.count);
+            }
+        });
+        long now = System.currentTimeMillis();
+        List<HotKey> hotKeys = new ArrayList<>(Math.min(n, top.size()));
+        for (Counter counter : top.subList(0, Math.min(n, top.size()))) {
+            Replica replica = replicas.get(new SimpleKey(counter.cacheName, counter.key));
+            hotKeys.add(new HotKey(counter.cacheName, counter.key,
+                    counter.count * sampleInterval, counter.error * sampleInterval,
+                    null != replica && replica.deadline > now));
+        }
+        return hotKeys;
+    }
+
+    private void dropReplica(String cacheName, Object key) {
+        if (!replicas.isEmpty()) {
+            replicas.remove(new SimpleKey(cacheName, key));
+        }
+    }
+
+    private void dropReplicas(String cacheName) {
+        Iterator<Replica> iterator = replicas.values().iterator();
+        while (iterator.hasNext()) {
+            if (cacheName.equals(iterator.next().cacheName)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void purge(long now) {
+        Iterator<Replica> iterator = replicas.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().deadline <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The Space-Saving counters of one cache name, as a stream-summary: a list
+     * of buckets ordered by count, each holding the counters of its count.
+     */
+    private final class Stripe {
+
+        private final String cacheName;
+
+        private final Map<Object, Counter> counters = new HashMap<>();
+
+        // the bucket of the lowest count, null when nothing is counted
+        private Bucket head;
+
+        private long windowEnd;
+
+        private Stripe(String cacheName) {
+            this.cacheName = cacheName;
+        }
+
+        /**
+         * @return the guaranteed reads of the key
+         */
+        private synchronized long record(Object key, long now) {
+            if (now >= windowEnd) {
+                decay();
+                windowEnd = now + window;
+            }
+            Counter counter = counters.get(key);
+            if (null != counter) {
+                increment(counter);
+            } else if (counters.size() >= capacity) {
+                // the key takes the place and the count of the least read
+                Counter min = head.counters.iterator().next();
+                counters.remove(min.key);
+                counter = new Counter(cacheName, key);
+                counter.error = head.count;
+                replace(min, counter);
+                counters.put(key, counter);
+                increment(counter);
+            } else {
+                counter = new Counter(cacheName, key);
+                if (null == head || head.count != 1) {
+                    link(null, new Bucket(1));
+                }
+                head.add(counter);
+                counters.put(key, counter);
+            }
+            return counter.bucket.count - counter.error;
+        }
+
+        private synchronized void copyTo(List<Counter> top) {
+            for (Bucket bucket = head; null != bucket; bucket = bucket.next) {
+                for (Counter counter : bucket.counters) {
+                    Counter copy = new Counter(cacheName, counter.key);
+                    copy.count = bucket.count;
+                    copy.error = counter.error;
+                    top.add(copy);
+                }
+            }
+        }
+
+        private void increment(Counter counter) {
+            Bucket bucket = counter.bucket;
+            Bucket next = bucket.next;
+            if (null == next || next.count != bucket.count + 1) {
+                next = new Bucket(bucket.count + 1);
+                link(bucket, next);
+            }
+            bucket.counters.remove(counter);
+            next.add(counter);
+            if (bucket.counters.isEmpty()) {
+                unlink(bucket);
+            }
+        }
+
+        private void replace(Counter old, Counter counter) {
+            Bucket bucket = old.bucket;
+            bucket.counters.remove(old);
+            bucket.add(counter);
+        }
+
+        /**
+         * Halve the counts, the order of the buckets stays, the ones reaching
+         * the same count are merged and the ones reaching zero dropped.
+         */
+        private void decay() {
+            Bucket bucket = head;
+            while (null != bucket) {
+                Bucket next = bucket.next;
+                bucket.count >>>= 1;
+                if (bucket.count == 0) {
+                    for (Counter counter : bucket.counters) {
+                        counters.remove(counter.key);
+                    }
+                    unlink(bucket);
+                } else {
+                    for (Counter counter : bucket.counters) {
+                        counter.error >>>= 1;
+                    }
+                    Bucket previous = bucket.previous;
+                    if (null != previous && previous.count == bucket.count) {
+                        for (Counter counter : bucket.counters) {
+                            previous.add(counter);
+                        }
+                        unlink(bucket);
+                    }
+                }
+                bucket = next;
+            }
+        }
+
+        /**
+         * Insert the bucket after the given one, at the head if it is
+         * {@code null}.
+         */
+        private void link(Bucket previous, Bucket bucket) {
+            Bucket next = null == previous ? head : previous.next;
+            bucket.previous = previous;
+            bucket.next = next;
+            if (null == previous) {
+                head = bucket;
+            } else {
+                previous.next = bucket;
+            }
+            if (null != next) {
+                next.previous = bucket;
+            }
+        }
+
+        private void unlink(Bucket bucket) {
+            if (null == bucket.previous) {
+                head = bucket.next;
+            } else {
+                bucket.previous.next = bucket.next;
+            }
+            if (null != bucket.next) {
+                bucket.next.previous = bucket.previous;
+            }
+        }
+    }
+
+    private static final class Bucket {
+
+        // the counters of this count, by identity
+        private final Set<Counter> counters = new HashSet<>();
+
+        private long count;
+
+        private Bucket previous;
+
+        private Bucket next;
+
+        private Bucket(long count) {
+            this.count = count;
+        }
+
+        private void add(Counter counter) {
+            counters.add(counter);
+            counter.bucket = this;
+        }
+    }
+
+    private static final class Counter {
+
+        private final String cacheName;
+
+        private final Object key;
+
+        // the count of the bucket, only set on the copies of getTopKeys
+        private long count;
+
+        private long error;
+
+        private Bucket bucket;
+
+        private Counter(String cacheName, Object key) {
+            this.cacheName = cacheName;
+            this.key = key;
+        }
+    }
+
+    private static final class Replica {
+
+        private final String cacheName;
+
+        private final Cache.ValueWrapper wrapper;
+
+        private final long deadline;
+
+        private Replica(String cacheName, Object value, long deadline) {
+            this.cacheName = cacheName;
+            this.wrapper = new SimpleValueWrapper(value);
+            this.deadline = deadline;
+        }
+    }
+}
@@ -14,39 +14,75 @@ package com.youmu.maven.springframework.cache.interceptor;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
 import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.beans.factory.NoUniqueBeanDefinitionException;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.CacheErrorHandler;
 import org.springframework.cache.interceptor.CacheEvictOperation;
 import org.springframework.cache.interceptor.CacheOperation;
+import org.springframework.cache.interceptor.CacheOperationInvocationContext;
 import org.springframework.cache.interceptor.CacheOperationInvoker;
 import org.springframework.cache.interceptor.CachePutOperation;
 import org.springframework.cache.interceptor.CacheResolver;
 import org.springframework.cache.interceptor.CacheableOperation;
 import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.cache.interceptor.SimpleCacheResolver;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.cache.support.SimpleValueWrapper;
 import org.springframework.context.expression.AnnotatedElementKey;
 import org.springframework.lang.UsesJava8;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
 
+import com.youmu.maven.springframework.cache.Expireable;
+import com.youmu.maven.springframework.cache.ExpireableBatchCacheableOperation;
+import com.youmu.maven.springframework.cache.ExpireableCacheableOperation;
+import com.youmu.maven.springframework.cache.cache.BatchExpireableCache;
+import com.youmu.maven.springframework.cache.cache.ExpireableCache;
+import com.youmu.maven.springframework.cache.cache.ExpireableValue;
 import com.youmu.maven.springframework.cache.exception.VariableNotAvailableException;
+import com.youmu.maven.springframework.cache.expression.CacheExpressionCompiler;
+import com.youmu.maven.springframework.cache.expression.CompiledCacheExpression;
+import com.youmu.maven.springframework.cache.hotkey.HotKeyDetector;
+import com.youmu.maven.springframework.cache.key.KeyEncoder;
+import com.youmu.maven.springframework.cache.metrics.CacheMetrics;
+import com.youmu.maven.springframework.cache.metrics.MetricsCacheErrorHandler;
+import com.youmu.maven.springframework.cache.utils.CacheUtils;
+import com.youmu.maven.springframework.cache.utils.SingleFlight;
 
 /**
  * @from spring-context
@@ -55,7 +91,7 @@ import com.youmu.maven.springframework.cache.exception.VariableNotAvailableExcep
 @SuppressWarnings("serial")
 public class CustomableCacheInterceptor
         extends org.springframework.cache.interceptor.CacheInterceptor
-        implements MethodInterceptor, Serializable {
+        implements MethodInterceptor, DisposableBean, Serializable {
     private static Class<?> javaUtilOptionalClass = null;
 
     static {
@@ -79,12 +115,174 @@ public class CustomableCacheInterceptor
 
     private boolean initialized = false;
 
+    private static final int DEFAULT_REFRESH_THREADS = 4;
+
+    private static final int DEFAULT_REFRESH_QUEUE = 1024;
+
+    private boolean singleFlight = false;
+
+    // do not serialize running invocations
+    private final transient SingleFlight invocations = new SingleFlight();
+
+    // the futures of the misses of asynchronous methods not completed yet
+    private final transient ConcurrentMap<Object, CompletableFuture<Object>> asyncInvocations = new ConcurrentHashMap<>(
+            256);
+
+    // cache entries being refreshed ahead of their expire
+    private final transient Map<Object, Boolean> refreshingKeys = new ConcurrentHashMap<>(256);
+
+    private transient Executor refreshExecutor;
+
+    private transient KeyEncoder keyEncoder;
+
+    private CacheMetrics metrics;
+
+    private HotKeyDetector hotKeyDetector;
+
+    // built again only when the metrics or the configured error handler change
+    private transient volatile MetricsCacheErrorHandler metricsErrorHandler;
+
+    private transient ThreadPoolExecutor defaultRefreshExecutor;
+
+    // do not serialize the plans, keyed by target class then method
+    private final transient ConcurrentMap<Class<?>, Map<Method, CacheOperationPlan>> plans = new ConcurrentHashMap<>(
+            256);
+
     protected CustomableCacheOperationContext getOperationContext(CacheOperation operation,
             Method method, Object[] args, Object target, Class<?> targetClass) {
         CacheOperationMetadata metadata = getCacheOperationMetadata(operation, method, targetClass);
+        return getOperationContext(metadata, args, target);
+    }
+
+    protected CustomableCacheOperationContext getOperationContext(CacheOperationMetadata metadata,
+            Object[] args, Object target) {
         return new CustomableCacheOperationContext(metadata, args, target);
     }
 
+    /**
+     * Set whether concurrent misses of the same cache key in this jvm share a
+     * single invocation of the method, the first caller stores the result and
+     * the others return it. Applies to every cacheable operation, including
+     * the ones with {@code unless}.
+     */
+    public void setSingleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    public boolean isSingleFlight() {
+        return this.singleFlight;
+    }
+
+    /**
+     * Set the encoder of every generated key, {@code null} hands the
+     * generated keys to the caches as they are.
+     */
+    public void setKeyEncoder(KeyEncoder keyEncoder) {
+        this.keyEncoder = keyEncoder;
+    }
+
+    public KeyEncoder getKeyEncoder() {
+        return keyEncoder;
+    }
+
+    /**
+     * Set the receiver of the hits, misses, puts, evictions, load times and
+     * errors of every operation. {@code null}, the default, records nothing
+     * and does not even read the clock.
+     */
+    public void setMetrics(CacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the detector of the keys read the most, whose values are then served
+     * from an in-process replica for a short while. {@code null}, the default,
+     * reads every key from its caches.
+     */
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    public HotKeyDetector getHotKeyDetector() {
+        return hotKeyDetector;
+    }
+
+    /**
+     * The configured error handler, recording the errors first when there are
+     * {@link #setMetrics metrics}.
+     */
+    @Override
+    public CacheErrorHandler getErrorHandler() {
+        CacheErrorHandler errorHandler = super.getErrorHandler();
+        CacheMetrics metrics = this.metrics;
+        if (null == metrics) {
+            return errorHandler;
+        }
+        MetricsCacheErrorHandler metricsErrorHandler = this.metricsErrorHandler;
+        if (null == metricsErrorHandler || metricsErrorHandler.getErrorHandler() != errorHandler
+                || metricsErrorHandler.getMetrics() != metrics) {
+            metricsErrorHandler = new MetricsCacheErrorHandler(errorHandler, metrics);
+            this.metricsErrorHandler = metricsErrorHandler;
+        }
+        return metricsErrorHandler;
+    }
+
+    /**
+     * Set the executor of the refreshes after write, the refreshes of one
+     * cache entry never overlap so the executor only has to bound the number
+     * of distinct entries refreshed at once. A refresh rejected by the
+     * executor is skipped, the next read tries again. Defaults to a pool of
+     * {@value #DEFAULT_REFRESH_THREADS} daemon threads with a queue of
+     * {@value #DEFAULT_REFRESH_QUEUE} refreshes, a virtual thread executor
+     * fits as well where the jvm has one.
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    public Executor getRefreshExecutor() {
+        if (this.refreshExecutor == null) {
+            synchronized (this.refreshingKeys) {
+                if (this.refreshExecutor == null) {
+                    this.defaultRefreshExecutor = new ThreadPoolExecutor(DEFAULT_REFRESH_THREADS,
+                            DEFAULT_REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(DEFAULT_REFRESH_QUEUE),
+                            newRefreshThreadFactory());
+                    this.defaultRefreshExecutor.allowCoreThreadTimeOut(true);
+                    this.refreshExecutor = this.defaultRefreshExecutor;
+                }
+            }
+        }
+        return this.refreshExecutor;
+    }
+
+    private static CustomizableThreadFactory newRefreshThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-refresh-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    @Override
+    public void destroy() {
+        if (this.defaultRefreshExecutor != null) {
+            this.defaultRefreshExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public Object invoke(final MethodInvocation invocation) throws Throwable {
+        try {
+            return execute(new MethodInvocationInvoker(invocation), invocation.getThis(),
+                    invocation.getMethod(), invocation.getArguments());
+        } catch (CacheOperationInvoker.ThrowableWrapper th) {
+            throw th.getOriginal();
+        }
+    }
+
     @Override
     public void afterSingletonsInstantiated() {
         super.afterSingletonsInstantiated();
@@ -124,6 +322,11 @@ public class CustomableCacheInterceptor
             } else {
                 operationCacheResolver = getCacheResolver();
             }
+            if (operationCacheResolver != null
+                    && operationCacheResolver.getClass() == SimpleCacheResolver.class) {
+                // the caches of a cache name never change, resolve them once
+                operationCacheResolver = new StaticCacheResolver(operationCacheResolver);
+            }
             metadata = new CacheOperationMetadata(operation, method, targetClass,
                     operationKeyGenerator, operationCacheResolver);
             this.metadataCache.put(cacheKey, metadata);
@@ -136,6 +339,7 @@ public class CustomableCacheInterceptor
      */
     protected void clearMetadataCache() {
         this.metadataCache.clear();
+        this.plans.clear();
         super.clearMetadataCache();
     }
 
@@ -144,18 +348,107 @@ public class CustomableCacheInterceptor
         // Check whether aspect is enabled (to cope with cases where the AJ is
         // pulled in automatically)
         if (this.initialized) {
-            Class<?> targetClass = getTargetClass(target);
-            Collection<CacheOperation> operations = getCacheOperationSource()
-                    .getCacheOperations(method, targetClass);
-            if (!CollectionUtils.isEmpty(operations)) {
-                return execute(invoker, method,
-                        new CacheOperationContexts(operations, method, args, target, targetClass));
+            CacheOperationPlan plan = getCacheOperationPlan(method, getTargetClass(target));
+            if (plan.operations.length > 0) {
+                CacheOperationContexts contexts = new CacheOperationContexts(plan, method, args,
+                        target);
+                try {
+                    return execute(invoker, method, contexts);
+                } finally {
+                    contexts.releaseRefresh();
+                }
             }
         }
 
         return invoker.invoke();
     }
 
+    /**
+     * Return the {@link CacheOperationPlan} of the method, built on its first
+     * invocation on the target class. Looking it up allocates nothing.
+     */
+    protected CacheOperationPlan getCacheOperationPlan(Method method, Class<?> targetClass) {
+        if (targetClass == null) {
+            return createCacheOperationPlan(method, null);
+        }
+        Map<Method, CacheOperationPlan> methodPlans = this.plans.get(targetClass);
+        if (methodPlans == null) {
+            methodPlans = new ConcurrentHashMap<>(16);
+            Map<Method, CacheOperationPlan> existing = this.plans.putIfAbsent(targetClass,
+                    methodPlans);
+            if (existing != null) {
+                methodPlans = existing;
+            }
+        }
+        CacheOperationPlan plan = methodPlans.get(method);
+        if (plan == null) {
+            plan = createCacheOperationPlan(method, targetClass);
+            methodPlans.put(method, plan);
+        }
+        return plan;
+    }
+
+    private CacheOperationPlan createCacheOperationPlan(Method method, Class<?> targetClass) {
+        Collection<CacheOperation> operations = getCacheOperationSource()
+                .getCacheOperations(method, targetClass);
+        if (CollectionUtils.isEmpty(operations)) {
+            return CacheOperationPlan.EMPTY;
+        }
+        CacheOperation[] operationArray = operations.toArray(new CacheOperation[operations.size()]);
+        CacheOperationMetadata[] metadata = new CacheOperationMetadata[operationArray.length];
+        CacheOperationExpressions[] expressions = new CacheOperationExpressions[operationArray.length];
+        boolean sync = false;
+        for (int i = 0; i < operationArray.length; i++) {
+            CacheOperation operation = operationArray[i];
+            metadata[i] = getCacheOperationMetadata(operation, method, targetClass);
+            expressions[i] = new CacheOperationExpressions(operation, method, targetClass);
+            if (operation instanceof CacheableOperation
+                    && ((CacheableOperation) operation).isSync()) {
+                sync = true;
+            }
+        }
+        CacheOperationPlan plan = new CacheOperationPlan(operationArray, metadata, expressions,
+                sync);
+        if (plan.counts[CacheOperationPlan.BATCH] > 0) {
+            plan.batchArgument = validateBatchOperation(operationArray, method);
+        }
+        return plan;
+    }
+
+    /**
+     * @return the index of the collection of ids among the parameters
+     */
+    private int validateBatchOperation(CacheOperation[] operations, Method method) {
+        if (operations.length > 1) {
+            throw new IllegalStateException(
+                    "@ExpireableBatchCacheable cannot be combined with other cache operations on '"
+                            + method + "'");
+        }
+        ExpireableBatchCacheableOperation operation = (ExpireableBatchCacheableOperation) operations[0];
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        int argument = operation.getArgument();
+        if (argument < 0) {
+            for (int i = 0; i < parameterTypes.length && argument < 0; i++) {
+                if (Collection.class.isAssignableFrom(parameterTypes[i])) {
+                    argument = i;
+                }
+            }
+        }
+        if (argument < 0 || argument >= parameterTypes.length
+                || !Collection.class.isAssignableFrom(parameterTypes[argument])) {
+            throw new IllegalStateException(
+                    "@ExpireableBatchCacheable needs a collection parameter on '" + method + "'");
+        }
+        Class<?> returnType = method.getReturnType();
+        if (!Collection.class.isAssignableFrom(returnType)
+                && !Map.class.isAssignableFrom(returnType)) {
+            throw new IllegalStateException(
+                    "@ExpireableBatchCacheable needs a collection or map result on '" + method
+                            + "'");
+        }
+        return argument;
+    }
+
     private Class<?> getTargetClass(Object target) {
         Class<?> targetClass = AopProxyUtils.ultimateTargetClass(target);
         if (targetClass == null && target != null) {
@@ -164,22 +457,52 @@ public class CustomableCacheInterceptor
         return targetClass;
     }
 
-    private Object execute(final CacheOperationInvoker invoker, Method method,
+    private Object execute(final CacheOperationInvoker invoker, final Method method,
             CacheOperationContexts contexts) {
+        // Batch caching handles the method on its own
+        if (!contexts.batchContexts.isEmpty()) {
+            return executeBatch(invoker, method, contexts.batchContexts.get(0),
+                    contexts.batchArgument);
+        }
+
+        // Asynchronous methods are cached by the value of their future
+        if (CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+            return executeAsync(invoker, method, contexts);
+        }
+
         // Special handling of synchronized invocation
         if (contexts.isSynchronized()) {
-            CustomableCacheOperationContext context = contexts.get(CacheableOperation.class)
-                    .iterator().next();
+            final CustomableCacheOperationContext context = contexts
+                    .get(CacheableOperation.class).iterator().next();
             if (isConditionPassing(context, coeeContainer.getNoResult())) {
                 Object key = generateKey(context, coeeContainer.getNoResult());
-                Cache cache = context.getCaches().iterator().next();
+                final Cache cache = context.getCaches().iterator().next();
+                final boolean[] loaded = new boolean[1];
                 try {
-                    return wrapCacheValue(method, cache.get(key, new Callable<Object>() {
+                    Object cacheValue = cache.get(key, new Callable<Object>() {
                         @Override
                         public Object call() throws Exception {
-                            return unwrapReturnValue(invokeOperation(invoker));
+                            loaded[0] = true;
+                            long invokeTime = System.currentTimeMillis();
+                            long startNanos = 0;
+                            if (null != metrics) {
+                                // a miss even when the method throws
+                                metrics.recordMisses(cache.getName(), method, 1);
+                                startNanos = System.nanoTime();
+                            }
+                            Object value = toExpireableValue(context,
+                                    unwrapReturnValue(invokeOperation(invoker)), invokeTime);
+                            if (null != metrics) {
+                                recordLoad(context, startNanos);
+                                metrics.recordPuts(cache.getName(), method, 1);
+                            }
+                            return value;
                         }
-                    }));
+                    });
+                    if (null != metrics && !loaded[0]) {
+                        metrics.recordHits(cache.getName(), method, 1);
+                    }
+                    return wrapCacheValue(method, unwrapExpireableValue(cacheValue));
                 } catch (Cache.ValueRetrievalException ex) {
                     // The invoker wraps any Throwable in a ThrowableWrapper
                     // instance so we
@@ -196,25 +519,59 @@ public class CustomableCacheInterceptor
                 coeeContainer.getNoResult());
 
         // Check if we have a cached item matching the conditions
-        Cache.ValueWrapper cacheHit = findCachedItem(contexts.get(CacheableOperation.class));
+        Cache.ValueWrapper cacheHit = findCachedItem(contexts.get(CacheableOperation.class),
+                contexts);
 
         // Collect puts from any @Cacheable miss, if no cached item is found
-        List<CachePutRequest> cachePutRequests = new LinkedList<CachePutRequest>();
+        List<CachePutRequest> cachePutRequests;
+        if (cacheHit == null || !contexts.get(CachePutOperation.class).isEmpty()) {
+            cachePutRequests = new LinkedList<CachePutRequest>();
+        } else {
+            cachePutRequests = Collections.emptyList();
+        }
         if (cacheHit == null) {
             collectPutRequests(contexts.get(CacheableOperation.class), coeeContainer.getNoResult(),
                     cachePutRequests);
         }
+        // the put of the first @Cacheable miss, if any, is timed as the load
+        CachePutRequest loadRequest = cachePutRequests.isEmpty() ? null
+                : cachePutRequests.get(0);
 
         Object cacheValue;
         Object returnValue;
+        long invokeTime = 0;
 
-        if (cacheHit != null && cachePutRequests.isEmpty() && !hasCachePut(contexts)) {
+        boolean hasCachePut = hasCachePut(contexts);
+        if (cacheHit != null && cachePutRequests.isEmpty() && !hasCachePut) {
             // If there are no put requests, just use the cache hit
             cacheValue = cacheHit.get();
             returnValue = wrapCacheValue(method, cacheValue);
+            if (contexts.isRefreshPending()) {
+                refreshLater(invoker, contexts);
+            }
+        } else if (this.singleFlight && cacheHit == null && !hasCachePut
+                && !cachePutRequests.isEmpty()) {
+            // Share one invocation between concurrent misses of the same key,
+            // the put requests are applied by the caller that invoked
+            try {
+                returnValue = invokeOnce(invoker, cachePutRequests);
+            } catch (CacheOperationInvoker.ThrowableWrapper ex) {
+                return staleOrThrow(method, contexts, ex);
+            }
+            cacheValue = unwrapReturnValue(returnValue);
+            cachePutRequests.clear();
         } else {
             // Invoke the method if we don't have a cache hit
-            returnValue = invokeOperation(invoker);
+            invokeTime = System.currentTimeMillis();
+            long startNanos = null == metrics || null == loadRequest ? 0 : System.nanoTime();
+            try {
+                returnValue = invokeOperation(invoker);
+            } catch (CacheOperationInvoker.ThrowableWrapper ex) {
+                return staleOrThrow(method, contexts, ex);
+            }
+            if (startNanos != 0) {
+                recordLoad(loadRequest.context, startNanos);
+            }
             cacheValue = unwrapReturnValue(returnValue);
         }
 
@@ -224,7 +581,7 @@ public class CustomableCacheInterceptor
         // Process any collected put requests, either from @CachePut or a
         // @Cacheable miss
         for (CachePutRequest cachePutRequest : cachePutRequests) {
-            cachePutRequest.apply(cacheValue);
+            cachePutRequest.apply(cacheValue, invokeTime);
         }
 
         // Process any late evictions
@@ -233,7 +590,567 @@ public class CustomableCacheInterceptor
         return returnValue;
     }
 
+    /**
+     * A hit returns a completed future. A miss returns the future of the
+     * method, shared by the concurrent misses of the key, so {@code sync} needs
+     * nothing more here. The caller's future completes with the value of the
+     * method, which is then put from the refresh executor, so neither the
+     * thread completing the future nor the caller wait for the cache and a
+     * failing put is only logged.
+     */
+    private Object executeAsync(CacheOperationInvoker invoker, final Method method,
+            final CacheOperationContexts contexts) {
+        processCacheEvicts(contexts.get(CacheEvictOperation.class), true,
+                coeeContainer.getNoResult());
+
+        Cache.ValueWrapper cacheHit = findCachedItem(contexts.get(CacheableOperation.class),
+                contexts);
+        final List<CachePutRequest> cachePutRequests = new LinkedList<CachePutRequest>();
+        if (cacheHit == null) {
+            collectPutRequests(contexts.get(CacheableOperation.class), coeeContainer.getNoResult(),
+                    cachePutRequests);
+        }
+        boolean hasCachePut = hasCachePut(contexts);
+        if (cacheHit != null && !hasCachePut) {
+            if (contexts.isRefreshPending()) {
+                refreshLater(invoker, contexts);
+            }
+            return wrapCacheValue(method, cacheHit.get());
+        }
+
+        // the first miss of a key invokes, the others wait for its future
+        final CompletableFuture<Object> result = new CompletableFuture<Object>();
+        Object key = null;
+        if (!hasCachePut && !cachePutRequests.isEmpty()) {
+            CachePutRequest first = cachePutRequests.get(0);
+            key = new SimpleKey(first.context.getOperation().getCacheNames(), first.key);
+            CompletableFuture<Object> inFlight = asyncInvocations.putIfAbsent(key, result);
+            if (null != inFlight) {
+                return dependentOf(inFlight);
+            }
+        }
+        final Object flightKey = key;
+
+        final long invokeTime = System.currentTimeMillis();
+        final long startNanos = null == metrics ? 0 : System.nanoTime();
+        Object returnValue;
+        try {
+            returnValue = invokeOperation(invoker);
+        } catch (CacheOperationInvoker.ThrowableWrapper ex) {
+            completeAsync(method, flightKey, result, contexts, null, ex.getOriginal());
+            return staleOrThrow(method, contexts, ex);
+        }
+        if (!(returnValue instanceof CompletionStage)) {
+            completeAsync(method, flightKey, result, contexts, null, null);
+            return returnValue;
+        }
+        ((CompletionStage<?>) returnValue).whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(final Object value, Throwable ex) {
+                if (null != ex) {
+                    completeAsync(method, flightKey, result, contexts, null, ex);
+                    return;
+                }
+                if (null != metrics && !cachePutRequests.isEmpty()) {
+                    recordLoad(cachePutRequests.get(0).context, startNanos);
+                }
+                // the misses arriving until the value is put share it
+                result.complete(value);
+                applyLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Object cacheValue = unwrapReturnValue(value);
+                            collectPutRequests(contexts.get(CachePutOperation.class), cacheValue,
+                                    cachePutRequests);
+                            for (CachePutRequest cachePutRequest : cachePutRequests) {
+                                cachePutRequest.apply(cacheValue, invokeTime);
+                            }
+                            processCacheEvicts(contexts.get(CacheEvictOperation.class), false,
+                                    cacheValue);
+                        } catch (RuntimeException cacheEx) {
+                            // rethrown by the error handler, the method succeeded
+                            logger.warn("Caching the value of future of method " + method
+                                    + " failed", cacheEx);
+                        } finally {
+                            if (null != flightKey) {
+                                asyncInvocations.remove(flightKey, result);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+        return dependentOf(result);
+    }
+
+    /**
+     * Run the cache writes following a completed future on the refresh
+     * executor, or on the calling thread if the executor rejects them.
+     */
+    private void applyLater(Runnable writes) {
+        try {
+            getRefreshExecutor().execute(writes);
+        } catch (RejectedExecutionException ex) {
+            writes.run();
+        }
+    }
+
+    /**
+     * Release the key of the miss and complete its future, with the expired
+     * value kept for the failure of the method if there is one.
+     */
+    private void completeAsync(Method method, Object flightKey, CompletableFuture<Object> result,
+            CacheOperationContexts contexts, Object value, Throwable ex) {
+        if (null != flightKey) {
+            asyncInvocations.remove(flightKey, result);
+        }
+        if (null == ex) {
+            result.complete(value);
+        } else if (null != contexts.staleValue) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Serving expired cache entry on failure of future of method "
+                        + method, ex);
+            }
+            result.complete(contexts.staleValue.get());
+        } else {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * @return a future completed with the shared one, so a caller cancelling
+     *         its future does not cancel the others
+     */
+    private static CompletableFuture<Object> dependentOf(CompletableFuture<Object> future) {
+        final CompletableFuture<Object> dependent = new CompletableFuture<Object>();
+        future.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable ex) {
+                if (null == ex) {
+                    dependent.complete(value);
+                } else {
+                    dependent.completeExceptionally(ex);
+                }
+            }
+        });
+        return dependent;
+    }
+
+    /**
+     * Read the cached ids in one batch per cache, the ids missing in a cache
+     * are looked up in the next one. Invoke the method with the ids missing in
+     * every cache only, write their values back to every cache in one batch
+     * and return the values of every id in the order of the ids.
+     */
+    private Object executeBatch(CacheOperationInvoker invoker, Method method,
+            CustomableCacheOperationContext context, int argument) {
+        Object[] args = context.getArgs();
+        Collection<?> ids = (Collection<?>) args[argument];
+        if (ids == null || ids.isEmpty()
+                || !isConditionPassing(context, coeeContainer.getNoResult())) {
+            return invokeOperation(invoker);
+        }
+        ExpireableBatchCacheableOperation operation = (ExpireableBatchCacheableOperation) context
+                .getOperation();
+        List<Object> keys = new ArrayList<Object>(ids);
+        Map<Object, Object> values = new HashMap<Object, Object>(keys.size() * 2);
+        List<Object> missingKeys = keys;
+        List<Object> cacheKeys = keys;
+        if (null != keyEncoder) {
+            cacheKeys = new ArrayList<Object>(keys.size());
+            for (Object key : keys) {
+                cacheKeys.add(encodeKey(key));
+            }
+        }
+        for (Cache cache : context.getCaches()) {
+            if (missingKeys.isEmpty()) {
+                break;
+            }
+            List<Cache.ValueWrapper> cached = doGetAll(cache, cacheKeys);
+            List<Object> stillMissingKeys = new ArrayList<Object>();
+            List<Object> stillMissingCacheKeys = new ArrayList<Object>();
+            for (int i = 0; i < missingKeys.size(); i++) {
+                Cache.ValueWrapper wrapper = cached.get(i);
+                if (wrapper != null) {
+                    values.put(missingKeys.get(i), unwrapExpireableValue(wrapper.get()));
+                } else {
+                    stillMissingKeys.add(missingKeys.get(i));
+                    stillMissingCacheKeys.add(cacheKeys.get(i));
+                }
+            }
+            if (null != metrics) {
+                metrics.recordHits(cache.getName(), method,
+                        missingKeys.size() - stillMissingKeys.size());
+                metrics.recordMisses(cache.getName(), method, stillMissingKeys.size());
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace(stillMissingKeys.size() + " of " + missingKeys.size()
+                        + " keys missing in cache '" + cache.getName() + "'");
+            }
+            missingKeys = stillMissingKeys;
+            cacheKeys = stillMissingCacheKeys;
+        }
+        if (!missingKeys.isEmpty()) {
+            Collection<Object> missingIds = copyIds(method.getParameterTypes()[argument],
+                    missingKeys);
+            Object returnValue;
+            long startNanos = null == metrics ? 0 : System.nanoTime();
+            if (missingIds != null && invoker instanceof MethodInvocationInvoker
+                    && ((MethodInvocationInvoker) invoker).isCopyable()) {
+                Object[] missingArgs = args.clone();
+                missingArgs[argument] = missingIds;
+                returnValue = ((MethodInvocationInvoker) invoker).invoke(missingArgs);
+                missingIds = missingKeys;
+            } else {
+                returnValue = invokeOperation(invoker);
+                missingIds = keys;
+            }
+            if (null != metrics) {
+                recordLoad(context, startNanos);
+            }
+            Map<Object, Object> loaded = toBatchEntries(operation, method, missingIds,
+                    unwrapReturnValue(returnValue));
+            values.putAll(loaded);
+            if (null != keyEncoder) {
+                Map<Object, Object> encoded = new LinkedHashMap<Object, Object>(loaded.size() * 2);
+                for (Map.Entry<Object, Object> entry : loaded.entrySet()) {
+                    encoded.put(encodeKey(entry.getKey()), entry.getValue());
+                }
+                loaded = encoded;
+            }
+            long expire = CacheUtils.getStoreExpireMillis(operation);
+            for (Cache cache : context.getCaches()) {
+                boolean stored = doPutAll(cache, loaded, expire);
+                if (null != hotKeyDetector) {
+                    for (Object key : loaded.keySet()) {
+                        hotKeyDetector.evict(cache.getName(), key);
+                    }
+                }
+                if (null != metrics && stored) {
+                    metrics.recordPuts(cache.getName(), method, loaded.size());
+                }
+            }
+        }
+        return wrapCacheValue(method, toBatchResult(method.getReturnType(), keys, values));
+    }
+
+    private Collection<Object> copyIds(Class<?> parameterType, List<Object> ids) {
+        if (parameterType.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<Object>(ids);
+        }
+        if (parameterType.isAssignableFrom(LinkedHashSet.class)) {
+            return new LinkedHashSet<Object>(ids);
+        }
+        return null;
+    }
+
+    private Map<Object, Object> toBatchEntries(ExpireableBatchCacheableOperation operation,
+            Method method, Collection<Object> ids, Object result) {
+        Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+        if (result instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+                if (entry.getValue() != null) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+        } else if (result instanceof Collection) {
+            Collection<?> elements = (Collection<?>) result;
+            if (StringUtils.hasText(operation.getResultKey())) {
+                for (Object element : elements) {
+                    if (element != null) {
+                        entries.put(PropertyAccessorFactory.forBeanPropertyAccess(element)
+                                .getPropertyValue(operation.getResultKey()), element);
+                    }
+                }
+            } else {
+                if (elements.size() != ids.size()) {
+                    throw new IllegalStateException(method + " returned " + elements.size()
+                            + " values for " + ids.size()
+                            + " ids, set the resultKey of @ExpireableBatchCacheable");
+                }
+                Iterator<Object> idIterator = ids.iterator();
+                for (Object element : elements) {
+                    Object id = idIterator.next();
+                    if (element != null) {
+                        entries.put(id, element);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private Object toBatchResult(Class<?> returnType, List<Object> keys,
+            Map<Object, Object> values) {
+        if (Map.class.isAssignableFrom(returnType)) {
+            Map<Object, Object> result = new LinkedHashMap<Object, Object>(keys.size() * 2);
+            for (Object key : keys) {
+                Object value = values.get(key);
+                if (value != null) {
+                    result.put(key, value);
+                }
+            }
+            return result;
+        }
+        Collection<Object> result;
+        if (returnType.isAssignableFrom(ArrayList.class)) {
+            result = new ArrayList<Object>(keys.size());
+        } else {
+            result = new LinkedHashSet<Object>(keys.size() * 2);
+        }
+        for (Object key : keys) {
+            Object value = values.get(key);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Execute {@link BatchExpireableCache#getAll} on the specified
+     * {@link Cache}, or a get per key, and invoke the error handler if an
+     * exception occurs. Every key is a miss then.
+     */
+    protected List<Cache.ValueWrapper> doGetAll(Cache cache, List<Object> keys) {
+        try {
+            if (cache instanceof BatchExpireableCache) {
+                return ((BatchExpireableCache) cache).getAll(keys);
+            }
+            List<Cache.ValueWrapper> values = new ArrayList<Cache.ValueWrapper>(keys.size());
+            for (Object key : keys) {
+                values.add(cache.get(key));
+            }
+            return values;
+        } catch (RuntimeException ex) {
+            getErrorHandler().handleCacheGetError(ex, cache, keys);
+            return Arrays.asList(new Cache.ValueWrapper[keys.size()]);
+        }
+    }
+
+    /**
+     * Execute {@link BatchExpireableCache#putAll} on the specified
+     * {@link Cache}, or a put per entry, and invoke the error handler if an
+     * exception occurs.
+     *
+     * @return whether the entries were stored
+     */
+    protected boolean doPutAll(Cache cache, Map<Object, Object> entries, long expire) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        try {
+            if (cache instanceof BatchExpireableCache) {
+                ((BatchExpireableCache) cache).putAll(entries, expire);
+                return true;
+            }
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                if (expire > 0 && cache instanceof ExpireableCache) {
+                    ((ExpireableCache) cache).put(entry.getKey(), entry.getValue(), expire);
+                } else {
+                    cache.put(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (RuntimeException ex) {
+            getErrorHandler().handleCachePutError(ex, cache, entries.keySet(), entries);
+            return false;
+        }
+        return true;
+    }
+
+    private Object invokeOnce(final CacheOperationInvoker invoker,
+            final List<CachePutRequest> cachePutRequests) {
+        final CachePutRequest first = cachePutRequests.get(0);
+        Object flightKey = new SimpleKey(first.context.getOperation().getCacheNames(),
+                first.key);
+        return this.invocations.execute(flightKey, new Callable<Object>() {
+            @Override
+            public Object call() {
+                long invokeTime = System.currentTimeMillis();
+                long startNanos = null == metrics ? 0 : System.nanoTime();
+                Object returnValue = invokeOperation(invoker);
+                if (null != metrics) {
+                    recordLoad(first.context, startNanos);
+                }
+                Object cacheValue = unwrapReturnValue(returnValue);
+                for (CachePutRequest cachePutRequest : cachePutRequests) {
+                    cachePutRequest.apply(cacheValue, invokeTime);
+                }
+                return returnValue;
+            }
+        });
+    }
+
+    /**
+     * Return the expired value kept for the failure of the method, if any.
+     */
+    private Object staleOrThrow(Method method, CacheOperationContexts contexts,
+            CacheOperationInvoker.ThrowableWrapper ex) {
+        if (contexts.staleValue == null) {
+            throw ex;
+        }
+        if (logger.isWarnEnabled()) {
+            logger.warn("Serving expired cache entry on failure of method " + method,
+                    ex.getOriginal());
+        }
+        return wrapCacheValue(method, contexts.staleValue.get());
+    }
+
+    /**
+     * Invoke the method again off the caller thread and put its result, the
+     * claim of the cache entry is handed to the refresh and released when it
+     * ends.
+     */
+    private void refreshLater(CacheOperationInvoker invoker, CacheOperationContexts contexts) {
+        if (!(invoker instanceof MethodInvocationInvoker)) {
+            return;
+        }
+        final CacheOperationInvoker refreshInvoker = ((MethodInvocationInvoker) invoker).copy();
+        if (refreshInvoker == null) {
+            return;
+        }
+        final List<CachePutRequest> cachePutRequests = new LinkedList<CachePutRequest>();
+        collectPutRequests(contexts.get(CacheableOperation.class), coeeContainer.getNoResult(),
+                cachePutRequests);
+        final Object refreshKey = contexts.handOverRefresh();
+        try {
+            getRefreshExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean pending = false;
+                    try {
+                        final long invokeTime = System.currentTimeMillis();
+                        final long startNanos = null == metrics ? 0 : System.nanoTime();
+                        Object returnValue = invokeOperation(refreshInvoker);
+                        if (returnValue instanceof CompletionStage) {
+                            // the claim is released once the future completes
+                            pending = true;
+                            ((CompletionStage<?>) returnValue)
+                                    .whenComplete(new BiConsumer<Object, Throwable>() {
+                                        @Override
+                                        public void accept(final Object value, Throwable ex) {
+                                            if (null != ex) {
+                                                logger.warn("Refresh of cache entry "
+                                                        + refreshKey + " failed", ex);
+                                                refreshingKeys.remove(refreshKey);
+                                                return;
+                                            }
+                                            applyLater(new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    try {
+                                                        applyRefresh(cachePutRequests,
+                                                                unwrapReturnValue(value),
+                                                                invokeTime, startNanos);
+                                                    } catch (RuntimeException cacheEx) {
+                                                        logger.warn("Refresh of cache entry "
+                                                                + refreshKey + " failed",
+                                                                cacheEx);
+                                                    } finally {
+                                                        refreshingKeys.remove(refreshKey);
+                                                    }
+                                                }
+                                            });
+                                        }
+                                    });
+                            return;
+                        }
+                        applyRefresh(cachePutRequests, unwrapReturnValue(returnValue), invokeTime,
+                                startNanos);
+                    } catch (CacheOperationInvoker.ThrowableWrapper ex) {
+                        logger.warn("Refresh of cache entry " + refreshKey + " failed",
+                                ex.getOriginal());
+                    } catch (RuntimeException ex) {
+                        logger.warn("Refresh of cache entry " + refreshKey + " failed", ex);
+                    } finally {
+                        if (!pending) {
+                            refreshingKeys.remove(refreshKey);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            refreshingKeys.remove(refreshKey);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Refresh of cache entry " + refreshKey + " rejected", ex);
+            }
+        }
+    }
+
+    private void applyRefresh(List<CachePutRequest> cachePutRequests, Object cacheValue,
+            long invokeTime, long startNanos) {
+        if (null != metrics && !cachePutRequests.isEmpty()) {
+            recordLoad(cachePutRequests.get(0).context, startNanos);
+        }
+        for (CachePutRequest cachePutRequest : cachePutRequests) {
+            cachePutRequest.apply(cacheValue, invokeTime);
+        }
+    }
+
+    /**
+     * Store the value with its timing when the operation needs it.
+     * @param invokeTime when the method was invoked
+     */
+    private Object toExpireableValue(CustomableCacheOperationContext context, Object value,
+            long invokeTime) {
+        CacheOperation operation = context.getOperation();
+        if (operation instanceof ExpireableCacheableOperation
+                && ((ExpireableCacheableOperation) operation).isValueWrapped()) {
+            long now = System.currentTimeMillis();
+            return new ExpireableValue(value, now, now - invokeTime,
+                    CacheUtils.getExpireMillis((Expireable) operation));
+        }
+        return value;
+    }
+
+    private Object unwrapExpireableValue(Object cacheValue) {
+        if (cacheValue instanceof ExpireableValue) {
+            return ((ExpireableValue) cacheValue).getValue();
+        }
+        return cacheValue;
+    }
+
+    /**
+     * XFetch, the closer to its expire and the longer its computation took,
+     * the likelier a read recomputes the value.
+     */
+    private boolean shouldRefreshEarly(CustomableCacheOperationContext context,
+            ExpireableValue value) {
+        CacheOperation operation = context.getOperation();
+        if (!(operation instanceof ExpireableCacheableOperation)
+                || !((ExpireableCacheableOperation) operation).isRefreshAhead()) {
+            return false;
+        }
+        double beta = ((ExpireableCacheableOperation) operation).getBeta();
+        double gap = -value.getLoadTime() * beta
+                * Math.log(ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= value.getExpireTime();
+    }
+
+    private boolean isStale(CustomableCacheOperationContext context, ExpireableValue value) {
+        CacheOperation operation = context.getOperation();
+        return operation instanceof ExpireableCacheableOperation
+                && ((ExpireableCacheableOperation) operation).getStaleIfErrorMillis() > 0
+                && System.currentTimeMillis() >= value.getExpireTime();
+    }
+
+    private boolean isRefreshDue(CustomableCacheOperationContext context,
+            ExpireableValue value) {
+        CacheOperation operation = context.getOperation();
+        if (!(operation instanceof ExpireableCacheableOperation)) {
+            return false;
+        }
+        long refreshAfter = ((ExpireableCacheableOperation) operation).getRefreshAfterMillis();
+        return refreshAfter > 0
+                && System.currentTimeMillis() - value.getCreateTime() >= refreshAfter;
+    }
+
     private Object wrapCacheValue(Method method, Object cacheValue) {
+        if (CompletionStage.class.isAssignableFrom(method.getReturnType())
+                && !(cacheValue instanceof CompletionStage)) {
+            return CompletableFuture.completedFuture(cacheValue);
+        }
         if (method.getReturnType() == javaUtilOptionalClass
                 && (cacheValue == null || cacheValue.getClass() != javaUtilOptionalClass)) {
             return OptionalUnwrapper.wrap(cacheValue);
@@ -253,11 +1170,14 @@ public class CustomableCacheInterceptor
         // have it yet...
         Collection<CustomableCacheOperationContext> cachePutContexts = contexts
                 .get(CachePutOperation.class);
-        Collection<CustomableCacheOperationContext> excluded = new ArrayList<>();
+        if (cachePutContexts.isEmpty()) {
+            return false;
+        }
+        int excluded = 0;
         for (CustomableCacheOperationContext context : cachePutContexts) {
             try {
                 if (!context.isConditionPassing(coeeContainer.getResultUnavailable())) {
-                    excluded.add(context);
+                    excluded++;
                 }
             } catch (VariableNotAvailableException ex) {
                 // Ignoring failure due to missing result, consider the cache
@@ -265,34 +1185,131 @@ public class CustomableCacheInterceptor
             }
         }
         // Check if all puts have been excluded by condition
-        return (cachePutContexts.size() != excluded.size());
+        return (cachePutContexts.size() != excluded);
     }
 
+    /**
+     * Execute {@link ExpireableCache#put(Object, Object, long)} on the
+     * specified {@link ExpireableCache} and invoke the error handler if an
+     * exception occurs.
+     *
+     * @return whether the value was stored
+     */
+    protected boolean doPut(ExpireableCache cache, Object key, Object result, long expire) {
+        try {
+            cache.put(key, result, expire);
+            return true;
+        } catch (RuntimeException ex) {
+            getErrorHandler().handleCachePutError(ex, cache, key, result);
+            return false;
+        }
+    }
+
+    /**
+     * {@link #doPut(Cache, Object, Object)} telling whether the value was
+     * stored.
+     */
+    private boolean doPutWithoutExpire(Cache cache, Object key, Object result) {
+        try {
+            cache.put(key, result);
+            return true;
+        } catch (RuntimeException ex) {
+            getErrorHandler().handleCachePutError(ex, cache, key, result);
+            return false;
+        }
+    }
+
+    /**
+     * Evict the keys of every operation of the invocation together, one
+     * {@link BatchExpireableCache#evictAll} per cache. A cache cleared by the
+     * invocation does not evict its keys on top.
+     */
     private void processCacheEvicts(Collection<CustomableCacheOperationContext> contexts,
             boolean beforeInvocation, Object result) {
+        if (contexts.isEmpty()) {
+            return;
+        }
+        Map<Cache, List<Object>> evictions = null;
+        List<Cache> clears = null;
         for (CustomableCacheOperationContext context : contexts) {
             CacheEvictOperation operation = (CacheEvictOperation) context.getOperation();
-            if (beforeInvocation == operation.isBeforeInvocation()
-                    && isConditionPassing(context, result)) {
-                performCacheEvict(context, operation, result);
+            if (beforeInvocation != operation.isBeforeInvocation()
+                    || !isConditionPassing(context, result)) {
+                continue;
+            }
+            Object key = null;
+            for (Cache cache : context.getCaches()) {
+                if (operation.isCacheWide()) {
+                    logInvalidating(context, operation, null);
+                    if (null == clears) {
+                        clears = new ArrayList<Cache>(2);
+                    }
+                    if (!clears.contains(cache)) {
+                        clears.add(cache);
+                    }
+                } else {
+                    if (key == null) {
+                        key = context.generateKey(result);
+                    }
+                    logInvalidating(context, operation, key);
+                    if (null == evictions) {
+                        evictions = new LinkedHashMap<Cache, List<Object>>(4);
+                    }
+                    List<Object> keys = evictions.get(cache);
+                    if (null == keys) {
+                        keys = new ArrayList<Object>(2);
+                        evictions.put(cache, keys);
+                    }
+                    keys.add(key);
+                }
             }
         }
-    }
-
-    private void performCacheEvict(CustomableCacheOperationContext context,
-            CacheEvictOperation operation, Object result) {
-        Object key = null;
-        for (Cache cache : context.getCaches()) {
-            if (operation.isCacheWide()) {
-                logInvalidating(context, operation, null);
+        Method method = contexts.iterator().next().getMethod();
+        if (null != clears) {
+            for (Cache cache : clears) {
                 doClear(cache);
-            } else {
-                if (key == null) {
-                    key = context.generateKey(result);
+                if (null != hotKeyDetector) {
+                    hotKeyDetector.clear(cache.getName());
                 }
-                logInvalidating(context, operation, key);
+                if (null != metrics) {
+                    metrics.recordClear(cache.getName(), method);
+                }
+            }
+        }
+        if (null != evictions) {
+            for (Map.Entry<Cache, List<Object>> entry : evictions.entrySet()) {
+                if (null == clears || !clears.contains(entry.getKey())) {
+                    doEvictAll(entry.getKey(), entry.getValue());
+                    if (null != hotKeyDetector) {
+                        for (Object key : entry.getValue()) {
+                            hotKeyDetector.evict(entry.getKey().getName(), key);
+                        }
+                    }
+                    if (null != metrics) {
+                        metrics.recordEvictions(entry.getKey().getName(), method,
+                                entry.getValue().size());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute {@link BatchExpireableCache#evictAll} on the specified
+     * {@link Cache}, or an evict per key, and invoke the error handler if an
+     * exception occurs.
+     */
+    protected void doEvictAll(Cache cache, List<Object> keys) {
+        if (keys.size() == 1 || !(cache instanceof BatchExpireableCache)) {
+            for (Object key : keys) {
                 doEvict(cache, key);
             }
+            return;
+        }
+        try {
+            ((BatchExpireableCache) cache).evictAll(keys);
+        } catch (RuntimeException ex) {
+            getErrorHandler().handleCacheEvictError(ex, cache, keys);
         }
     }
 
@@ -313,12 +1330,13 @@ public class CustomableCacheInterceptor
      *         {@code null} if none is found
      */
     private Cache.ValueWrapper findCachedItem(
-            Collection<CustomableCacheOperationContext> contexts) {
+            Collection<CustomableCacheOperationContext> contexts,
+            CacheOperationContexts operationContexts) {
         Object result = coeeContainer.getNoResult();
         for (CustomableCacheOperationContext context : contexts) {
             if (isConditionPassing(context, result)) {
                 Object key = generateKey(context, result);
-                Cache.ValueWrapper cached = findInCaches(context, key);
+                Cache.ValueWrapper cached = findInCaches(context, key, operationContexts);
                 if (cached != null) {
                     return cached;
                 } else {
@@ -350,20 +1368,107 @@ public class CustomableCacheInterceptor
         }
     }
 
-    private Cache.ValueWrapper findInCaches(CustomableCacheOperationContext context, Object key) {
+    private Cache.ValueWrapper findInCaches(CustomableCacheOperationContext context, Object key,
+            CacheOperationContexts operationContexts) {
         for (Cache cache : context.getCaches()) {
-            Cache.ValueWrapper wrapper = doGet(cache, key);
+            // a replica holds the value as cached, so it is checked the same
+            Cache.ValueWrapper wrapper = null == hotKeyDetector ? null
+                    : hotKeyDetector.get(cache.getName(), key);
+            boolean replicated = wrapper != null;
+            if (!replicated) {
+                wrapper = doGet(cache, key);
+            }
+            // an entry kept only for errors or refreshed ahead counts as a miss
             if (wrapper != null) {
                 if (logger.isTraceEnabled()) {
                     logger.trace("Cache entry for key '" + key + "' found in cache '"
                             + cache.getName() + "'");
                 }
+                if (wrapper.get() instanceof ExpireableValue) {
+                    ExpireableValue value = (ExpireableValue) wrapper.get();
+                    if (isStale(context, value)) {
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("Cache entry for key '" + key + "' in cache '"
+                                    + cache.getName() + "' is kept only for errors");
+                        }
+                        if (operationContexts.staleValue == null) {
+                            operationContexts.staleValue = new SimpleValueWrapper(
+                                    value.getValue());
+                        }
+                        recordLookup(context, cache, false);
+                        continue;
+                    }
+                    if (shouldRefreshEarly(context, value)
+                            && operationContexts.claimRefresh(cache.getName(), key)) {
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("Refreshing cache entry for key '" + key
+                                    + "' ahead of its expire in cache '" + cache.getName() + "'");
+                        }
+                        recordLookup(context, cache, false);
+                        return null;
+                    }
+                    if (isRefreshDue(context, value)
+                            && operationContexts.claimRefresh(cache.getName(), key)) {
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("Serving cache entry for key '" + key
+                                    + "' while it is refreshed in cache '" + cache.getName()
+                                    + "'");
+                        }
+                        operationContexts.refreshPending = true;
+                    }
+                    recordLookup(context, cache, true);
+                    if (!replicated) {
+                        promoteIfHot(cache, key, value, value.getExpireTime());
+                    }
+                    return new SimpleValueWrapper(value.getValue());
+                }
+                recordLookup(context, cache, true);
+                if (!replicated) {
+                    promoteIfHot(cache, key, wrapper.get(), expireTimeOf(context));
+                }
                 return wrapper;
             }
+            recordLookup(context, cache, false);
         }
         return null;
     }
 
+    private void promoteIfHot(Cache cache, Object key, Object value, long expireTime) {
+        if (null != hotKeyDetector && hotKeyDetector.record(cache.getName(), key)) {
+            hotKeyDetector.promote(cache.getName(), key, value, expireTime);
+        }
+    }
+
+    /**
+     * @return the expire time of an entry written now by the operation,
+     *         {@code 0} if it does not declare one
+     */
+    private long expireTimeOf(CustomableCacheOperationContext context) {
+        if (null == hotKeyDetector || !(context.getOperation() instanceof Expireable)) {
+            return 0;
+        }
+        long expire = CacheUtils.getExpireMillis((Expireable) context.getOperation());
+        return expire > 0 ? System.currentTimeMillis() + expire : 0;
+    }
+
+    private void recordLookup(CustomableCacheOperationContext context, Cache cache, boolean hit) {
+        if (null == metrics) {
+            return;
+        }
+        if (hit) {
+            metrics.recordHits(cache.getName(), context.getMethod(), 1);
+        } else {
+            metrics.recordMisses(cache.getName(), context.getMethod(), 1);
+        }
+    }
+
+    private void recordLoad(CustomableCacheOperationContext context, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        for (String cacheName : context.getCacheNames()) {
+            metrics.recordLoad(cacheName, context.getMethod(), nanos);
+        }
+    }
+
     private boolean isConditionPassing(CustomableCacheOperationContext context, Object result) {
         boolean passing = context.isConditionPassing(result);
         if (!passing && logger.isTraceEnabled()) {
@@ -373,6 +1478,10 @@ public class CustomableCacheInterceptor
         return passing;
     }
 
+    private Object encodeKey(Object key) {
+        return null == keyEncoder || null == key ? key : keyEncoder.encode(key);
+    }
+
     private Object generateKey(CustomableCacheOperationContext context, Object result) {
         Object key = context.generateKey(result);
         if (key == null) {
@@ -390,40 +1499,130 @@ public class CustomableCacheInterceptor
 
     public class CacheOperationContexts {
 
-        private final MultiValueMap<Class<? extends CacheOperation>, CustomableCacheOperationContext> contexts = new LinkedMultiValueMap<>();
+        // one context per operation, indexed by its kind
+        private final List<CustomableCacheOperationContext> cacheableContexts;
+
+        private final List<CustomableCacheOperationContext> cachePutContexts;
+
+        private final List<CustomableCacheOperationContext> cacheEvictContexts;
+
+        private final List<CustomableCacheOperationContext> batchContexts;
+
+        private final int batchArgument;
 
         private final boolean sync;
 
-        public CacheOperationContexts(Collection<? extends CacheOperation> operations,
-                Method method, Object[] args, Object target, Class<?> targetClass) {
-            for (CacheOperation operation : operations) {
-                if (ClassUtils.isAssignable(CacheableOperation.class, operation.getClass())) {
-                    this.contexts.add(CacheableOperation.class,
-                            getOperationContext(operation, method, args, target, targetClass));
-                } else if (ClassUtils.isAssignable(CachePutOperation.class, operation.getClass())) {
-                    this.contexts.add(CachePutOperation.class,
-                            getOperationContext(operation, method, args, target, targetClass));
+        private Object refreshKey;
+
+        private boolean refreshPending;
+
+        // an expired cache entry served if the method throws
+        private Cache.ValueWrapper staleValue;
+
+        public CacheOperationContexts(CacheOperationPlan plan, Method method, Object[] args,
+                Object target) {
+            this.cacheableContexts = createContexts(plan, CacheOperationPlan.CACHEABLE, args,
+                    target);
+            this.cachePutContexts = createContexts(plan, CacheOperationPlan.CACHE_PUT, args,
+                    target);
+            this.cacheEvictContexts = createContexts(plan, CacheOperationPlan.CACHE_EVICT, args,
+                    target);
+            this.batchContexts = createContexts(plan, CacheOperationPlan.BATCH, args, target);
+            this.batchArgument = plan.batchArgument;
+            this.sync = plan.sync && determineSyncFlag(method);
+        }
+
+        private List<CustomableCacheOperationContext> createContexts(CacheOperationPlan plan,
+                int kind, Object[] args, Object target) {
+            int count = plan.counts[kind];
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            List<CustomableCacheOperationContext> contexts = new ArrayList<>(count);
+            for (int i = 0; i < plan.operations.length; i++) {
+                if (plan.kinds[i] == kind) {
+                    CustomableCacheOperationContext context = getOperationContext(
+                            plan.metadata[i], args, target);
+                    context.expressions = plan.expressions[i];
+                    contexts.add(context);
                 }
-                this.contexts.add(operation.getClass(),
-                        getOperationContext(operation, method, args, target, targetClass));
             }
-            this.sync = determineSyncFlag(method);
+            return contexts;
         }
 
+        /**
+         * @param operationClass {@link CacheableOperation},
+         *            {@link CachePutOperation}, {@link CacheEvictOperation} or
+         *            {@link ExpireableBatchCacheableOperation} or one of their
+         *            subclasses
+         * @return the contexts of the operations of that kind
+         */
         public Collection<CustomableCacheOperationContext> get(
                 Class<? extends CacheOperation> operationClass) {
-            Collection<CustomableCacheOperationContext> result = this.contexts.get(operationClass);
-            return (result != null ? result : Collections.emptyList());
+            if (CacheableOperation.class.isAssignableFrom(operationClass)) {
+                return this.cacheableContexts;
+            }
+            if (CachePutOperation.class.isAssignableFrom(operationClass)) {
+                return this.cachePutContexts;
+            }
+            if (CacheEvictOperation.class.isAssignableFrom(operationClass)) {
+                return this.cacheEvictContexts;
+            }
+            if (ExpireableBatchCacheableOperation.class.isAssignableFrom(operationClass)) {
+                return this.batchContexts;
+            }
+            return Collections.emptyList();
         }
 
         public boolean isSynchronized() {
             return this.sync;
         }
 
+        /**
+         * Claim the early refresh of a cache entry, only one invocation at a
+         * time refreshes a given entry.
+         * @return whether this invocation refreshes the entry
+         */
+        public boolean claimRefresh(String cacheName, Object key) {
+            if (this.refreshKey != null) {
+                return false;
+            }
+            Object refreshKey = new SimpleKey(cacheName, key);
+            if (refreshingKeys.putIfAbsent(refreshKey, Boolean.TRUE) == null) {
+                this.refreshKey = refreshKey;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return whether the cache hit is to be refreshed in the background
+         */
+        public boolean isRefreshPending() {
+            return this.refreshPending && this.refreshKey != null;
+        }
+
+        /**
+         * Hand the claimed cache entry to a background refresh, which
+         * releases it.
+         */
+        public Object handOverRefresh() {
+            Object refreshKey = this.refreshKey;
+            this.refreshKey = null;
+            this.refreshPending = false;
+            return refreshKey;
+        }
+
+        public void releaseRefresh() {
+            if (this.refreshKey != null) {
+                refreshingKeys.remove(this.refreshKey);
+                this.refreshKey = null;
+            }
+        }
+
         private boolean determineSyncFlag(Method method) {
-            List<CustomableCacheOperationContext> cacheOperationContexts = this.contexts
-                    .get(CacheableOperation.class);
-            if (cacheOperationContexts == null) { // no @Cacheable operation at
+            List<CustomableCacheOperationContext> cacheOperationContexts = this.cacheableContexts;
+            if (cacheOperationContexts.isEmpty()) { // no @Cacheable operation at
                 // all
                 return false;
             }
@@ -435,7 +1634,7 @@ public class CustomableCacheInterceptor
                 }
             }
             if (syncEnabled) {
-                if (this.contexts.size() > 1) {
+                if (!this.cachePutContexts.isEmpty() || !this.cacheEvictContexts.isEmpty()) {
                     throw new IllegalStateException(
                             "@Cacheable(sync=true) cannot be combined with other cache operations on '"
                                     + method + "'");
@@ -458,6 +1657,13 @@ public class CustomableCacheInterceptor
                             "@Cacheable(sync=true) does not support unless attribute on '"
                                     + operation + "'");
                 }
+                if (operation instanceof ExpireableCacheableOperation
+                        && ((ExpireableCacheableOperation) operation)
+                                .getStaleIfErrorMillis() > 0) {
+                    throw new IllegalStateException(
+                            "@ExpireableCacheable(sync=true) does not support staleIfError attribute on '"
+                                    + operation + "'");
+                }
                 return true;
             }
             return false;
@@ -466,6 +1672,8 @@ public class CustomableCacheInterceptor
 
     protected class CustomableCacheOperationContext extends CacheOperationContext {
 
+        private CacheOperationExpressions expressions;
+
         public CustomableCacheOperationContext(CacheOperationMetadata metadata, Object[] args,
                 Object target) {
             super(metadata, args, target);
@@ -478,19 +1686,47 @@ public class CustomableCacheInterceptor
 
         @Override
         protected Object generateKey(Object result) {
-            return super.generateKey(result);
+            if (this.expressions != null && this.expressions.key != null) {
+                Object key = evaluate(this.expressions.key, result);
+                if (key != CompiledCacheExpression.UNSUPPORTED) {
+                    return encodeKey(key);
+                }
+            }
+            return encodeKey(super.generateKey(result));
         }
 
         @Override
         protected boolean canPutToCache(Object value) {
+            if (this.expressions != null && this.expressions.unless != null) {
+                Object unless = evaluate(this.expressions.unless, value);
+                if (unless instanceof Boolean) {
+                    return !(Boolean) unless;
+                }
+            }
             return super.canPutToCache(value);
         }
 
         @Override
         protected boolean isConditionPassing(Object result) {
+            if (this.expressions != null && this.expressions.condition != null) {
+                Object condition = evaluate(this.expressions.condition, result);
+                if (condition instanceof Boolean) {
+                    return (Boolean) condition;
+                }
+            }
             return super.isConditionPassing(result);
         }
 
+        private Object evaluate(CompiledCacheExpression expression, Object result) {
+            if (result == coeeContainer.getNoResult()) {
+                result = null;
+            } else if (result == coeeContainer.getResultUnavailable()
+                    && expression.isResultUsed()) {
+                throw new VariableNotAvailableException("result");
+            }
+            return expression.getValue(getArgs(), result);
+        }
+
         @Override
         protected Collection<String> getCacheNames() {
             return super.getCacheNames();
@@ -508,12 +1744,204 @@ public class CustomableCacheInterceptor
             this.key = key;
         }
 
-        public void apply(Object result) {
+        public void apply(Object result, long invokeTime) {
             if (this.context.canPutToCache(result)) {
+                result = toExpireableValue(this.context, result, invokeTime);
+                long expire = 0;
+                if (this.context.getOperation() instanceof Expireable) {
+                    expire = CacheUtils
+                            .getStoreExpireMillis((Expireable) this.context.getOperation());
+                }
                 for (Cache cache : this.context.getCaches()) {
-                    doPut(cache, this.key, result);
+                    boolean stored;
+                    if (expire > 0 && cache instanceof ExpireableCache) {
+                        stored = doPut((ExpireableCache) cache, this.key, result, expire);
+                    } else {
+                        stored = doPutWithoutExpire(cache, this.key, result);
+                    }
+                    if (null != hotKeyDetector) {
+                        hotKeyDetector.evict(cache.getName(), this.key);
+                    }
+                    if (null != metrics && stored) {
+                        metrics.recordPuts(cache.getName(), this.context.getMethod(), 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Proceeds with the intercepted {@link MethodInvocation}, and can copy it
+     * to invoke the method again later from another thread.
+     */
+    private static class MethodInvocationInvoker implements CacheOperationInvoker {
+
+        private final MethodInvocation invocation;
+
+        private MethodInvocationInvoker(MethodInvocation invocation) {
+            this.invocation = invocation;
+        }
+
+        @Override
+        public Object invoke() {
+            try {
+                return this.invocation.proceed();
+            } catch (Throwable ex) {
+                throw new ThrowableWrapper(ex);
+            }
+        }
+
+        public boolean isCopyable() {
+            return this.invocation instanceof ProxyMethodInvocation;
+        }
+
+        /**
+         * Proceed with a copy of the invocation taking other arguments.
+         */
+        public Object invoke(Object[] arguments) {
+            try {
+                return ((ProxyMethodInvocation) this.invocation).invocableClone(arguments)
+                        .proceed();
+            } catch (Throwable ex) {
+                throw new ThrowableWrapper(ex);
+            }
+        }
+
+        /**
+         * @return an invoker of a copy of the invocation, {@code null} if the
+         *         invocation can not be copied
+         */
+        public CacheOperationInvoker copy() {
+            if (this.invocation instanceof ProxyMethodInvocation) {
+                return new MethodInvocationInvoker(
+                        ((ProxyMethodInvocation) this.invocation).invocableClone());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The cache operations of a method on a target class with their resolved
+     * metadata, built once so an invocation neither queries the
+     * {@link org.springframework.cache.interceptor.CacheOperationSource} nor
+     * looks the metadata up.
+     */
+    protected static final class CacheOperationPlan {
+
+        private static final CacheOperationPlan EMPTY = new CacheOperationPlan(
+                new CacheOperation[0], new CacheOperationMetadata[0],
+                new CacheOperationExpressions[0], false);
+
+        private static final int CACHEABLE = 0;
+
+        private static final int CACHE_PUT = 1;
+
+        private static final int CACHE_EVICT = 2;
+
+        private static final int BATCH = 3;
+
+        private final CacheOperation[] operations;
+
+        private final CacheOperationMetadata[] metadata;
+
+        private final CacheOperationExpressions[] expressions;
+
+        // the kind of each operation, -1 for the ones the interceptor ignores
+        private final int[] kinds;
+
+        // the number of operations of each kind
+        private final int[] counts = new int[4];
+
+        // the index of the collection of ids of a batch operation
+        private int batchArgument = -1;
+
+        // whether any @Cacheable asks for sync, validated per invocation
+        private final boolean sync;
+
+        private CacheOperationPlan(CacheOperation[] operations, CacheOperationMetadata[] metadata,
+                CacheOperationExpressions[] expressions, boolean sync) {
+            this.operations = operations;
+            this.metadata = metadata;
+            this.expressions = expressions;
+            this.kinds = new int[operations.length];
+            for (int i = 0; i < operations.length; i++) {
+                this.kinds[i] = kindOf(operations[i]);
+                if (this.kinds[i] >= 0) {
+                    this.counts[this.kinds[i]]++;
+                }
+            }
+            this.sync = sync;
+        }
+    }
+
+    /**
+     * The key, condition and unless of an operation compiled for its method,
+     * {@code null} for the ones SpEL evaluates.
+     */
+    private static final class CacheOperationExpressions {
+
+        private final CompiledCacheExpression key;
+
+        private final CompiledCacheExpression condition;
+
+        private final CompiledCacheExpression unless;
+
+        private CacheOperationExpressions(CacheOperation operation, Method method,
+                Class<?> targetClass) {
+            CacheExpressionCompiler compiler = CacheExpressionCompiler.getSharedInstance();
+            this.key = compiler.compile(operation.getKey(), method, targetClass);
+            this.condition = compiler.compile(operation.getCondition(), method, targetClass);
+            String unless = null;
+            if (operation instanceof CacheableOperation) {
+                unless = ((CacheableOperation) operation).getUnless();
+            } else if (operation instanceof CachePutOperation) {
+                unless = ((CachePutOperation) operation).getUnless();
+            }
+            this.unless = compiler.compile(unless, method, targetClass);
+        }
+    }
+
+    private static int kindOf(CacheOperation operation) {
+        if (operation instanceof ExpireableBatchCacheableOperation) {
+            return CacheOperationPlan.BATCH;
+        }
+        if (operation instanceof CacheableOperation) {
+            return CacheOperationPlan.CACHEABLE;
+        }
+        if (operation instanceof CachePutOperation) {
+            return CacheOperationPlan.CACHE_PUT;
+        }
+        if (operation instanceof CacheEvictOperation) {
+            return CacheOperationPlan.CACHE_EVICT;
+        }
+        return -1;
+    }
+
+    /**
+     * Resolves the caches of an operation once, for the resolvers whose
+     * caches only depend on the cache names of the operation.
+     */
+    private static final class StaticCacheResolver implements CacheResolver {
+
+        private final CacheResolver cacheResolver;
+
+        private volatile Collection<? extends Cache> caches;
+
+        private StaticCacheResolver(CacheResolver cacheResolver) {
+            this.cacheResolver = cacheResolver;
+        }
+
+        @Override
+        public Collection<? extends Cache> resolveCaches(
+                CacheOperationInvocationContext<?> context) {
+            Collection<? extends Cache> caches = this.caches;
+            if (caches == null) {
+                caches = this.cacheResolver.resolveCaches(context);
+                if (!caches.isEmpty()) {
+                    this.caches = caches;
                 }
             }
+            return caches;
         }
     }
 
@@ -0,0 +1,194 @@
+package com.youmu.maven.springframework.cache.key;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * @Author: YOUMU
+ * @Description: encodes strings, boxed primitives and {@link SimpleKey}s of
+ *               them into a tag byte and varints per element. An encoding
+ *               longer than the digest threshold becomes the 16 byte MD5 of
+ *               it behind a marker byte. Any other key is left as it is
+ * @Date: 2017/10/17
+ */
+public class CompactKeyEncoder implements KeyEncoder {
+
+    private static final byte NULL = 0;
+
+    private static final byte STRING = 1;
+
+    private static final byte INT = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte SHORT = 4;
+
+    private static final byte BYTE = 5;
+
+    private static final byte TRUE = 6;
+
+    private static final byte FALSE = 7;
+
+    private static final byte CHAR = 8;
+
+    private static final byte DOUBLE = 9;
+
+    private static final byte FLOAT = 10;
+
+    private static final byte SIMPLE_KEY = 11;
+
+    private static final byte DIGEST = 12;
+
+    private static final Field SIMPLE_KEY_PARAMS = ReflectionUtils.findField(SimpleKey.class,
+            "params");
+
+    static {
+        ReflectionUtils.makeAccessible(SIMPLE_KEY_PARAMS);
+    }
+
+    private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    private int digestThreshold = 64;
+
+    /**
+     * @param digestThreshold the length in bytes above which an encoded key is
+     *            replaced by its digest, {@code <= 0} never digests
+     */
+    public void setDigestThreshold(int digestThreshold) {
+        this.digestThreshold = digestThreshold;
+    }
+
+    @Override
+    public Object encode(Object key) {
+        Buffer buffer = BUFFERS.get();
+        buffer.position = 0;
+        if (!write(buffer, key)) {
+            return key;
+        }
+        byte[] bytes;
+        if (digestThreshold > 0 && buffer.position > digestThreshold) {
+            MessageDigest digest = buffer.getDigest();
+            digest.update(buffer.bytes, 0, buffer.position);
+            bytes = new byte[17];
+            bytes[0] = DIGEST;
+            System.arraycopy(digest.digest(), 0, bytes, 1, 16);
+        } else {
+            bytes = Arrays.copyOf(buffer.bytes, buffer.position);
+        }
+        if (buffer.bytes.length > 4096) {
+            // not kept for the next key of the thread
+            buffer.bytes = new byte[128];
+        }
+        return new EncodedKey(bytes);
+    }
+
+    /**
+     * @return whether the key could be encoded
+     */
+    private boolean write(Buffer buffer, Object key) {
+        if (null == key) {
+            buffer.writeByte(NULL);
+            return true;
+        }
+        Class<?> type = key.getClass();
+        if (type == String.class) {
+            byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+            buffer.writeByte(STRING);
+            buffer.writeVarLong(bytes.length);
+            buffer.writeBytes(bytes);
+        } else if (type == Long.class) {
+            buffer.writeByte(LONG);
+            buffer.writeVarLong((Long) key);
+        } else if (type == Integer.class) {
+            buffer.writeByte(INT);
+            buffer.writeVarLong((Integer) key);
+        } else if (type == Short.class) {
+            buffer.writeByte(SHORT);
+            buffer.writeVarLong((Short) key);
+        } else if (type == Byte.class) {
+            buffer.writeByte(BYTE);
+            buffer.writeByte((Byte) key);
+        } else if (type == Boolean.class) {
+            buffer.writeByte((Boolean) key ? TRUE : FALSE);
+        } else if (type == Character.class) {
+            buffer.writeByte(CHAR);
+            buffer.writeVarLong((Character) key);
+        } else if (type == Double.class) {
+            buffer.writeByte(DOUBLE);
+            buffer.writeVarLong(Double.doubleToLongBits((Double) key));
+        } else if (type == Float.class) {
+            buffer.writeByte(FLOAT);
+            buffer.writeVarLong(Float.floatToIntBits((Float) key));
+        } else if (type == SimpleKey.class) {
+            Object[] params = (Object[]) ReflectionUtils.getField(SIMPLE_KEY_PARAMS, key);
+            buffer.writeByte(SIMPLE_KEY);
+            buffer.writeVarLong(params.length);
+            for (Object param : params) {
+                if (!write(buffer, param)) {
+                    return false;
+                }
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static final class Buffer {
+
+        private byte[] bytes = new byte[128];
+
+        private int position;
+
+        private MessageDigest digest;
+
+        private MessageDigest getDigest() {
+            if (null == digest) {
+                try {
+                    digest = MessageDigest.getInstance("MD5");
+                } catch (NoSuchAlgorithmException ex) {
+                    throw new IllegalStateException("MD5 is not supported", ex);
+                }
+            }
+            return digest;
+        }
+
+        private void ensureCapacity(int count) {
+            if (position + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + count));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[position++] = (byte) value;
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            long zigZag = (value << 1) ^ (value >> 63);
+            while ((zigZag & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+                zigZag >>>= 7;
+            }
+            bytes[position++] = (byte) zigZag;
+        }
+
+        private void writeBytes(byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+    }
+}
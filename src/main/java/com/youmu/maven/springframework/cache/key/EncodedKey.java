@@ -0,0 +1,54 @@
+package com.youmu.maven.springframework.cache.key;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * @Author: YOUMU
+ * @Description: a key encoded into bytes by a {@link KeyEncoder}, a redis
+ *               cache writes the bytes right behind its prefix instead of
+ *               running the key serializer
+ * @Date: 2017/10/17
+ */
+@SuppressWarnings("serial")
+public final class EncodedKey implements Serializable {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] bytes;
+
+    private final int hash;
+
+    public EncodedKey(byte[] bytes) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+    }
+
+    /**
+     * @return the encoded bytes, not to be modified
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other
+                || (other instanceof EncodedKey && Arrays.equals(bytes, ((EncodedKey) other).bytes));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,19 @@
+package com.youmu.maven.springframework.cache.key;
+
+/**
+ * @Author: YOUMU
+ * @Description: turns the key generated for a cache operation into the key
+ *               handed to the cache, applied by
+ *               {@link com.youmu.maven.springframework.cache.interceptor.CustomableCacheInterceptor}
+ *               to every key of every operation
+ * @Date: 2017/10/17
+ */
+public interface KeyEncoder {
+
+    /**
+     * @param key the generated key, never {@code null}
+     * @return the key of the cache, equal for equal keys on every node,
+     *         {@code key} itself if it can not be encoded
+     */
+    public Object encode(Object key);
+}
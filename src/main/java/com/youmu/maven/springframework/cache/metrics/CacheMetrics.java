@@ -0,0 +1,43 @@
+package com.youmu.maven.springframework.cache.metrics;
+
+import java.lang.reflect.Method;
+
+import com.youmu.maven.springframework.cache.cache.CircuitBreaker;
+
+/**
+ * @Author: YOUMU
+ * @Description: receives what the cache interceptor did per cache name and
+ *               per annotated method. Called on the hot path, implementations
+ *               must be thread safe and must not block. Without one the
+ *               interceptor neither measures nor calls anything
+ * @Date: 2017/10/18
+ */
+public interface CacheMetrics {
+
+    public void recordHits(String cacheName, Method method, int count);
+
+    public void recordMisses(String cacheName, Method method, int count);
+
+    public void recordPuts(String cacheName, Method method, int count);
+
+    public void recordEvictions(String cacheName, Method method, int count);
+
+    public void recordClear(String cacheName, Method method);
+
+    /**
+     * @param nanos how long the method took to load the missing value
+     */
+    public void recordLoad(String cacheName, Method method, long nanos);
+
+    /**
+     * @param operation {@code get}, {@code put}, {@code evict} or {@code clear}
+     * @param exception the exception given to the error handler
+     */
+    public void recordError(String cacheName, String operation, RuntimeException exception);
+
+    /**
+     * Called by the {@link CircuitBreaker} of the cache name on every
+     * transition.
+     */
+    public void recordStateChange(String cacheName, CircuitBreaker.State from, CircuitBreaker.State to);
+}
@@ -0,0 +1,58 @@
+package com.youmu.maven.springframework.cache.metrics;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.interceptor.CacheErrorHandler;
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: records every cache error before handing it to the error
+ *               handler configured on the interceptor
+ * @Date: 2017/10/18
+ */
+public class MetricsCacheErrorHandler implements CacheErrorHandler {
+
+    private final CacheErrorHandler errorHandler;
+
+    private final CacheMetrics metrics;
+
+    public MetricsCacheErrorHandler(CacheErrorHandler errorHandler, CacheMetrics metrics) {
+        Assert.notNull(errorHandler, "ErrorHandler must not be null");
+        Assert.notNull(metrics, "CacheMetrics must not be null");
+        this.errorHandler = errorHandler;
+        this.metrics = metrics;
+    }
+
+    public CacheErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void handleCacheGetError(RuntimeException exception, Cache cache, Object key) {
+        metrics.recordError(cache.getName(), "get", exception);
+        errorHandler.handleCacheGetError(exception, cache, key);
+    }
+
+    @Override
+    public void handleCachePutError(RuntimeException exception, Cache cache, Object key,
+            Object value) {
+        metrics.recordError(cache.getName(), "put", exception);
+        errorHandler.handleCachePutError(exception, cache, key, value);
+    }
+
+    @Override
+    public void handleCacheEvictError(RuntimeException exception, Cache cache, Object key) {
+        metrics.recordError(cache.getName(), "evict", exception);
+        errorHandler.handleCacheEvictError(exception, cache, key);
+    }
+
+    @Override
+    public void handleCacheClearError(RuntimeException exception, Cache cache) {
+        metrics.recordError(cache.getName(), "clear", exception);
+        errorHandler.handleCacheClearError(exception, cache);
+    }
+}
@@ -0,0 +1,194 @@
+package com.youmu.maven.springframework.cache.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.youmu.maven.springframework.cache.cache.CircuitBreaker;
+
+/**
+ * @Author: YOUMU
+ * @Description: keeps the counters and load times of every cache name and of
+ *               every annotated method in memory, for a health page or to be
+ *               polled by a metrics registry
+ * @Date: 2017/10/18
+ */
+public class SimpleCacheMetrics implements CacheMetrics {
+
+    private final ConcurrentMap<String, Stats> caches = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Method, Stats> methods = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordHits(String cacheName, Method method, int count) {
+        statsOf(cacheName).hits.add(count);
+        statsOf(method).hits.add(count);
+    }
+
+    @Override
+    public void recordMisses(String cacheName, Method method, int count) {
+        statsOf(cacheName).misses.add(count);
+        statsOf(method).misses.add(count);
+    }
+
+    @Override
+    public void recordPuts(String cacheName, Method method, int count) {
+        statsOf(cacheName).puts.add(count);
+        statsOf(method).puts.add(count);
+    }
+
+    @Override
+    public void recordEvictions(String cacheName, Method method, int count) {
+        statsOf(cacheName).evictions.add(count);
+        statsOf(method).evictions.add(count);
+    }
+
+    @Override
+    public void recordClear(String cacheName, Method method) {
+        statsOf(cacheName).clears.increment();
+        statsOf(method).clears.increment();
+    }
+
+    @Override
+    public void recordLoad(String cacheName, Method method, long nanos) {
+        statsOf(cacheName).loads.record(nanos);
+        statsOf(method).loads.record(nanos);
+    }
+
+    @Override
+    public void recordError(String cacheName, String operation, RuntimeException exception) {
+        statsOf(cacheName).errors.increment();
+    }
+
+    @Override
+    public void recordStateChange(String cacheName, CircuitBreaker.State from,
+            CircuitBreaker.State to) {
+        Stats stats = statsOf(cacheName);
+        stats.circuitState = to;
+        if (to == CircuitBreaker.State.OPEN) {
+            stats.circuitOpens.increment();
+        }
+    }
+
+    /**
+     * @return the stats of the cache name, {@code null} before anything was
+     *         recorded for it
+     */
+    public Stats getCacheStats(String cacheName) {
+        return caches.get(cacheName);
+    }
+
+    /**
+     * @return the stats of the annotated method, {@code null} before it was
+     *         invoked
+     */
+    public Stats getMethodStats(Method method) {
+        return methods.get(method);
+    }
+
+    public Set<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    public Map<Method, Stats> getMethodStats() {
+        return Collections.unmodifiableMap(methods);
+    }
+
+    private Stats statsOf(String cacheName) {
+        Stats stats = caches.get(cacheName);
+        if (null == stats) {
+            Stats created = new Stats();
+            stats = caches.putIfAbsent(cacheName, created);
+            if (null == stats) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private Stats statsOf(Method method) {
+        Stats stats = methods.get(method);
+        if (null == stats) {
+            Stats created = new Stats();
+            stats = methods.putIfAbsent(method, created);
+            if (null == stats) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    public static final class Stats {
+
+        private final LongAdder hits = new LongAdder();
+
+        private final LongAdder misses = new LongAdder();
+
+        private final LongAdder puts = new LongAdder();
+
+        private final LongAdder evictions = new LongAdder();
+
+        private final LongAdder clears = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LatencyHistogram loads = new LatencyHistogram();
+
+        private final LongAdder circuitOpens = new LongAdder();
+
+        private volatile CircuitBreaker.State circuitState = CircuitBreaker.State.CLOSED;
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public double getHitRatio() {
+            long hitCount = hits.sum();
+            long total = hitCount + misses.sum();
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+
+        public long getPuts() {
+            return puts.sum();
+        }
+
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        public long getClears() {
+            return clears.sum();
+        }
+
+        /**
+         * @return the errors given to the error handler, per cache name only
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public LatencyHistogram getLoads() {
+            return loads;
+        }
+
+        /**
+         * @return how often the circuit of the cache name opened, per cache
+         *         name only
+         */
+        public long getCircuitOpens() {
+            return circuitOpens.sum();
+        }
+
+        public CircuitBreaker.State getCircuitState() {
+            return circuitState;
+        }
+    }
+}
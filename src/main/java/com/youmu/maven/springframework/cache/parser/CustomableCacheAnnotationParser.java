@@ -24,6 +24,8 @@ import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
+import com.youmu.maven.springframework.cache.expression.CacheExpressionCompiler;
+
 /**
  * @Author: YOUMU
  * @Description:
@@ -87,9 +89,30 @@ public abstract class CustomableCacheAnnotationParser
         }
         // 自定义缓存
         ops = customCache(ops, cachingConfig, ae);
+        analyzeExpressions(ops);
         return ops;
     }
 
+    /**
+     * Parse the expressions of the operations now, the ones of a common shape
+     * are compiled by the interceptor instead of being evaluated by SpEL.
+     */
+    protected void analyzeExpressions(Collection<CacheOperation> ops) {
+        if (null == ops) {
+            return;
+        }
+        CacheExpressionCompiler compiler = CacheExpressionCompiler.getSharedInstance();
+        for (CacheOperation op : ops) {
+            compiler.analyze(op.getKey());
+            compiler.analyze(op.getCondition());
+            if (op instanceof CacheableOperation) {
+                compiler.analyze(((CacheableOperation) op).getUnless());
+            } else if (op instanceof CachePutOperation) {
+                compiler.analyze(((CachePutOperation) op).getUnless());
+            }
+        }
+    }
+
     protected abstract Collection<CacheOperation> customCache(Collection<CacheOperation> ops,
             DefaultCacheConfig cachingConfig, AnnotatedElement ae);
 
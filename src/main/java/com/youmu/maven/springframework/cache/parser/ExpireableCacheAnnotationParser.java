@@ -8,7 +8,10 @@ import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
+import com.youmu.maven.springframework.cache.ExpireableBatchCacheableOperation;
+import com.youmu.maven.springframework.cache.ExpireableCachePutOperation;
 import com.youmu.maven.springframework.cache.ExpireableCacheableOperation;
+import com.youmu.maven.springframework.cache.annotation.ExpireableBatchCacheable;
 import com.youmu.maven.springframework.cache.annotation.ExpireableCachePut;
 import com.youmu.maven.springframework.cache.annotation.ExpireableCacheable;
 import com.youmu.maven.springframework.cache.annotation.ExpireableCaching;
@@ -41,6 +44,15 @@ public class ExpireableCacheAnnotationParser extends CustomableCacheAnnotationPa
                 operations.add(parseExpireableCacheablePutAnnotation(ae, cachingConfig, put));
             }
         }
+        Collection<ExpireableBatchCacheable> batchCacheables = AnnotatedElementUtils
+                .getAllMergedAnnotations(ae, ExpireableBatchCacheable.class);
+        if (!batchCacheables.isEmpty()) {
+            operations = lazyInit(operations);
+            for (ExpireableBatchCacheable batchCacheable : batchCacheables) {
+                operations.add(parseExpireableBatchCacheableAnnotation(ae, cachingConfig,
+                        batchCacheable));
+            }
+        }
         Collection<ExpireableCaching> expireableCachings = AnnotatedElementUtils
                 .getAllMergedAnnotations(ae, ExpireableCaching.class);
         if (!expireableCachings.isEmpty()) {
@@ -77,9 +89,9 @@ public class ExpireableCacheAnnotationParser extends CustomableCacheAnnotationPa
         return ops;
     }
 
-    private ExpireableCacheableOperation parseExpireableCacheablePutAnnotation(AnnotatedElement ae,
+    private ExpireableCachePutOperation parseExpireableCacheablePutAnnotation(AnnotatedElement ae,
             DefaultCacheConfig defaultConfig, ExpireableCachePut expireableCachePut) {
-        ExpireableCacheableOperation.Builder builder = new ExpireableCacheableOperation.Builder();
+        ExpireableCachePutOperation.Builder builder = new ExpireableCachePutOperation.Builder();
         builder.setName(ae.toString());
         builder.setCacheNames(expireableCachePut.cacheNames());
         builder.setCondition(expireableCachePut.condition());
@@ -88,8 +100,11 @@ public class ExpireableCacheAnnotationParser extends CustomableCacheAnnotationPa
         builder.setKeyGenerator(expireableCachePut.keyGenerator());
         builder.setCacheManager(expireableCachePut.cacheManager());
         builder.setCacheResolver(expireableCachePut.cacheResolver());
+        // 添加过期时间
+        builder.setExpire(expireableCachePut.expire());
+        builder.setTimeUnit(expireableCachePut.timeUnit());
         defaultConfig.applyDefault(builder);
-        ExpireableCacheableOperation op = builder.build();
+        ExpireableCachePutOperation op = builder.build();
         validateCacheOperation(ae, op);
         return op;
     }
@@ -109,12 +124,36 @@ public class ExpireableCacheAnnotationParser extends CustomableCacheAnnotationPa
         // 添加过期时间
         builder.setExpire(expireableCacheable.expire());
         builder.setTimeUnit(expireableCacheable.timeUnit());
+        builder.setBeta(expireableCacheable.beta());
+        builder.setRefreshAfter(expireableCacheable.refreshAfter());
+        builder.setStaleIfError(expireableCacheable.staleIfError());
         cachingConfig.applyDefault(builder);
         ExpireableCacheableOperation op = builder.build();
         validateCacheOperation(ae, op);
         return op;
     }
 
+    private ExpireableBatchCacheableOperation parseExpireableBatchCacheableAnnotation(
+            AnnotatedElement ae, DefaultCacheConfig cachingConfig,
+            ExpireableBatchCacheable batchCacheable) {
+        ExpireableBatchCacheableOperation.Builder builder = new ExpireableBatchCacheableOperation.Builder();
+        builder.setName(ae.toString());
+        builder.setCacheNames(batchCacheable.cacheNames());
+        builder.setCondition(batchCacheable.condition());
+        builder.setCacheManager(batchCacheable.cacheManager());
+        builder.setCacheResolver(batchCacheable.cacheResolver());
+        builder.setExpire(batchCacheable.expire());
+        builder.setTimeUnit(batchCacheable.timeUnit());
+        builder.setArgument(batchCacheable.argument());
+        builder.setResultKey(batchCacheable.resultKey());
+        cachingConfig.applyDefault(builder);
+        // every id is its own key
+        builder.setKeyGenerator("");
+        ExpireableBatchCacheableOperation op = builder.build();
+        validateCacheOperation(ae, op);
+        return op;
+    }
+
     private void validateCacheOperation(AnnotatedElement ae, CacheOperation operation) {
         if (StringUtils.hasText(operation.getKey())
                 && StringUtils.hasText(operation.getKeyGenerator())) {
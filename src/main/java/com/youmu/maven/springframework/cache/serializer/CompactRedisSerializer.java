@@ -0,0 +1,688 @@
+package com.youmu.maven.springframework.cache.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.cache.support.NullValue;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import com.youmu.maven.springframework.cache.cache.ExpireableValue;
+
+/**
+ * @Author: YOUMU
+ * @Description: a compact binary {@link RedisSerializer}. Strings, numbers,
+ *               dates, byte arrays and the usual lists, sets and maps are
+ *               written with a one byte tag and varints, a registered class
+ *               with its id and its fields, anything else {@link Serializable}
+ *               falls back to java serialization. Every node must register
+ *               the same classes with the same ids. Values larger than the
+ *               compression threshold are deflated. Object graphs must not
+ *               have cycles
+ * @Date: 2017/10/16
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte FORMAT_PLAIN = 0x43;
+
+    private static final byte FORMAT_DEFLATED = 0x44;
+
+    private static final byte NULL = 0;
+
+    private static final byte NULL_VALUE = 1;
+
+    private static final byte TRUE = 2;
+
+    private static final byte FALSE = 3;
+
+    private static final byte STRING = 4;
+
+    private static final byte INT = 5;
+
+    private static final byte LONG = 6;
+
+    private static final byte DOUBLE = 7;
+
+    private static final byte FLOAT = 8;
+
+    private static final byte SHORT = 9;
+
+    private static final byte BYTE = 10;
+
+    private static final byte CHAR = 11;
+
+    private static final byte BYTES = 12;
+
+    private static final byte DATE = 13;
+
+    private static final byte LIST = 14;
+
+    private static final byte SET = 15;
+
+    private static final byte MAP = 16;
+
+    private static final byte OBJECT = 17;
+
+    private static final byte JAVA = 18;
+
+    // the constant of spring is not public before 5
+    private static final Object NULL_VALUE_INSTANCE = getNullValue();
+
+    // a buffer grown beyond it is not kept for the next value of the thread
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private final Map<Class<?>, Registration> registrationsByClass = new ConcurrentHashMap<>(64);
+
+    private final Map<Integer, Registration> registrationsById = new ConcurrentHashMap<>(64);
+
+    private int compressionThreshold = 1024;
+
+    private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    public CompactRedisSerializer() {
+        doRegister(ExpireableValue.class, 0);
+    }
+
+    /**
+     * Write the class as its id and its fields instead of its name. The class
+     * needs a constructor without arguments unless it is an enum.
+     *
+     * @param id a positive id, the same on every node
+     */
+    public void register(Class<?> type, int id) {
+        Assert.notNull(type, "Type must not be null");
+        Assert.isTrue(id > 0, "id must be positive, 0 is taken by ExpireableValue");
+        doRegister(type, id);
+    }
+
+    /**
+     * @param registrations the ids of the classes to register
+     */
+    public void setRegistrations(Map<Class<?>, Integer> registrations) {
+        for (Map.Entry<Class<?>, Integer> entry : registrations.entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @param compressionThreshold the size in bytes above which a value is
+     *            deflated, {@code <= 0} never deflates
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @param classLoader the class loader of the classes written with java
+     *            serialization
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        Buffers buffers = BUFFERS.get();
+        Output output = buffers.output;
+        output.position = 1;
+        try {
+            writeValue(output, value);
+            int length = output.position - 1;
+            if (compressionThreshold > 0 && length > compressionThreshold) {
+                byte[] deflated = deflate(buffers, output.buffer, length);
+                if (null != deflated) {
+                    return deflated;
+                }
+            }
+            output.buffer[0] = FORMAT_PLAIN;
+            return Arrays.copyOf(output.buffer, output.position);
+        } finally {
+            if (output.buffer.length > MAX_RETAINED_BUFFER) {
+                buffers.output = new Output();
+            }
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (null == bytes || bytes.length == 0) {
+            return null;
+        }
+        Input input;
+        if (bytes[0] == FORMAT_PLAIN) {
+            input = new Input(bytes, 1);
+        } else if (bytes[0] == FORMAT_DEFLATED) {
+            input = new Input(inflate(bytes), 0);
+        } else {
+            throw new SerializationException("Not a compact value, format " + bytes[0]);
+        }
+        try {
+            return readValue(input);
+        } catch (IndexOutOfBoundsException ex) {
+            throw new SerializationException("Truncated compact value", ex);
+        }
+    }
+
+    private void doRegister(Class<?> type, int id) {
+        Registration registration = new Registration(type, id);
+        Registration existing = registrationsById.get(id);
+        if (null != existing && existing.type != type) {
+            throw new IllegalStateException(
+                    "id " + id + " is taken by " + existing.type.getName());
+        }
+        registrationsById.put(id, registration);
+        registrationsByClass.put(type, registration);
+    }
+
+    private void writeValue(Output output, Object value) {
+        if (null == value) {
+            output.writeByte(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            output.writeByte(STRING);
+            output.writeBytes(((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (type == Integer.class) {
+            output.writeByte(INT);
+            output.writeVarLong((Integer) value);
+        } else if (type == Long.class) {
+            output.writeByte(LONG);
+            output.writeVarLong((Long) value);
+        } else if (type == Boolean.class) {
+            output.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (type == Double.class) {
+            output.writeByte(DOUBLE);
+            output.writeFixedLong(Double.doubleToLongBits((Double) value));
+        } else if (type == Float.class) {
+            output.writeByte(FLOAT);
+            output.writeFixedInt(Float.floatToIntBits((Float) value));
+        } else if (type == Short.class) {
+            output.writeByte(SHORT);
+            output.writeVarLong((Short) value);
+        } else if (type == Byte.class) {
+            output.writeByte(BYTE);
+            output.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            output.writeByte(CHAR);
+            output.writeVarLong((Character) value);
+        } else if (type == byte[].class) {
+            output.writeByte(BYTES);
+            output.writeBytes((byte[]) value);
+        } else if (type == Date.class) {
+            output.writeByte(DATE);
+            output.writeVarLong(((Date) value).getTime());
+        } else if (value instanceof NullValue) {
+            output.writeByte(NULL_VALUE);
+        } else if (registrationsByClass.containsKey(type)) {
+            Registration registration = registrationsByClass.get(type);
+            output.writeByte(OBJECT);
+            output.writeVarLong(registration.id);
+            writeObject(output, registration, value);
+        } else if (value instanceof List && isPlainCollection(type, ArrayList.class)) {
+            output.writeByte(LIST);
+            writeElements(output, (Collection<?>) value);
+        } else if (value instanceof Set && (isPlainCollection(type, LinkedHashSet.class)
+                || type == HashSet.class)) {
+            output.writeByte(SET);
+            writeElements(output, (Collection<?>) value);
+        } else if (value instanceof Map && (isPlainCollection(type, LinkedHashMap.class)
+                || type == HashMap.class)) {
+            output.writeByte(MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            output.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(output, entry.getKey());
+                writeValue(output, entry.getValue());
+            }
+        } else if (value instanceof Serializable) {
+            output.writeByte(JAVA);
+            output.writeBytes(javaSerialize(value));
+        } else {
+            throw new SerializationException("Cannot serialize " + type.getName()
+                    + ", register it or make it Serializable");
+        }
+    }
+
+    private Object readValue(Input input) {
+        byte tag = input.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case NULL_VALUE:
+            return NULL_VALUE_INSTANCE;
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case STRING:
+            return new String(input.readBytes(), StandardCharsets.UTF_8);
+        case INT:
+            return (int) input.readVarLong();
+        case LONG:
+            return input.readVarLong();
+        case DOUBLE:
+            return Double.longBitsToDouble(input.readFixedLong());
+        case FLOAT:
+            return Float.intBitsToFloat(input.readFixedInt());
+        case SHORT:
+            return (short) input.readVarLong();
+        case BYTE:
+            return input.readByte();
+        case CHAR:
+            return (char) input.readVarLong();
+        case BYTES:
+            return input.readBytes();
+        case DATE:
+            return new Date(input.readVarLong());
+        case OBJECT: {
+            int id = (int) input.readVarLong();
+            Registration registration = registrationsById.get(id);
+            if (null == registration) {
+                throw new SerializationException("No class registered with id " + id);
+            }
+            return readObject(input, registration);
+        }
+        case LIST: {
+            int size = (int) input.readVarLong();
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(input));
+            }
+            return list;
+        }
+        case SET: {
+            int size = (int) input.readVarLong();
+            Set<Object> set = new LinkedHashSet<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                set.add(readValue(input));
+            }
+            return set;
+        }
+        case MAP: {
+            int size = (int) input.readVarLong();
+            Map<Object, Object> map = new LinkedHashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                map.put(readValue(input), readValue(input));
+            }
+            return map;
+        }
+        case JAVA:
+            return javaDeserialize(input.readBytes());
+        default:
+            throw new SerializationException("Unknown tag " + tag);
+        }
+    }
+
+    private void writeElements(Output output, Collection<?> elements) {
+        output.writeVarLong(elements.size());
+        for (Object element : elements) {
+            writeValue(output, element);
+        }
+    }
+
+    private void writeObject(Output output, Registration registration, Object value) {
+        if (registration.type.isEnum()) {
+            output.writeVarLong(((Enum<?>) value).ordinal());
+            return;
+        }
+        for (Field field : registration.fields) {
+            Class<?> fieldType = field.getType();
+            Object fieldValue = ReflectionUtils.getField(field, value);
+            if (!fieldType.isPrimitive()) {
+                writeValue(output, fieldValue);
+            } else if (fieldType == boolean.class) {
+                output.writeByte((Boolean) fieldValue ? TRUE : FALSE);
+            } else if (fieldType == double.class) {
+                output.writeFixedLong(Double.doubleToLongBits((Double) fieldValue));
+            } else if (fieldType == float.class) {
+                output.writeFixedInt(Float.floatToIntBits((Float) fieldValue));
+            } else if (fieldType == byte.class) {
+                output.writeByte((Byte) fieldValue);
+            } else if (fieldType == char.class) {
+                output.writeVarLong((Character) fieldValue);
+            } else {
+                output.writeVarLong(((Number) fieldValue).longValue());
+            }
+        }
+    }
+
+    private Object readObject(Input input, Registration registration) {
+        if (registration.type.isEnum()) {
+            return registration.type.getEnumConstants()[(int) input.readVarLong()];
+        }
+        Object value;
+        try {
+            value = registration.constructor.newInstance();
+        } catch (Exception ex) {
+            throw new SerializationException("Cannot create " + registration.type.getName(), ex);
+        }
+        for (Field field : registration.fields) {
+            Class<?> fieldType = field.getType();
+            Object fieldValue;
+            if (!fieldType.isPrimitive()) {
+                fieldValue = readValue(input);
+            } else if (fieldType == boolean.class) {
+                fieldValue = input.readByte() == TRUE;
+            } else if (fieldType == double.class) {
+                fieldValue = Double.longBitsToDouble(input.readFixedLong());
+            } else if (fieldType == float.class) {
+                fieldValue = Float.intBitsToFloat(input.readFixedInt());
+            } else if (fieldType == byte.class) {
+                fieldValue = input.readByte();
+            } else if (fieldType == char.class) {
+                fieldValue = (char) input.readVarLong();
+            } else if (fieldType == int.class) {
+                fieldValue = (int) input.readVarLong();
+            } else if (fieldType == short.class) {
+                fieldValue = (short) input.readVarLong();
+            } else {
+                fieldValue = input.readVarLong();
+            }
+            ReflectionUtils.setField(field, value, fieldValue);
+        }
+        return value;
+    }
+
+    private byte[] deflate(Buffers buffers, byte[] body, int length) {
+        Deflater deflater = buffers.deflater;
+        deflater.reset();
+        deflater.setInput(body, 1, length);
+        deflater.finish();
+        Output deflated = buffers.deflated;
+        deflated.position = 0;
+        deflated.writeByte(FORMAT_DEFLATED);
+        deflated.writeVarLong(length);
+        while (!deflater.finished()) {
+            deflated.ensureCapacity(256);
+            deflated.position += deflater.deflate(deflated.buffer, deflated.position,
+                    deflated.buffer.length - deflated.position);
+            if (deflated.position >= length) {
+                // not worth it
+                return null;
+            }
+        }
+        byte[] result = Arrays.copyOf(deflated.buffer, deflated.position);
+        if (deflated.buffer.length > MAX_RETAINED_BUFFER) {
+            buffers.deflated = new Output();
+        }
+        return result;
+    }
+
+    private byte[] inflate(byte[] bytes) {
+        Input header = new Input(bytes, 1);
+        int length = (int) header.readVarLong();
+        byte[] body = new byte[length];
+        Inflater inflater = BUFFERS.get().inflater;
+        inflater.reset();
+        inflater.setInput(bytes, header.position, bytes.length - header.position);
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int count = inflater.inflate(body, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length) {
+                throw new SerializationException("Truncated deflated value");
+            }
+        } catch (DataFormatException ex) {
+            throw new SerializationException("Corrupt deflated value", ex);
+        }
+        return body;
+    }
+
+    private byte[] javaSerialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            ObjectOutputStream objectOutput = new ObjectOutputStream(bytes);
+            objectOutput.writeObject(value);
+            objectOutput.flush();
+        } catch (IOException ex) {
+            throw new SerializationException("Cannot serialize " + value.getClass().getName(),
+                    ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object javaDeserialize(byte[] bytes) {
+        try {
+            ObjectInputStream objectInput = new ConfigurableObjectInputStream(
+                    new ByteArrayInputStream(bytes), classLoader);
+            return objectInput.readObject();
+        } catch (IOException | ClassNotFoundException ex) {
+            throw new SerializationException("Cannot deserialize", ex);
+        }
+    }
+
+    private static Object getNullValue() {
+        Field field = ReflectionUtils.findField(NullValue.class, "INSTANCE");
+        ReflectionUtils.makeAccessible(field);
+        return ReflectionUtils.getField(field, null);
+    }
+
+    private static boolean isPlainCollection(Class<?> type, Class<?> plainType) {
+        // views like Arrays.asList or Collections.unmodifiableList come back
+        // as the plain type
+        String name = type.getName();
+        return type == plainType || name.startsWith("java.util.Collections$")
+                || name.startsWith("java.util.Arrays$");
+    }
+
+    private static final class Registration {
+
+        private final Class<?> type;
+
+        private final int id;
+
+        private final Constructor<?> constructor;
+
+        private final Field[] fields;
+
+        private Registration(Class<?> type, int id) {
+            this.type = type;
+            this.id = id;
+            if (type.isEnum()) {
+                this.constructor = null;
+                this.fields = new Field[0];
+                return;
+            }
+            try {
+                this.constructor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalArgumentException(
+                        type.getName() + " needs a constructor without arguments", ex);
+            }
+            ReflectionUtils.makeAccessible(this.constructor);
+            this.fields = findFields(type);
+        }
+
+        /**
+         * @return the instance fields, those of the super classes first, each
+         *         class in the order of the field names
+         */
+        private static Field[] findFields(Class<?> type) {
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> current = type; current != Object.class
+                    && null != current; current = current.getSuperclass()) {
+                hierarchy.add(current);
+            }
+            Collections.reverse(hierarchy);
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current : hierarchy) {
+                List<Field> declared = new ArrayList<>();
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+                            && !field.isSynthetic()) {
+                        ReflectionUtils.makeAccessible(field);
+                        declared.add(field);
+                    }
+                }
+                Collections.sort(declared, new Comparator<Field>() {
+                    @Override
+                    public int compare(Field left, Field right) {
+                        return left.getName().compareTo(right.getName());
+                    }
+                });
+                fields.addAll(declared);
+            }
+            return fields.toArray(new Field[fields.size()]);
+        }
+    }
+
+    private static final class Buffers {
+
+        private Output output = new Output();
+
+        private Output deflated = new Output();
+
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        private final Inflater inflater = new Inflater();
+    }
+
+    private static final class Output {
+
+        private byte[] buffer = new byte[256];
+
+        private int position;
+
+        private void ensureCapacity(int count) {
+            if (position + count > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + count));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * zig zag, so small negative numbers stay short
+         */
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            long zigZag = (value << 1) ^ (value >> 63);
+            while ((zigZag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+                zigZag >>>= 7;
+            }
+            buffer[position++] = (byte) zigZag;
+        }
+
+        private void writeFixedInt(int value) {
+            ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeFixedLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        private Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private byte readByte() {
+            return buffer[position++];
+        }
+
+        private long readVarLong() {
+            long zigZag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte current = buffer[position++];
+                zigZag |= (long) (current & 0x7F) << shift;
+                if ((current & 0x80) == 0) {
+                    return (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+            }
+            throw new SerializationException("Malformed varint");
+        }
+
+        private int readFixedInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private long readFixedLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private byte[] readBytes() {
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > buffer.length) {
+                throw new SerializationException("Truncated compact value");
+            }
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+    }
+}
@@ -1,68 +1,527 @@
 package com.youmu.maven.springframework.cache.support.redis;
 
-import java.lang.reflect.Field;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.CacheErrorHandler;
+import org.springframework.cache.interceptor.CacheOperation;
 import org.springframework.cache.interceptor.CacheOperationInvocationContext;
 import org.springframework.cache.interceptor.SimpleCacheResolver;
+import org.springframework.data.redis.cache.RedisCache;
 import org.springframework.data.redis.cache.RedisCacheManager;
-import org.springframework.util.CollectionUtils;
+import org.springframework.data.redis.cache.RedisCachePrefix;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.util.ReflectionUtils;
 
 import com.youmu.maven.springframework.cache.Expireable;
+import com.youmu.maven.springframework.cache.cache.CircuitBreaker;
+import com.youmu.maven.springframework.cache.cache.CircuitBreakerExpireableCache;
+import com.youmu.maven.springframework.cache.cache.ExpireableCache;
+import com.youmu.maven.springframework.cache.cache.ExpireableCacheDecorator;
+import com.youmu.maven.springframework.cache.cache.InvalidationBus;
+import com.youmu.maven.springframework.cache.cache.LocalCacheFactory;
+import com.youmu.maven.springframework.cache.cache.TwoLevelExpireableCache;
+import com.youmu.maven.springframework.cache.cache.WriteBehindExpireableCache;
+import com.youmu.maven.springframework.cache.metrics.CacheMetrics;
+import com.youmu.maven.springframework.cache.utils.CacheUtils;
 
 /**
  * @Author: YOUMU
- * @Description:
+ * @Description: resolves the caches of an operation once and serves them from
+ *               a lookup table afterwards, an {@link Expireable} operation gets
+ *               its caches wrapped so the expire travels with every write, a
+ *               cache name with a near cache gets an in-process cache in front.
+ *               With versioned clear a plain redis cache gets the generation
+ *               of the cache name mixed into its keys, with a circuit breaker
+ *               a slow redis is bypassed
  * @Date: 2017/09/19
  */
-public class DataRedisCacheResolver extends SimpleCacheResolver {
+public class DataRedisCacheResolver extends SimpleCacheResolver implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataRedisCacheResolver.class);
+
+    private final Map<CacheOperation, Collection<? extends Cache>> resolvedCaches = new ConcurrentHashMap<>(
+            256);
+
+    private final Map<String, ExpireableCache> expireableCaches = new ConcurrentHashMap<>(16);
+
+    private final Map<String, ExpireableCache> localCaches = new ConcurrentHashMap<>(16);
+
+    private Map<String, LocalCacheFactory> nearCacheFactories = Collections.emptyMap();
+
+    private LocalCacheFactory defaultNearCacheFactory;
+
+    private InvalidationBus invalidationBus;
+
+    private final Map<String, ExpireableCache> versionedCaches = new ConcurrentHashMap<>(16);
+
+    private boolean versionedClear;
+
+    private long versionRefreshInterval = 1000;
+
+    private final Map<String, WriteBehindExpireableCache> writeBehindCaches = new ConcurrentHashMap<>(
+            16);
+
+    private boolean writeBehind;
+
+    private int writeBehindQueueCapacity = 10000;
+
+    private int writeBehindBatchSize = 100;
+
+    private long writeBehindFlushInterval = 5;
+
+    private CacheErrorHandler writeBehindErrorHandler;
+
+    private final Map<String, CircuitBreakerExpireableCache> circuitBreakerCaches = new ConcurrentHashMap<>(
+            16);
+
+    private boolean circuitBreaker;
+
+    private long circuitBreakerReadTimeout = 50;
+
+    private int circuitBreakerFailureRateThreshold = 50;
+
+    private int circuitBreakerWindowSize = 20;
+
+    private long circuitBreakerOpenDuration = 5000;
+
+    private int circuitBreakerHalfOpenProbes = 3;
+
+    private CacheMetrics cacheMetrics;
+
+    public DataRedisCacheResolver() {
+    }
+
+    public DataRedisCacheResolver(CacheManager cacheManager) {
+        super(cacheManager);
+    }
 
     @Override
     public Collection<? extends Cache> resolveCaches(CacheOperationInvocationContext<?> context) {
+        CacheOperation operation = (CacheOperation) context.getOperation();
+        Collection<? extends Cache> caches = resolvedCaches.get(operation);
+        if (null == caches) {
+            caches = doResolveCaches(context);
+            resolvedCaches.put(operation, caches);
+        }
+        return caches;
+    }
+
+    protected Collection<? extends Cache> doResolveCaches(
+            CacheOperationInvocationContext<?> context) {
         Collection<String> cacheNames = getCacheNames(context);
         if (cacheNames == null) {
             return Collections.emptyList();
-        } else {
-            Collection<Cache> result = new ArrayList<>();
-            for (String cacheName : cacheNames) {
-                // 如果是RedisCacheManager
-                if (getCacheManager() instanceof RedisCacheManager
-                        && context.getOperation() instanceof Expireable) {
-                    Expireable expireable = (Expireable) context.getOperation();
-                    // redis need unit second for expire
-                    long expire = TimeUnit.SECONDS.convert(expireable.getExpire(),
-                            expireable.getTimeUnit());
-                    RedisCacheManager redisCacheManager = (RedisCacheManager) getCacheManager();
-                    Field field = ReflectionUtils.findField(RedisCacheManager.class, "expires");
-                    if (null == field) {
-                        throw new UnsupportedOperationException("can not find redisCacheManager ");
+        }
+        long expire = 0;
+        if (context.getOperation() instanceof Expireable) {
+            expire = CacheUtils.getStoreExpireMillis((Expireable) context.getOperation());
+        }
+        List<Cache> result = new ArrayList<>(cacheNames.size());
+        for (String cacheName : cacheNames) {
+            Cache cache = getCacheManager().getCache(cacheName);
+            if (cache == null) {
+                throw new IllegalArgumentException("Cannot find cache named '" + cacheName
+                        + "' for " + context.getOperation());
+            }
+            if (versionedClear) {
+                cache = getVersionedCache(cache);
+            }
+            if (expire > 0) {
+                cache = getExpireableCache(cache);
+            }
+            if (circuitBreaker) {
+                cache = getCircuitBreakerCache(cache);
+            }
+            if (writeBehind) {
+                cache = getWriteBehindCache(cache);
+            }
+            ExpireableCache localCache = getLocalCache(cacheName);
+            if (null != localCache) {
+                // a write behind cache tells the other nodes once a write is
+                // applied
+                cache = new TwoLevelExpireableCache(localCache, cache, expire,
+                        writeBehind ? null : invalidationBus);
+            }
+            if (expire > 0) {
+                cache = new ExpireableCacheDecorator((ExpireableCache) cache, expire);
+            }
+            result.add(cache);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Clear the resolved caches and their wrappers, the next invocation of
+     * every operation resolves its caches from the {@link CacheManager} again.
+     * The queued writes behind are applied first.
+     */
+    public void clearResolvedCaches() {
+        resolvedCaches.clear();
+        expireableCaches.clear();
+        versionedCaches.clear();
+        circuitBreakerCaches.clear();
+        try {
+            stopWriteBehind();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Set the near caches per cache name, a cache name listed here gets an
+     * in-process cache in front of the cache of the {@link CacheManager}.
+     */
+    public void setNearCacheFactories(Map<String, LocalCacheFactory> nearCacheFactories) {
+        this.nearCacheFactories = null == nearCacheFactories
+                ? Collections.<String, LocalCacheFactory> emptyMap() : nearCacheFactories;
+    }
+
+    /**
+     * Set the near cache of every cache name not listed in
+     * {@link #setNearCacheFactories}, {@code null} means no near cache.
+     */
+    public void setDefaultNearCacheFactory(LocalCacheFactory defaultNearCacheFactory) {
+        this.defaultNearCacheFactory = defaultNearCacheFactory;
+    }
+
+    /**
+     * Set the bus keeping the near caches of every node coherent, without it a
+     * near cache entry written on another node is only refreshed on expiry.
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Clear a plain spring-data-redis cache with a single {@code INCR} of its
+     * generation instead of deleting its keys, the generation is mixed into
+     * every key. A {@link RedisExpireableCache} always does so. The cleared
+     * generations die by their ttl, give the caches an expiration or call
+     * {@link VersionedExpireableCache#purge()} now and then.
+     */
+    public void setVersionedClear(boolean versionedClear) {
+        this.versionedClear = versionedClear;
+    }
+
+    /**
+     * @param versionRefreshInterval how long the generation of a cache name is
+     *            trusted before it is read from redis again in milliseconds
+     */
+    public void setVersionRefreshInterval(long versionRefreshInterval) {
+        this.versionRefreshInterval = versionRefreshInterval;
+    }
+
+    /**
+     * Queue the writes and evictions of every cache and apply them in batches
+     * from a background thread, the caller does not wait for redis anymore.
+     * Other nodes see a write once it is flushed.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * @param writeBehindQueueCapacity the maximum number of queued writes per
+     *            cache name, a write beyond it is applied by the caller
+     */
+    public void setWriteBehindQueueCapacity(int writeBehindQueueCapacity) {
+        this.writeBehindQueueCapacity = writeBehindQueueCapacity;
+    }
+
+    /**
+     * @param writeBehindBatchSize the maximum number of writes sent at once
+     */
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        this.writeBehindBatchSize = writeBehindBatchSize;
+    }
+
+    /**
+     * @param writeBehindFlushInterval the longest a write is queued in
+     *            milliseconds
+     */
+    public void setWriteBehindFlushInterval(long writeBehindFlushInterval) {
+        this.writeBehindFlushInterval = writeBehindFlushInterval;
+    }
+
+    /**
+     * @param writeBehindErrorHandler the handler of the writes failing on the
+     *            background threads, {@code null} only logs them
+     */
+    public void setWriteBehindErrorHandler(CacheErrorHandler writeBehindErrorHandler) {
+        this.writeBehindErrorHandler = writeBehindErrorHandler;
+    }
+
+    /**
+     * Guard the cache of every cache name with a {@link CircuitBreaker}, while
+     * it is open the cache is bypassed: reads miss, writes are skipped and the
+     * methods are invoked directly. A near cache in front still serves.
+     */
+    public void setCircuitBreaker(boolean circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @param circuitBreakerReadTimeout the milliseconds a cache call may take
+     *            before it counts as a failure
+     */
+    public void setCircuitBreakerReadTimeout(long circuitBreakerReadTimeout) {
+        this.circuitBreakerReadTimeout = circuitBreakerReadTimeout;
+    }
+
+    /**
+     * @param circuitBreakerFailureRateThreshold the percentage of failed or
+     *            slow calls opening the circuit
+     */
+    public void setCircuitBreakerFailureRateThreshold(int circuitBreakerFailureRateThreshold) {
+        this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+    }
+
+    /**
+     * @param circuitBreakerWindowSize the number of last calls the failure rate
+     *            is taken over
+     */
+    public void setCircuitBreakerWindowSize(int circuitBreakerWindowSize) {
+        this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+    }
+
+    /**
+     * @param circuitBreakerOpenDuration the milliseconds the cache is bypassed
+     *            before it is probed again
+     */
+    public void setCircuitBreakerOpenDuration(long circuitBreakerOpenDuration) {
+        this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+    }
+
+    /**
+     * @param circuitBreakerHalfOpenProbes the number of successful probes
+     *            closing the circuit again
+     */
+    public void setCircuitBreakerHalfOpenProbes(int circuitBreakerHalfOpenProbes) {
+        this.circuitBreakerHalfOpenProbes = circuitBreakerHalfOpenProbes;
+    }
+
+    /**
+     * Set the receiver of the state changes of the circuit breakers.
+     */
+    public void setCacheMetrics(CacheMetrics cacheMetrics) {
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    /**
+     * @return the circuit breaker of the cache name, {@code null} before the
+     *         cache name was resolved or without circuit breakers
+     */
+    public CircuitBreaker getCircuitBreaker(String cacheName) {
+        CircuitBreakerExpireableCache circuitBreakerCache = circuitBreakerCaches.get(cacheName);
+        return null == circuitBreakerCache ? null : circuitBreakerCache.getCircuitBreaker();
+    }
+
+    /**
+     * Apply the queued writes, stop their threads and close the near caches
+     * holding files.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        stopWriteBehind();
+        synchronized (localCaches) {
+            for (ExpireableCache localCache : localCaches.values()) {
+                if (localCache instanceof Closeable) {
+                    try {
+                        ((Closeable) localCache).close();
+                    } catch (IOException ex) {
+                        logger.warn(">>>>>>>>>>can not close near cache '" + localCache.getName()
+                                + "'", ex);
                     }
-                    ReflectionUtils.makeAccessible(field);
-                    Map<String, Long> oldExpires = (Map<String, Long>) ReflectionUtils
-                            .getField(field, redisCacheManager);
-                    if (null == oldExpires) {
-                        oldExpires = new ConcurrentHashMap<>();
+                }
+            }
+            localCaches.clear();
+        }
+    }
+
+    private void stopWriteBehind() throws InterruptedException {
+        for (WriteBehindExpireableCache writeBehindCache : writeBehindCaches.values()) {
+            writeBehindCache.destroy();
+        }
+        writeBehindCaches.clear();
+    }
+
+    /**
+     * @return the in-process cache of the cache name, {@code null} if it has
+     *         none
+     */
+    public ExpireableCache getLocalCache(String cacheName) {
+        ExpireableCache localCache = localCaches.get(cacheName);
+        if (null == localCache) {
+            LocalCacheFactory factory = nearCacheFactories.get(cacheName);
+            if (null == factory) {
+                factory = defaultNearCacheFactory;
+            }
+            if (null == factory) {
+                return null;
+            }
+            synchronized (localCaches) {
+                localCache = localCaches.get(cacheName);
+                if (null == localCache) {
+                    localCache = factory.createCache(cacheName);
+                    if (null != invalidationBus) {
+                        invalidationBus.register(localCache);
+                    }
+                    localCaches.put(cacheName, localCache);
+                }
+            }
+        }
+        return localCache;
+    }
+
+    /**
+     * @return the cache of the cache name with its generation mixed into the
+     *         keys, the cache itself if it versions its keys or is not a
+     *         redis cache
+     */
+    protected Cache getVersionedCache(Cache cache) {
+        if (!(cache instanceof RedisCache) || !(getCacheManager() instanceof RedisCacheManager)) {
+            return cache;
+        }
+        ExpireableCache versionedCache = versionedCaches.get(cache.getName());
+        if (null == versionedCache) {
+            synchronized (versionedCaches) {
+                versionedCache = versionedCaches.get(cache.getName());
+                if (null == versionedCache) {
+                    RedisOperations<?, ?> redisOperations = (RedisOperations<?, ?>) invokeManagerMethod(
+                            (RedisCacheManager) getCacheManager(), "getRedisOperations");
+                    // next to the keys of the cache like its "~keys" set, not
+                    // under its prefix, so purge does not delete the counter
+                    byte[] versionKey = (cache.getName() + "~version")
+                            .getBytes(StandardCharsets.UTF_8);
+                    Method computeExpiration = ReflectionUtils.findMethod(RedisCacheManager.class,
+                            "computeExpiration", String.class);
+                    if (null != computeExpiration) {
+                        ReflectionUtils.makeAccessible(computeExpiration);
+                        Object expiration = ReflectionUtils.invokeMethod(computeExpiration,
+                                getCacheManager(), cache.getName());
+                        if (expiration instanceof Long && (Long) expiration <= 0) {
+                            logger.warn(">>>>>>>>>>cache '" + cache.getName()
+                                    + "' has no expiration, the entries of its cleared generations"
+                                    + " stay in redis until VersionedExpireableCache.purge()");
+                        }
+                    }
+                    versionedCache = new VersionedExpireableCache(getExpireableCache(cache),
+                            new RedisCacheVersion(versionKey, redisOperations,
+                                    versionRefreshInterval));
+                    versionedCaches.put(cache.getName(), versionedCache);
+                }
+            }
+        }
+        return versionedCache;
+    }
+
+    /**
+     * @return the write behind cache of the cache name, shared by every
+     *         operation so a read sees the pending writes of all of them
+     */
+    protected ExpireableCache getWriteBehindCache(Cache cache) {
+        WriteBehindExpireableCache writeBehindCache = writeBehindCaches.get(cache.getName());
+        if (null == writeBehindCache) {
+            synchronized (writeBehindCaches) {
+                writeBehindCache = writeBehindCaches.get(cache.getName());
+                if (null == writeBehindCache) {
+                    Cache targetCache = cache;
+                    if (cache instanceof RedisCache) {
+                        targetCache = getExpireableCache(cache);
+                    }
+                    writeBehindCache = new WriteBehindExpireableCache(targetCache,
+                            writeBehindQueueCapacity, writeBehindBatchSize,
+                            writeBehindFlushInterval);
+                    writeBehindCache.setErrorHandler(writeBehindErrorHandler);
+                    if (null != getLocalCache(cache.getName())) {
+                        writeBehindCache.setInvalidationBus(invalidationBus);
                     }
-                    oldExpires.put(cacheName, expire);
-                    redisCacheManager.setExpires(oldExpires);
+                    writeBehindCaches.put(cache.getName(), writeBehindCache);
                 }
-                Cache cache = getCacheManager().getCache(cacheName);
-                if (cache == null) {
-                    throw new IllegalArgumentException("Cannot find cache named '" + cacheName
-                            + "' for " + context.getOperation());
+            }
+        }
+        return writeBehindCache;
+    }
+
+    /**
+     * @return the cache of the cache name guarded by its circuit breaker,
+     *         shared by every operation so they open and close it together
+     */
+    protected ExpireableCache getCircuitBreakerCache(Cache cache) {
+        CircuitBreakerExpireableCache circuitBreakerCache = circuitBreakerCaches
+                .get(cache.getName());
+        if (null == circuitBreakerCache) {
+            synchronized (circuitBreakerCaches) {
+                circuitBreakerCache = circuitBreakerCaches.get(cache.getName());
+                if (null == circuitBreakerCache) {
+                    Cache targetCache = cache;
+                    if (cache instanceof RedisCache) {
+                        targetCache = getExpireableCache(cache);
+                    }
+                    circuitBreakerCache = new CircuitBreakerExpireableCache(targetCache,
+                            new CircuitBreaker(cache.getName(), circuitBreakerReadTimeout,
+                                    circuitBreakerFailureRateThreshold, circuitBreakerWindowSize,
+                                    circuitBreakerOpenDuration, circuitBreakerHalfOpenProbes,
+                                    cacheMetrics));
+                    circuitBreakerCaches.put(cache.getName(), circuitBreakerCache);
                 }
-                result.add(cache);
             }
+        }
+        return circuitBreakerCache;
+    }
+
+    protected ExpireableCache getExpireableCache(Cache cache) {
+        if (cache instanceof ExpireableCache) {
+            return (ExpireableCache) cache;
+        }
+        ExpireableCache expireableCache = expireableCaches.get(cache.getName());
+        if (null == expireableCache) {
+            if (!(cache instanceof RedisCache) || !(getCacheManager() instanceof RedisCacheManager)) {
+                throw new IllegalStateException("Cache '" + cache.getName()
+                        + "' does not support expire, it must be an ExpireableCache or a RedisCache");
+            }
+            expireableCache = createRedisCacheAdapter((RedisCacheManager) getCacheManager(),
+                    (RedisCache) cache);
+            expireableCaches.put(cache.getName(), expireableCache);
+        }
+        return expireableCache;
+    }
+
+    private ExpireableCache createRedisCacheAdapter(RedisCacheManager redisCacheManager,
+            RedisCache redisCache) {
+        // resolved once per cache name, never on the invocation path
+        RedisOperations<?, ?> redisOperations = (RedisOperations<?, ?>) invokeManagerMethod(
+                redisCacheManager, "getRedisOperations");
+        byte[] keyPrefix = null;
+        if ((Boolean) invokeManagerMethod(redisCacheManager, "isUsePrefix")) {
+            RedisCachePrefix cachePrefix = (RedisCachePrefix) invokeManagerMethod(
+                    redisCacheManager, "getCachePrefix");
+            keyPrefix = cachePrefix.prefix(redisCache.getName());
+        }
+        return new ExpireableRedisCacheAdapter(redisCache, keyPrefix, redisOperations);
+    }
 
-            return result;
+    private Object invokeManagerMethod(RedisCacheManager redisCacheManager, String name) {
+        Method method = ReflectionUtils.findMethod(RedisCacheManager.class, name);
+        if (null == method) {
+            throw new UnsupportedOperationException(
+                    "can not find " + name + " of redisCacheManager");
         }
+        ReflectionUtils.makeAccessible(method);
+        return ReflectionUtils.invokeMethod(method, redisCacheManager);
     }
 }
@@ -0,0 +1,112 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheElement;
+import org.springframework.data.redis.cache.RedisCacheKey;
+import org.springframework.data.redis.core.RedisOperations;
+
+import com.youmu.maven.springframework.cache.cache.AbstractValueAdaptingExpireableCache;
+
+/**
+ * @Author: YOUMU
+ * @Description: lets a plain spring-data-redis {@link RedisCache} accept a
+ *               time to live per write, the cache itself and its manager are
+ *               never reconfigured
+ * @Date: 2017/09/27
+ */
+public class ExpireableRedisCacheAdapter extends AbstractValueAdaptingExpireableCache {
+
+    private final RedisCache redisCache;
+
+    private final byte[] keyPrefix;
+
+    private final RedisOperations<?, ?> redisOperations;
+
+    public ExpireableRedisCacheAdapter(RedisCache redisCache, byte[] keyPrefix,
+            RedisOperations<?, ?> redisOperations) {
+        super(redisCache.isAllowNullValues());
+        this.redisCache = redisCache;
+        this.keyPrefix = keyPrefix;
+        this.redisOperations = redisOperations;
+    }
+
+    @Override
+    public String getName() {
+        return redisCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return redisCache.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return redisCache.get(key, type);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return redisCache.get(key, valueLoader);
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        ValueWrapper cached = redisCache.get(key);
+        return null == cached ? null : toStoreValue(cached.get());
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return redisCache.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        if (expire <= 0) {
+            put(key, value);
+            return;
+        }
+        redisCache.put(createElement(key, value, expire));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        if (expire <= 0) {
+            return putIfAbsent(key, value);
+        }
+        return redisCache.putIfAbsent(createElement(key, value, expire));
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+    }
+
+    private RedisCacheElement createElement(Object key, Object value, long expire) {
+        RedisCacheKey cacheKey = new RedisCacheKey(key).usePrefix(keyPrefix)
+                .withKeySerializer(redisOperations.getKeySerializer());
+        // redis cache only supports seconds, round up so a short ttl never
+        // becomes eternal
+        long seconds = (expire + TimeUnit.SECONDS.toMillis(1) - 1) / TimeUnit.SECONDS.toMillis(1);
+        return new RedisCacheElement(cacheKey, toStoreValue(value)).expireAfter(seconds);
+    }
+}
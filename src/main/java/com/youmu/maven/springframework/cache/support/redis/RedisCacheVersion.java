@@ -0,0 +1,126 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.util.Assert;
+
+/**
+ * @Author: YOUMU
+ * @Description: the generation of a cache kept in a redis counter. Clearing
+ *               the cache is a single {@code INCR}, the entries of the older
+ *               generations are not read anymore and die by their ttl. The
+ *               counter is cached in this jvm and read again from redis once
+ *               per refresh interval. A generation never goes backwards,
+ *               not even when the counter is lost
+ * @Date: 2017/10/15
+ */
+public class RedisCacheVersion {
+
+    private final byte[] versionKey;
+
+    private final RedisOperations<?, ?> redisOperations;
+
+    private final long refreshInterval;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile long refreshTime;
+
+    private volatile boolean initialized;
+
+    private volatile long version;
+
+    /**
+     * @param versionKey the key of the counter
+     * @param redisOperations the redis template
+     * @param refreshInterval how long the counter read from redis is trusted
+     *            in milliseconds, bounds how long another node keeps reading
+     *            a cleared generation
+     */
+    public RedisCacheVersion(byte[] versionKey, RedisOperations<?, ?> redisOperations,
+            long refreshInterval) {
+        Assert.notNull(versionKey, "VersionKey must not be null");
+        Assert.notNull(redisOperations, "RedisOperations must not be null");
+        this.versionKey = versionKey;
+        this.redisOperations = redisOperations;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * @return the current generation, {@code 0} until the first clear
+     */
+    public long get() {
+        if (!initialized) {
+            // nobody may use the default generation before it was read once
+            synchronized (this) {
+                if (!initialized) {
+                    refresh();
+                }
+            }
+            return version;
+        }
+        // one reader refreshes, the others keep the cached generation
+        if (System.currentTimeMillis() >= refreshTime && refreshing.compareAndSet(false, true)) {
+            try {
+                if (System.currentTimeMillis() >= refreshTime) {
+                    refresh();
+                }
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Move to the next generation.
+     *
+     * @return the new generation
+     */
+    public long increment() {
+        Long incremented = redisOperations.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                Long incremented = connection.incr(versionKey);
+                long current = version;
+                if (null != incremented && incremented <= current) {
+                    // the counter was lost, move it past the generation
+                    // already used here instead of reusing an old one
+                    incremented = connection.incrBy(versionKey, current + 1 - incremented);
+                }
+                return incremented;
+            }
+        });
+        update(null == incremented ? 0 : incremented);
+        return version;
+    }
+
+    /**
+     * Read the generation from redis now.
+     */
+    public void refresh() {
+        byte[] bytes = redisOperations.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.get(versionKey);
+            }
+        });
+        update(null == bytes ? 0 : Long.parseLong(new String(bytes, StandardCharsets.UTF_8)));
+    }
+
+    private synchronized void update(long version) {
+        // neither a refresh read before a concurrent clear nor a lost counter
+        // moves back to a cleared generation
+        if (version > this.version) {
+            this.version = version;
+        }
+        // only a successful read is trusted for the refresh interval
+        refreshTime = System.currentTimeMillis() + refreshInterval;
+        initialized = true;
+    }
+}
@@ -0,0 +1,391 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.cache.RedisCacheKey;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+import com.youmu.maven.springframework.cache.cache.AbstractValueAdaptingExpireableCache;
+import com.youmu.maven.springframework.cache.key.EncodedKey;
+import com.youmu.maven.springframework.cache.utils.GroupCommit;
+
+/**
+ * @Author: YOUMU
+ * @Description: redis cache whose every write is a single {@code SET PX}, the
+ *               keys are laid out like spring-data-redis
+ *               {@link org.springframework.data.redis.cache.RedisCache} with a
+ *               prefix followed by the generation of the cache. Concurrent
+ *               evictions are sent together in one {@code DEL} and a clear is
+ *               a single {@code INCR} of the generation
+ * @Date: 2017/09/27
+ */
+public class RedisExpireableCache extends AbstractValueAdaptingExpireableCache {
+
+    /**
+     * SET NX PX and return the value already present, in one round trip
+     */
+    private static final byte[] PUT_IF_ABSENT_SCRIPT = ("local ok; "
+            + "if tonumber(ARGV[2]) > 0 then ok = redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) "
+            + "else ok = redis.call('SET', KEYS[1], ARGV[1], 'NX') end; "
+            + "if ok then return nil end; return redis.call('GET', KEYS[1])")
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private static final int CLEAR_BATCH_SIZE = 1000;
+
+    private static final long DEFAULT_VERSION_REFRESH_INTERVAL = 1000;
+
+    private static final byte[] VERSION_KEY_SUFFIX = "~version".getBytes(StandardCharsets.UTF_8);
+
+    private final String name;
+
+    private final byte[] keyPrefix;
+
+    private final byte[] versionKey;
+
+    private final RedisOperations<?, ?> redisOperations;
+
+    private final long defaultExpiration;
+
+    private volatile RedisCacheVersion version;
+
+    private RedisSerializer<Object> valueSerializer;
+
+    private volatile VersionedPrefix versionedPrefix;
+
+    private final GroupCommit<byte[]> evictions = new GroupCommit<byte[]>() {
+        @Override
+        protected void commit(final List<byte[]> keys) {
+            redisOperations.execute(new RedisCallback<Object>() {
+                @Override
+                public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                    connection.del(keys.toArray(new byte[keys.size()][]));
+                    return null;
+                }
+            });
+        }
+    };
+
+    /**
+     * @param name the name of the cache
+     * @param keyPrefix the prefix of every key of this cache
+     * @param redisOperations the redis template
+     * @param defaultExpiration the expire in milliseconds when a write does
+     *            not carry one, {@code <= 0} means never
+     * @param allowNullValues whether to allow for {@code null} values
+     */
+    public RedisExpireableCache(String name, byte[] keyPrefix,
+            RedisOperations<?, ?> redisOperations, long defaultExpiration,
+            boolean allowNullValues) {
+        super(allowNullValues);
+        Assert.hasText(name, "CacheName must not be null or empty");
+        Assert.isTrue(!ObjectUtils.isEmpty(keyPrefix), "KeyPrefix must not be empty");
+        Assert.notNull(redisOperations, "RedisOperations must not be null");
+        this.name = name;
+        this.keyPrefix = keyPrefix;
+        this.versionKey = Arrays.copyOf(keyPrefix, keyPrefix.length + VERSION_KEY_SUFFIX.length);
+        System.arraycopy(VERSION_KEY_SUFFIX, 0, versionKey, keyPrefix.length,
+                VERSION_KEY_SUFFIX.length);
+        this.redisOperations = redisOperations;
+        this.defaultExpiration = defaultExpiration;
+        setVersionRefreshInterval(DEFAULT_VERSION_REFRESH_INTERVAL);
+    }
+
+    /**
+     * @param valueSerializer the serializer of the values of this cache,
+     *            {@code null} means the value serializer of the redis template
+     */
+    public void setValueSerializer(RedisSerializer<Object> valueSerializer) {
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * @param versionRefreshInterval how long the generation of the cache is
+     *            trusted before it is read from redis again in milliseconds,
+     *            so how long another node may serve entries older than a
+     *            clear
+     */
+    public void setVersionRefreshInterval(long versionRefreshInterval) {
+        this.version = new RedisCacheVersion(versionKey, redisOperations, versionRefreshInterval);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisOperations;
+    }
+
+    public long getDefaultExpiration() {
+        return defaultExpiration;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        final byte[] keyBytes = toKeyBytes(key);
+        byte[] valueBytes = redisOperations.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.get(keyBytes);
+            }
+        });
+        return deserializeValue(valueBytes);
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        final byte[] keyBytes = toKeyBytes(key);
+        final byte[] valueBytes = serializeValue(toStoreValue(value));
+        final long ttl = expire > 0 ? expire : defaultExpiration;
+        redisOperations.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                if (ttl > 0) {
+                    connection.set(keyBytes, valueBytes, Expiration.milliseconds(ttl),
+                            RedisStringCommands.SetOption.UPSERT);
+                } else {
+                    connection.set(keyBytes, valueBytes);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Read every key with a single MGET.
+     */
+    @Override
+    public List<ValueWrapper> getAll(Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        byte[] prefix = getVersionedPrefix();
+        final byte[][] keyBytes = new byte[keys.size()][];
+        int i = 0;
+        for (Object key : keys) {
+            keyBytes[i++] = toKeyBytes(prefix, key);
+        }
+        List<byte[]> valueBytes = redisOperations.execute(new RedisCallback<List<byte[]>>() {
+            @Override
+            public List<byte[]> doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.mGet(keyBytes);
+            }
+        });
+        List<ValueWrapper> values = new ArrayList<>(keyBytes.length);
+        for (i = 0; i < keyBytes.length; i++) {
+            byte[] bytes = null == valueBytes ? null : valueBytes.get(i);
+            values.add(null == bytes ? null : toValueWrapper(deserializeValue(bytes)));
+        }
+        return values;
+    }
+
+    /**
+     * Write every entry with its own SET PX, in one pipeline.
+     */
+    @Override
+    public void putAll(Map<?, ?> entries, long expire) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        final List<byte[]> keyBytes = new ArrayList<>(entries.size());
+        final List<byte[]> valueBytes = new ArrayList<>(entries.size());
+        byte[] prefix = getVersionedPrefix();
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            keyBytes.add(toKeyBytes(prefix, entry.getKey()));
+            valueBytes.add(serializeValue(toStoreValue(entry.getValue())));
+        }
+        final long ttl = expire > 0 ? expire : defaultExpiration;
+        redisOperations.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.openPipeline();
+                try {
+                    for (int i = 0; i < keyBytes.size(); i++) {
+                        if (ttl > 0) {
+                            connection.set(keyBytes.get(i), valueBytes.get(i),
+                                    Expiration.milliseconds(ttl),
+                                    RedisStringCommands.SetOption.UPSERT);
+                        } else {
+                            connection.set(keyBytes.get(i), valueBytes.get(i));
+                        }
+                    }
+                } finally {
+                    connection.closePipeline();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        final byte[] keyBytes = toKeyBytes(key);
+        final byte[] valueBytes = serializeValue(toStoreValue(value));
+        final long ttl = expire > 0 ? expire : defaultExpiration;
+        byte[] existing = redisOperations.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.eval(PUT_IF_ABSENT_SCRIPT, ReturnType.VALUE, 1, keyBytes,
+                        valueBytes, String.valueOf(ttl).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        return null == existing ? null : toValueWrapper(deserializeValue(existing));
+    }
+
+    @Override
+    public void evict(Object key) {
+        evictions.submit(Collections.singletonList(toKeyBytes(key)));
+    }
+
+    /**
+     * Delete every key with the evictions of the concurrent callers in one
+     * DEL.
+     */
+    @Override
+    public void evictAll(Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        byte[] prefix = getVersionedPrefix();
+        List<byte[]> keyBytes = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            keyBytes.add(toKeyBytes(prefix, key));
+        }
+        evictions.submit(keyBytes);
+    }
+
+    /**
+     * Move the cache to its next generation with a single INCR, the entries
+     * of the older generations are never read again and die by their ttl.
+     * Entries written without an expire stay until {@link #purge()}.
+     */
+    @Override
+    public void clear() {
+        version.increment();
+    }
+
+    /**
+     * Delete every key of the prefix, of every generation, with SCAN so redis
+     * is never blocked by KEYS on a large cache. The generation counter is
+     * kept, so the next clear still moves forward.
+     */
+    public void purge() {
+        final byte[] pattern = Arrays.copyOf(keyPrefix, keyPrefix.length + 1);
+        pattern[keyPrefix.length] = '*';
+        redisOperations.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                List<byte[]> keys = new ArrayList<>(CLEAR_BATCH_SIZE);
+                Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions()
+                        .match(new String(pattern, StandardCharsets.UTF_8)).count(CLEAR_BATCH_SIZE)
+                        .build());
+                try {
+                    while (cursor.hasNext()) {
+                        byte[] key = cursor.next();
+                        if (Arrays.equals(versionKey, key)) {
+                            continue;
+                        }
+                        keys.add(key);
+                        if (keys.size() == CLEAR_BATCH_SIZE) {
+                            connection.del(keys.toArray(new byte[keys.size()][]));
+                            keys.clear();
+                        }
+                    }
+                } finally {
+                    try {
+                        cursor.close();
+                    } catch (Exception ex) {
+                        // nothing to release for an exhausted cursor
+                    }
+                }
+                if (!keys.isEmpty()) {
+                    connection.del(keys.toArray(new byte[keys.size()][]));
+                }
+                return null;
+            }
+        });
+    }
+
+    protected byte[] toKeyBytes(Object key) {
+        return toKeyBytes(getVersionedPrefix(), key);
+    }
+
+    protected byte[] toKeyBytes(byte[] prefix, Object key) {
+        if (key instanceof EncodedKey) {
+            byte[] encoded = ((EncodedKey) key).getBytes();
+            byte[] keyBytes = Arrays.copyOf(prefix, prefix.length + encoded.length);
+            System.arraycopy(encoded, 0, keyBytes, prefix.length, encoded.length);
+            return keyBytes;
+        }
+        return new RedisCacheKey(key).usePrefix(prefix)
+                .withKeySerializer(redisOperations.getKeySerializer()).getKeyBytes();
+    }
+
+    /**
+     * @return the prefix followed by the current generation, like
+     *         {@code user:3~}
+     */
+    protected byte[] getVersionedPrefix() {
+        long current = version.get();
+        VersionedPrefix prefix = versionedPrefix;
+        if (null == prefix || prefix.version != current) {
+            byte[] suffix = (current + "~").getBytes(StandardCharsets.UTF_8);
+            byte[] bytes = Arrays.copyOf(keyPrefix, keyPrefix.length + suffix.length);
+            System.arraycopy(suffix, 0, bytes, keyPrefix.length, suffix.length);
+            prefix = new VersionedPrefix(current, bytes);
+            versionedPrefix = prefix;
+        }
+        return prefix.bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected byte[] serializeValue(Object storeValue) {
+        RedisSerializer<Object> serializer = null != valueSerializer ? valueSerializer
+                : (RedisSerializer<Object>) redisOperations.getValueSerializer();
+        if (null == serializer && storeValue instanceof byte[]) {
+            return (byte[]) storeValue;
+        }
+        Assert.notNull(serializer, "value serializer is required for non byte[] values");
+        return serializer.serialize(storeValue);
+    }
+
+    protected Object deserializeValue(byte[] valueBytes) {
+        if (null == valueBytes) {
+            return null;
+        }
+        RedisSerializer<?> serializer = null != valueSerializer ? valueSerializer
+                : redisOperations.getValueSerializer();
+        return null == serializer ? valueBytes : serializer.deserialize(valueBytes);
+    }
+
+    private static final class VersionedPrefix {
+
+        private final long version;
+
+        private final byte[] bytes;
+
+        private VersionedPrefix(long version, byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+}
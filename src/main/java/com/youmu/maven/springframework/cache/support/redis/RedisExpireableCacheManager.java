@@ -0,0 +1,80 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * @Author: YOUMU
+ * @Description: a {@link RedisCacheManager} handing out
+ *               {@link RedisExpireableCache}s, the expiration settings of the
+ *               manager become the default expire of each cache. Keys are
+ *               always prefixed, so {@code clear} only touches its own cache.
+ *               The values of a cache name may use their own serializer
+ * @Date: 2017/09/27
+ */
+public class RedisExpireableCacheManager extends RedisCacheManager {
+
+    private Map<String, RedisSerializer<Object>> valueSerializers = Collections.emptyMap();
+
+    private RedisSerializer<Object> defaultValueSerializer;
+
+    public RedisExpireableCacheManager(RedisOperations redisOperations) {
+        this(redisOperations, Collections.<String> emptyList());
+    }
+
+    public RedisExpireableCacheManager(RedisOperations redisOperations,
+            Collection<String> cacheNames) {
+        this(redisOperations, cacheNames, false);
+    }
+
+    public RedisExpireableCacheManager(RedisOperations redisOperations,
+            Collection<String> cacheNames, boolean cacheNullValues) {
+        super(redisOperations, cacheNames, cacheNullValues);
+        setUsePrefix(true);
+    }
+
+    /**
+     * Set the value serializers per cache name, a cache name not listed here
+     * uses the default value serializer.
+     */
+    public void setValueSerializers(Map<String, RedisSerializer<Object>> valueSerializers) {
+        this.valueSerializers = null == valueSerializers
+                ? Collections.<String, RedisSerializer<Object>> emptyMap() : valueSerializers;
+    }
+
+    /**
+     * Set the value serializer of every cache name not listed in
+     * {@link #setValueSerializers}, {@code null} means the value serializer
+     * of the redis template.
+     */
+    public void setDefaultValueSerializer(RedisSerializer<Object> defaultValueSerializer) {
+        this.defaultValueSerializer = defaultValueSerializer;
+    }
+
+    @Override
+    protected Cache decorateCache(Cache cache) {
+        if (cache instanceof RedisCache) {
+            cache = createExpireableCache((RedisCache) cache);
+        }
+        return super.decorateCache(cache);
+    }
+
+    protected RedisExpireableCache createExpireableCache(RedisCache redisCache) {
+        String name = redisCache.getName();
+        // expiration of RedisCacheManager is in seconds
+        RedisExpireableCache cache = new RedisExpireableCache(name, getCachePrefix().prefix(name),
+                getRedisOperations(), TimeUnit.SECONDS.toMillis(computeExpiration(name)),
+                redisCache.isAllowNullValues());
+        RedisSerializer<Object> valueSerializer = valueSerializers.get(name);
+        cache.setValueSerializer(null == valueSerializer ? defaultValueSerializer : valueSerializer);
+        return cache;
+    }
+}
@@ -0,0 +1,68 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.util.Assert;
+
+import com.youmu.maven.springframework.cache.cache.InvalidationTransport;
+
+/**
+ * @Author: YOUMU
+ * @Description: carries near cache invalidations over a redis pub/sub channel
+ * @Date: 2017/09/29
+ */
+public class RedisInvalidationTransport implements InvalidationTransport {
+
+    public static final String DEFAULT_CHANNEL = "spring-cache-support:invalidation";
+
+    private final RedisOperations<?, ?> redisOperations;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final String channel;
+
+    public RedisInvalidationTransport(RedisOperations<?, ?> redisOperations,
+            RedisMessageListenerContainer listenerContainer) {
+        this(redisOperations, listenerContainer, DEFAULT_CHANNEL);
+    }
+
+    public RedisInvalidationTransport(RedisOperations<?, ?> redisOperations,
+            RedisMessageListenerContainer listenerContainer, String channel) {
+        Assert.notNull(redisOperations, "RedisOperations must not be null");
+        Assert.notNull(listenerContainer, "RedisMessageListenerContainer must not be null");
+        Assert.hasText(channel, "Channel must not be empty");
+        this.redisOperations = redisOperations;
+        this.listenerContainer = listenerContainer;
+        this.channel = channel;
+    }
+
+    @Override
+    public void publish(final byte[] message) {
+        final byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        redisOperations.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.publish(channelBytes, message);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(final Listener listener) {
+        listenerContainer.addMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(Message message, byte[] pattern) {
+                listener.onMessage(message.getBody());
+            }
+        }, new ChannelTopic(channel));
+    }
+}
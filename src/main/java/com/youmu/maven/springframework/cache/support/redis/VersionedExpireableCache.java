@@ -0,0 +1,175 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.util.Assert;
+
+import com.youmu.maven.springframework.cache.cache.BatchExpireableCache;
+import com.youmu.maven.springframework.cache.cache.ExpireableCache;
+
+/**
+ * @Author: YOUMU
+ * @Description: mixes the generation of the cache into every key of a cache
+ *               that does not version its keys itself, so {@link #clear()}
+ *               is a single {@code INCR}. A {@link String} key becomes
+ *               {@code <generation>~<key>}, any other key a {@link SimpleKey}
+ *               of the generation and the key
+ * @Date: 2017/10/16
+ */
+public class VersionedExpireableCache implements BatchExpireableCache {
+
+    private final ExpireableCache targetCache;
+
+    private final RedisCacheVersion version;
+
+    public VersionedExpireableCache(ExpireableCache targetCache, RedisCacheVersion version) {
+        Assert.notNull(targetCache, "Target Cache must not be null");
+        Assert.notNull(version, "RedisCacheVersion must not be null");
+        this.targetCache = targetCache;
+        this.version = version;
+    }
+
+    public ExpireableCache getTargetCache() {
+        return targetCache;
+    }
+
+    public RedisCacheVersion getVersion() {
+        return version;
+    }
+
+    @Override
+    public String getName() {
+        return targetCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return targetCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return targetCache.get(toVersionedKey(version.get(), key));
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return targetCache.get(toVersionedKey(version.get(), key), type);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return targetCache.get(toVersionedKey(version.get(), key), valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        targetCache.put(toVersionedKey(version.get(), key), value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return targetCache.putIfAbsent(toVersionedKey(version.get(), key), value);
+    }
+
+    @Override
+    public void put(Object key, Object value, long expire) {
+        targetCache.put(toVersionedKey(version.get(), key), value, expire);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value, long expire) {
+        return targetCache.putIfAbsent(toVersionedKey(version.get(), key), value, expire);
+    }
+
+    @Override
+    public List<ValueWrapper> getAll(Collection<?> keys) {
+        List<Object> versionedKeys = toVersionedKeys(keys);
+        if (targetCache instanceof BatchExpireableCache) {
+            return ((BatchExpireableCache) targetCache).getAll(versionedKeys);
+        }
+        List<ValueWrapper> values = new ArrayList<>(versionedKeys.size());
+        for (Object key : versionedKeys) {
+            values.add(targetCache.get(key));
+        }
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries, long expire) {
+        long current = version.get();
+        Map<Object, Object> versionedEntries = new LinkedHashMap<>(entries.size() * 2);
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            versionedEntries.put(toVersionedKey(current, entry.getKey()), entry.getValue());
+        }
+        if (targetCache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) targetCache).putAll(versionedEntries, expire);
+            return;
+        }
+        for (Map.Entry<Object, Object> entry : versionedEntries.entrySet()) {
+            targetCache.put(entry.getKey(), entry.getValue(), expire);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        targetCache.evict(toVersionedKey(version.get(), key));
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        List<Object> versionedKeys = toVersionedKeys(keys);
+        if (targetCache instanceof BatchExpireableCache) {
+            ((BatchExpireableCache) targetCache).evictAll(versionedKeys);
+            return;
+        }
+        for (Object key : versionedKeys) {
+            targetCache.evict(key);
+        }
+    }
+
+    /**
+     * Move to the next generation, the entries of the older ones die by their
+     * ttl. Entries written without an expire stay until {@link #purge()}.
+     */
+    @Override
+    public void clear() {
+        version.increment();
+    }
+
+    /**
+     * Delete the entries of every generation, for caches whose entries do not
+     * expire. The clear of the target deletes them, so the counter of the
+     * generation must be kept outside the keys of the target or it would
+     * start over at a cleared generation.
+     */
+    public void purge() {
+        if (targetCache instanceof RedisExpireableCache) {
+            ((RedisExpireableCache) targetCache).purge();
+            return;
+        }
+        targetCache.clear();
+    }
+
+    protected Object toVersionedKey(long current, Object key) {
+        if (key instanceof String) {
+            return current + "~" + key;
+        }
+        return new SimpleKey(current, key);
+    }
+
+    private List<Object> toVersionedKeys(Collection<?> keys) {
+        long current = version.get();
+        List<Object> versionedKeys = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            versionedKeys.add(toVersionedKey(current, key));
+        }
+        return versionedKeys;
+    }
+}
@@ -2,6 +2,9 @@ package com.youmu.maven.springframework.cache.utils;
 
 import java.util.concurrent.TimeUnit;
 
+import com.youmu.maven.springframework.cache.Expireable;
+import com.youmu.maven.springframework.cache.ExpireableCacheableOperation;
+
 /**
  * @Author: YOUMU
  * @Description:
@@ -20,4 +23,28 @@ public abstract class CacheUtils {
         sb.append("'");
         return sb;
     }
+
+    /**
+     * @return the expire of the operation in milliseconds, {@code 0} if the
+     *         operation does not declare one
+     */
+    public static long getExpireMillis(Expireable expireable) {
+        if (expireable.getExpire() <= 0 || null == expireable.getTimeUnit()) {
+            return 0;
+        }
+        return expireable.getTimeUnit().toMillis(expireable.getExpire());
+    }
+
+    /**
+     * @return the expire the caches store the entries of the operation with in
+     *         milliseconds, the stale if error window included, {@code 0} if
+     *         the operation does not declare one
+     */
+    public static long getStoreExpireMillis(Expireable expireable) {
+        long expire = getExpireMillis(expireable);
+        if (expire > 0 && expireable instanceof ExpireableCacheableOperation) {
+            expire += ((ExpireableCacheableOperation) expireable).getStaleIfErrorMillis();
+        }
+        return expire;
+    }
 }
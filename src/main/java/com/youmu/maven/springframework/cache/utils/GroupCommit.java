@@ -0,0 +1,116 @@
+package com.youmu.maven.springframework.cache.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author: YOUMU
+ * @Description: commits the items submitted by concurrent callers together.
+ *               The first caller commits what is queued, the callers arriving
+ *               meanwhile queue their items for its next round and wait for
+ *               it. A lone caller commits at once, nothing waits for a timer
+ * @Date: 2017/10/15
+ */
+public abstract class GroupCommit<T> {
+
+    private final Queue<Request<T>> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean committing = new AtomicBoolean();
+
+    /**
+     * Commit the items once they and the items of the concurrent callers are
+     * committed.
+     *
+     * @throws RuntimeException the exception of the commit holding the items
+     */
+    public void submit(Collection<? extends T> items) {
+        Request<T> request = new Request<>(items);
+        queue.offer(request);
+        queued(items);
+        // whoever stops committing looks at the queue again, no item is left
+        while (null != queue.peek() && committing.compareAndSet(false, true)) {
+            try {
+                commitQueued();
+            } finally {
+                committing.set(false);
+            }
+        }
+        request.await();
+    }
+
+    /**
+     * Commit the items of one round, in the order they were submitted.
+     */
+    protected abstract void commit(List<T> items);
+
+    /**
+     * Called once the items of a caller are queued, before it commits or
+     * waits. Does nothing by default.
+     */
+    protected void queued(Collection<? extends T> items) {
+    }
+
+    private void commitQueued() {
+        List<Request<T>> requests = new ArrayList<>();
+        List<T> items = new ArrayList<>();
+        Request<T> request;
+        while (null != (request = queue.poll())) {
+            requests.add(request);
+            items.addAll(request.items);
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        RuntimeException failure = null;
+        try {
+            commit(items);
+        } catch (RuntimeException ex) {
+            failure = ex;
+        }
+        for (Request<T> committed : requests) {
+            committed.complete(failure);
+        }
+    }
+
+    private static final class Request<T> {
+
+        private final Collection<? extends T> items;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile RuntimeException failure;
+
+        private Request(Collection<? extends T> items) {
+            this.items = items;
+        }
+
+        private void complete(RuntimeException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    // the items are queued already, wait for their commit
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (null != failure) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.youmu.maven.springframework.cache.utils;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * @Author: YOUMU
+ * @Description: runs a call at most once at a time per key in this jvm, the
+ *               callers arriving while it runs wait for it and share its result
+ *               or its exception
+ * @Date: 2017/09/30
+ */
+public class SingleFlight {
+
+    private final ConcurrentMap<Object, FutureTask<Object>> calls = new ConcurrentHashMap<>(256);
+
+    /**
+     * @return the result of the call, run by this thread or by the one that
+     *         started it first
+     * @throws RuntimeException the exception of the call, a checked one is
+     *             wrapped in an {@link UndeclaredThrowableException}
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Callable<T> callable) {
+        FutureTask<Object> call = calls.get(key);
+        if (null == call) {
+            FutureTask<Object> created = new FutureTask<>((Callable<Object>) callable);
+            call = calls.putIfAbsent(key, created);
+            if (null == call) {
+                call = created;
+                try {
+                    created.run();
+                } finally {
+                    calls.remove(key, created);
+                }
+            }
+        }
+        try {
+            return (T) call.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new UndeclaredThrowableException(cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the call of " + key,
+                    ex);
+        }
+    }
+
+    /**
+     * @return whether a call of the key is running
+     */
+    public boolean isRunning(Object key) {
+        return calls.containsKey(key);
+    }
+}
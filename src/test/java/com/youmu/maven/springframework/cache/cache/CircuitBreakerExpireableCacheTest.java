@@ -0,0 +1,129 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import com.youmu.maven.springframework.cache.metrics.SimpleCacheMetrics;
+
+public class CircuitBreakerExpireableCacheTest {
+
+    private final SimpleCacheMetrics metrics = new SimpleCacheMetrics();
+
+    private FailingCache target;
+
+    private CircuitBreakerExpireableCache cache;
+
+    @Before
+    public void setUp() {
+        target = new FailingCache();
+        cache = new CircuitBreakerExpireableCache(target,
+                new CircuitBreaker("user", 1000, 50, 4, 30, 2, metrics));
+    }
+
+    @Test
+    public void opensOnFailureRate() {
+        cache.put("id", "youmu");
+        assertEquals("youmu", cache.get("id").get());
+        target.failing = true;
+        getFailing();
+        assertEquals(CircuitBreaker.State.CLOSED, cache.getCircuitBreaker().getState());
+        getFailing();
+        assertEquals(CircuitBreaker.State.OPEN, cache.getCircuitBreaker().getState());
+        // bypassed without calling the target
+        assertNull(cache.get("id"));
+        // a skipped write evicts the older value
+        cache.put("id", "yuyuko");
+        assertNull(target.getNativeCache().get("id"));
+        cache.evict("other");
+        assertEquals(1, metrics.getCacheStats("user").getCircuitOpens());
+        assertEquals(CircuitBreaker.State.OPEN, metrics.getCacheStats("user").getCircuitState());
+    }
+
+    @Test
+    public void writesWhileOpenAreNotServedStale() throws InterruptedException {
+        cache.put("id", "youmu");
+        cache.putAll(Collections.singletonMap("other", "youmu"), 0);
+        target.failing = true;
+        getFailing();
+        getFailing();
+        assertEquals(CircuitBreaker.State.OPEN, cache.getCircuitBreaker().getState());
+        cache.put("id", "yuyuko");
+        cache.putAll(Collections.singletonMap("other", "yuyuko"), 0);
+        target.failing = false;
+        Thread.sleep(40);
+        assertNull(cache.get("id"));
+        assertNull(cache.get("other"));
+        assertEquals(CircuitBreaker.State.CLOSED, cache.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void halfOpenProbes() throws InterruptedException {
+        target.failing = true;
+        for (int i = 0; i < 4; i++) {
+            getFailing();
+        }
+        Thread.sleep(40);
+        // a failed probe opens it again
+        getFailing();
+        assertEquals(CircuitBreaker.State.OPEN, cache.getCircuitBreaker().getState());
+        target.failing = false;
+        Thread.sleep(40);
+        assertNull(cache.get("id"));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, cache.getCircuitBreaker().getState());
+        cache.put("id", "youmu");
+        assertEquals(CircuitBreaker.State.CLOSED, cache.getCircuitBreaker().getState());
+        assertEquals("youmu", cache.get("id").get());
+        assertEquals(2, metrics.getCacheStats("user").getCircuitOpens());
+        assertEquals(CircuitBreaker.State.CLOSED, metrics.getCacheStats("user").getCircuitState());
+    }
+
+    @Test
+    public void callsOfPreviousStateIgnored() {
+        CircuitBreaker breaker = new CircuitBreaker("user", 1000, 50, 2, 0, 1, null);
+        CircuitBreaker.Permit closed = breaker.tryAcquire();
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, probe.getState());
+        assertNull(breaker.tryAcquire());
+        // admitted while closed, not a probe
+        breaker.onSuccess(closed, System.nanoTime());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(probe, System.nanoTime());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private void getFailing() {
+        try {
+            cache.get("id");
+            fail();
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    private static class FailingCache extends ConcurrentMapCache {
+
+        private volatile boolean failing;
+
+        private FailingCache() {
+            super("user");
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            if (failing) {
+                throw new IllegalStateException("redis is down");
+            }
+            return super.get(key);
+        }
+    }
+}
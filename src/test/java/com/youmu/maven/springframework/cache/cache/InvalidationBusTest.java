@@ -0,0 +1,115 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+public class InvalidationBusTest {
+
+    private InMemoryTransport transport;
+
+    private ConcurrentMapCache remote;
+
+    private LocalExpireableCache localA;
+
+    private LocalExpireableCache localB;
+
+    private InvalidationBus busA;
+
+    private InvalidationBus busB;
+
+    @Before
+    public void setUp() {
+        transport = new InMemoryTransport();
+        remote = new ConcurrentMapCache("user");
+        localA = new LocalExpireableCache("user", 16, Long.MAX_VALUE, null, 0, true);
+        localB = new LocalExpireableCache("user", 16, Long.MAX_VALUE, null, 0, true);
+        busA = new InvalidationBus(transport);
+        busB = new InvalidationBus(transport);
+        busA.register(localA);
+        busB.register(localB);
+    }
+
+    @Test
+    public void evictionReachesOtherNodes() {
+        TwoLevelExpireableCache nodeA = new TwoLevelExpireableCache(localA, remote, 0, busA);
+        TwoLevelExpireableCache nodeB = new TwoLevelExpireableCache(localB, remote, 0, busB);
+        remote.put(1, "one");
+        remote.put(2, "two");
+        nodeB.get(1);
+        nodeB.get(2);
+        nodeA.evict(1);
+        nodeA.evict(2);
+        busA.flush();
+        assertEquals(1, transport.published.size());
+        assertNull(localB.get(1));
+        assertNull(localB.get(2));
+    }
+
+    @Test
+    public void clearReachesOtherNodes() {
+        TwoLevelExpireableCache nodeA = new TwoLevelExpireableCache(localA, remote, 0, busA);
+        localB.put(1, "one");
+        nodeA.evict(1);
+        nodeA.clear();
+        busA.flush();
+        assertEquals(1, transport.published.size());
+        assertNull(localB.get(1));
+    }
+
+    @Test
+    public void writeBehindInvalidatesOnceApplied() throws InterruptedException {
+        WriteBehindExpireableCache writeBehind = new WriteBehindExpireableCache(remote, 100, 100,
+                60000);
+        writeBehind.setInvalidationBus(busA);
+        TwoLevelExpireableCache nodeA = new TwoLevelExpireableCache(localA, writeBehind, 0);
+        localB.put(1, "old");
+        try {
+            nodeA.put(1, "new");
+            busA.flush();
+            assertEquals(0, transport.published.size());
+            assertEquals("old", localB.get(1).get());
+            writeBehind.flush();
+            busA.flush();
+            assertNull(localB.get(1));
+            assertEquals("new", remote.get(1).get());
+        } finally {
+            writeBehind.destroy();
+        }
+    }
+
+    @Test
+    public void ownMessagesAreIgnored() {
+        TwoLevelExpireableCache nodeA = new TwoLevelExpireableCache(localA, remote, 0, busA);
+        nodeA.put(1, "one");
+        busA.flush();
+        assertNotNull(localA.get(1));
+    }
+
+    private static class InMemoryTransport implements InvalidationTransport {
+
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+        private final List<byte[]> published = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void publish(byte[] message) {
+            published.add(message);
+            for (Listener listener : listeners) {
+                listener.onMessage(message);
+            }
+        }
+
+        @Override
+        public void subscribe(Listener listener) {
+            listeners.add(listener);
+        }
+    }
+}
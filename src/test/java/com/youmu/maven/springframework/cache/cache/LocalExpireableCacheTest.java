@@ -0,0 +1,71 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+public class LocalExpireableCacheTest {
+
+    @Test
+    public void boundedBySize() {
+        LocalExpireableCache cache = new LocalExpireableCache("user", 64, Long.MAX_VALUE, null, 0,
+                true);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.estimatedSize() <= 64);
+    }
+
+    @Test
+    public void defaultFactoryIsNotCappedByWeight() {
+        LocalExpireableCache cache = (LocalExpireableCache) new LocalExpireableCacheFactory()
+                .createCache("user");
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        // an unbounded weight used to round to one entry per segment
+        assertTrue(cache.estimatedSize() > 16);
+        assertEquals(1000, cache.estimatedSize());
+    }
+
+    @Test
+    public void hotKeySurvivesScan() {
+        LocalExpireableCache cache = new LocalExpireableCache("user", 16, Long.MAX_VALUE, null, 0,
+                true);
+        cache.put("hot", "value");
+        for (int i = 0; i < 10; i++) {
+            cache.get("hot");
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertNotNull(cache.get("hot"));
+    }
+
+    @Test
+    public void lifetimeIsCapped() throws InterruptedException {
+        LocalExpireableCache cache = new LocalExpireableCache("user", 16, Long.MAX_VALUE, null,
+                20, true);
+        cache.put("id", "youmu", 60000);
+        Thread.sleep(50);
+        assertNull(cache.get("id"));
+    }
+
+    @Test
+    public void nearCacheServesLocally() {
+        LocalExpireableCache local = new LocalExpireableCache("user", 16, Long.MAX_VALUE, null, 0,
+                true);
+        ConcurrentMapCache remote = new ConcurrentMapCache("user");
+        remote.put("id", "youmu");
+        TwoLevelExpireableCache cache = new TwoLevelExpireableCache(local, remote, 1000);
+        assertEquals("youmu", cache.get("id").get());
+        remote.evict("id");
+        assertEquals("youmu", cache.get("id").get());
+        cache.evict("id");
+        assertNull(cache.get("id"));
+    }
+}
@@ -0,0 +1,91 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.youmu.maven.springframework.cache.serializer.CompactRedisSerializer;
+
+public class MappedFileExpireableCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entriesSurviveReopening() throws Exception {
+        File directory = folder.newFolder("user");
+        MappedFileExpireableCache cache = open(directory, 1024 * 1024);
+        cache.put("id", "youmu");
+        cache.put("evicted", "value");
+        cache.evict("evicted");
+        cache.put("short", "value", 20);
+        cache.put("id", "reimu");
+        cache.close();
+        Thread.sleep(50);
+
+        MappedFileExpireableCache reopened = open(directory, 1024 * 1024);
+        assertEquals("reimu", reopened.get("id").get());
+        assertNull(reopened.get("evicted"));
+        assertNull(reopened.get("short"));
+        assertEquals(1, reopened.estimatedSize());
+    }
+
+    @Test
+    public void compactedEntriesSurviveReopening() throws Exception {
+        File directory = folder.newFolder("user");
+        MappedFileExpireableCache cache = open(directory, 64 * 1024);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, "value-" + i);
+        }
+        long size = cache.estimatedSize();
+        cache.close();
+        MappedFileExpireableCache reopened = open(directory, 64 * 1024);
+        assertEquals("value-9999", reopened.get(9999).get());
+        assertEquals(size, reopened.estimatedSize());
+    }
+
+    @Test
+    public void otherCapacityStartsEmpty() throws Exception {
+        File directory = folder.newFolder("user");
+        MappedFileExpireableCache cache = open(directory, 1024 * 1024);
+        cache.put("id", "youmu");
+        cache.close();
+        assertNull(open(directory, 2 * 1024 * 1024).get("id"));
+    }
+
+    @Test
+    public void directoryInUseIsRejected() throws Exception {
+        File directory = folder.newFolder("user");
+        MappedFileExpireableCache cache = open(directory, 1024 * 1024);
+        try {
+            open(directory, 1024 * 1024);
+            fail("opened twice");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("in use"));
+        }
+        cache.close();
+        open(directory, 1024 * 1024).close();
+    }
+
+    @Test
+    public void distinctNamesGetDistinctDirectories() {
+        assertNotEquals(MappedFileCacheFactory.directoryName("user:1"),
+                MappedFileCacheFactory.directoryName("user_1"));
+        assertNotEquals(MappedFileCacheFactory.directoryName("a/b"),
+                MappedFileCacheFactory.directoryName("a_b"));
+        assertEquals("%2E%2E", MappedFileCacheFactory.directoryName(".."));
+    }
+
+    private static MappedFileExpireableCache open(File directory, long capacity) {
+        return new MappedFileExpireableCache("user", directory, capacity, 0,
+                new CompactRedisSerializer(), true);
+    }
+}
@@ -0,0 +1,55 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.youmu.maven.springframework.cache.key.EncodedKey;
+import com.youmu.maven.springframework.cache.serializer.CompactRedisSerializer;
+
+public class OffHeapExpireableCacheTest {
+
+    @Test
+    public void valuesRoundTrip() {
+        OffHeapExpireableCache cache = new OffHeapExpireableCache("user", 1024 * 1024, 0,
+                new CompactRedisSerializer(), true);
+        cache.put("id", "youmu");
+        cache.put(1L, null);
+        cache.put(new EncodedKey(new byte[] { 1, 2 }), 42);
+        assertEquals("youmu", cache.get("id").get());
+        assertNull(cache.get(1L).get());
+        assertEquals(42, cache.get(new EncodedKey(new byte[] { 1, 2 })).get());
+        assertEquals("youmu", cache.putIfAbsent("id", "other").get());
+        cache.put("id", "other");
+        assertEquals("other", cache.get("id").get());
+        cache.evict("id");
+        assertNull(cache.get("id"));
+        cache.clear();
+        assertEquals(0, cache.estimatedSize());
+    }
+
+    @Test
+    public void lifetimeIsCapped() throws InterruptedException {
+        OffHeapExpireableCache cache = new OffHeapExpireableCache("user", 1024 * 1024, 20,
+                new CompactRedisSerializer(), true);
+        cache.put("id", "youmu", 60000);
+        Thread.sleep(50);
+        assertNull(cache.get("id"));
+    }
+
+    @Test
+    public void fullSegmentsDropTheOldestEntries() {
+        OffHeapExpireableCache cache = new OffHeapExpireableCache("user", 64 * 1024, 0,
+                new CompactRedisSerializer(), true);
+        for (int i = 0; i < 100000; i++) {
+            cache.put(i, "value-" + i);
+        }
+        assertTrue(cache.estimatedSize() < 100000);
+        assertNotNull(cache.get(99999));
+        assertEquals("value-99999", cache.get(99999).get());
+        assertNull(cache.get(0));
+    }
+}
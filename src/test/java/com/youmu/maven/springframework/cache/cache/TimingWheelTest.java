@@ -0,0 +1,90 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    @Test
+    public void timersFireOnceDue() {
+        TimingWheel wheel = new TimingWheel();
+        long now = System.currentTimeMillis();
+        AtomicInteger fired = new AtomicInteger();
+        for (long delay : new long[] { 10, 100, 5000, 600000, 20000000 }) {
+            wheel.schedule(new CountingTimer(now + delay, fired));
+        }
+        wheel.advance(now + 50);
+        assertEquals(1, fired.get());
+        wheel.advance(now + 6000);
+        assertEquals(3, fired.get());
+        wheel.advance(now + 700000);
+        assertEquals(4, fired.get());
+        wheel.advance(now + 30000000);
+        assertEquals(5, fired.get());
+    }
+
+    @Test
+    public void cancelledTimersDoNotFire() {
+        TimingWheel wheel = new TimingWheel();
+        long now = System.currentTimeMillis();
+        AtomicInteger fired = new AtomicInteger();
+        CountingTimer timer = new CountingTimer(now + 100, fired);
+        wheel.schedule(timer);
+        wheel.cancel(timer);
+        wheel.advance(now + 200);
+        assertEquals(0, fired.get());
+    }
+
+    @Test
+    public void expiredEntriesAreRemovedWithoutReads() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel();
+        LocalExpireableCache cache = new LocalExpireableCache("user", 1000, 1000, null,
+                0, true, wheel);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i, 20);
+        }
+        cache.put("forever", "youmu");
+        assertEquals(101, cache.estimatedSize());
+        Thread.sleep(50);
+        wheel.advance(System.currentTimeMillis());
+        assertEquals(1, cache.estimatedSize());
+        assertEquals("youmu", cache.get("forever").get());
+    }
+
+    @Test
+    public void maintenanceThreadAdvances() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel();
+        AtomicInteger fired = new AtomicInteger();
+        wheel.schedule(new CountingTimer(System.currentTimeMillis() + 20, fired));
+        wheel.startMaintenance(10);
+        try {
+            for (int i = 0; i < 100 && fired.get() == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(fired.get() == 1);
+        } finally {
+            wheel.stopMaintenance();
+        }
+        assertFalse(new CountingTimer(0, fired).isExpired(Long.MAX_VALUE));
+    }
+
+    private static final class CountingTimer extends TimingWheel.Timer {
+
+        private final AtomicInteger fired;
+
+        private CountingTimer(long deadline, AtomicInteger fired) {
+            super(deadline);
+            this.fired = fired;
+        }
+
+        @Override
+        protected void expire() {
+            fired.incrementAndGet();
+        }
+    }
+}
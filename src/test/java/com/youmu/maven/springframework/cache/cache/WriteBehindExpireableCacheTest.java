@@ -0,0 +1,103 @@
+package com.youmu.maven.springframework.cache.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.interceptor.SimpleCacheErrorHandler;
+
+import com.youmu.maven.springframework.cache.metrics.MetricsCacheErrorHandler;
+import com.youmu.maven.springframework.cache.metrics.SimpleCacheMetrics;
+
+public class WriteBehindExpireableCacheTest {
+
+    private final ConcurrentMapCache target = new ConcurrentMapCache("user");
+
+    private WriteBehindExpireableCache cache;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        cache.destroy();
+    }
+
+    @Test
+    public void readsOwnWritesBeforeFlush() {
+        cache = new WriteBehindExpireableCache(target, 100, 100, 60000);
+        cache.put("id", "youmu");
+        assertEquals("youmu", cache.get("id").get());
+        assertNull(target.get("id"));
+        cache.evict("id");
+        assertNull(cache.get("id"));
+        cache.flush();
+        assertNull(target.get("id"));
+        cache.put("id", "yuyuko");
+        cache.flush();
+        assertEquals("yuyuko", target.get("id").get());
+    }
+
+    @Test
+    public void flushedInBackground() throws InterruptedException {
+        cache = new WriteBehindExpireableCache(target, 100, 100, 5);
+        cache.put("id", "youmu");
+        for (int i = 0; i < 100 && null == target.get("id"); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("youmu", target.get("id").get());
+        assertEquals(0, cache.getQueueSize());
+    }
+
+    @Test
+    public void fullQueueWritesThrough() {
+        cache = new WriteBehindExpireableCache(target, 1, 100, 60000);
+        cache.put("1", "youmu");
+        cache.put("2", "yuyuko");
+        assertNull(target.get("1"));
+        assertEquals("yuyuko", target.get("2").get());
+    }
+
+    @Test
+    public void failedEvictionsAreRetried() {
+        final AtomicInteger failures = new AtomicInteger(2);
+        ConcurrentMapCache flaky = new ConcurrentMapCache("user") {
+            @Override
+            public void evict(Object key) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("redis is down");
+                }
+                super.evict(key);
+            }
+        };
+        flaky.put("id", "youmu");
+        SimpleCacheMetrics metrics = new SimpleCacheMetrics();
+        cache = new WriteBehindExpireableCache(flaky, 100, 100, 60000);
+        cache.setErrorHandler(new MetricsCacheErrorHandler(new SimpleCacheErrorHandler(), metrics));
+        cache.evict("id");
+        cache.flush();
+        // the batch and the single eviction failed, the queued one went through
+        assertNull(flaky.get("id"));
+        assertNull(cache.get("id"));
+        assertEquals(1, metrics.getCacheStats("user").getErrors());
+    }
+
+    @Test
+    public void writesGivenUpAfterAttempts() {
+        ConcurrentMapCache down = new ConcurrentMapCache("user") {
+            @Override
+            public void put(Object key, Object value) {
+                throw new IllegalStateException("redis is down");
+            }
+        };
+        SimpleCacheMetrics metrics = new SimpleCacheMetrics();
+        cache = new WriteBehindExpireableCache(down, 100, 100, 60000);
+        cache.setErrorHandler(new MetricsCacheErrorHandler(new SimpleCacheErrorHandler(), metrics));
+        cache.put("id", "youmu");
+        cache.flush();
+        assertEquals(0, cache.getQueueSize());
+        assertNull(cache.get("id"));
+        assertEquals(3, metrics.getCacheStats("user").getErrors());
+    }
+}
@@ -0,0 +1,100 @@
+package com.youmu.maven.springframework.cache.expression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+public class CacheExpressionCompilerTest {
+
+    private final CacheExpressionCompiler compiler = new CacheExpressionCompiler();
+
+    private final Method method = findMethod();
+
+    @Test
+    public void parameter() {
+        User user = new User(7L, null);
+        assertSame(user, compile("#user").getValue(new Object[] { user, "x" }, null));
+        assertEquals("x", compile("#p1").getValue(new Object[] { user, "x" }, null));
+        assertEquals("x", compile("#a1").getValue(new Object[] { user, "x" }, null));
+    }
+
+    @Test
+    public void propertyChain() {
+        User user = new User(7L, new User(8L, null));
+        assertEquals(8L, compile("#user.parent.id").getValue(new Object[] { user, "x" }, null));
+        assertNull(compile("#user.parent?.parent?.id").getValue(new Object[] { user, "x" },
+                null));
+        // SpEL reports the null
+        assertSame(CompiledCacheExpression.UNSUPPORTED, compile("#user.parent.parent.id")
+                .getValue(new Object[] { user, "x" }, null));
+    }
+
+    @Test
+    public void concatenation() {
+        User user = new User(7L, null);
+        assertEquals("user:7:x:null", compile("'user:' + #user.id + ':' + #tag + ':' + #result")
+                .getValue(new Object[] { user, "x" }, null));
+    }
+
+    @Test
+    public void nullCheck() {
+        CompiledCacheExpression unless = compile("#result == null");
+        assertTrue(unless.isResultUsed());
+        assertEquals(true, unless.getValue(new Object[] { null, null }, null));
+        assertEquals(false, compile("#result == null").getValue(new Object[] { null, null }, 1));
+        assertEquals(true, compile("#tag != null").getValue(new Object[] { null, "x" }, null));
+    }
+
+    @Test
+    public void otherShapesLeftToSpel() {
+        assertNull(compile("#user.id + 1"));
+        assertNull(compile("#root.args[0]"));
+        assertNull(compile("#tag.length() > 2"));
+        assertNull(compile("#unknown"));
+        assertFalse(compiler.analyze("T(java.lang.Math).random()"));
+        assertTrue(compiler.analyze("#anything"));
+    }
+
+    private CompiledCacheExpression compile(String expression) {
+        return compiler.compile(expression, method, CacheExpressionCompilerTest.class);
+    }
+
+    private static Method findMethod() {
+        try {
+            return CacheExpressionCompilerTest.class.getDeclaredMethod("find", User.class,
+                    String.class);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    String find(User user, String tag) {
+        return tag;
+    }
+
+    public static class User {
+
+        private final Long id;
+
+        private final User parent;
+
+        public User(Long id, User parent) {
+            this.id = id;
+            this.parent = parent;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public User getParent() {
+            return parent;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.youmu.maven.springframework.cache.hotkey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.youmu.maven.springframework.cache.cache.InvalidationBus;
+import com.youmu.maven.springframework.cache.cache.InvalidationTransport;
+
+public class HotKeyDetectorTest {
+
+    private HotKeyDetector detector;
+
+    @Before
+    public void setUp() {
+        detector = new HotKeyDetector();
+        detector.setCapacity(4);
+        detector.setSampleInterval(1);
+        detector.setThreshold(10);
+        detector.setWindow(60000);
+    }
+
+    @Test
+    public void topKeysSurviveChurn() {
+        for (int i = 0; i < 1000; i++) {
+            detector.record("user", i % 3 == 0 ? "hot" : "cold" + i);
+        }
+        List<HotKey> top = detector.getTopKeys(1);
+        assertEquals(1, top.size());
+        assertEquals("hot", top.get(0).getKey());
+        assertEquals("user", top.get(0).getCacheName());
+        assertTrue(top.get(0).getCount() - top.get(0).getError() <= 334);
+        assertTrue(top.get(0).getCount() >= 334);
+        assertEquals(4, detector.getTopKeys(10).size());
+    }
+
+    @Test
+    public void promotedUntilEvicted() {
+        for (int i = 0; i < 9; i++) {
+            assertFalse(detector.record("user", 1L));
+        }
+        assertTrue(detector.record("user", 1L));
+        detector.promote("user", 1L, "user1", 0);
+        assertFalse(detector.record("user", 1L));
+        assertEquals("user1", detector.get("user", 1L).get());
+        assertNull(detector.get("order", 1L));
+        assertTrue(detector.getTopKeys(1).get(0).isReplicated());
+        detector.evict("user", 1L);
+        assertNull(detector.get("user", 1L));
+        detector.promote("user", 1L, "user1", 0);
+        detector.clear("user");
+        assertNull(detector.get("user", 1L));
+    }
+
+    @Test
+    public void replicaBoundedByExpire() throws Exception {
+        detector.promote("user", 1L, "user1", System.currentTimeMillis() + 20);
+        assertEquals("user1", detector.get("user", 1L).get());
+        Thread.sleep(40);
+        assertNull(detector.get("user", 1L));
+        detector.promote("user", 2L, "user2", System.currentTimeMillis() - 1);
+        assertNull(detector.get("user", 2L));
+    }
+
+    @Test
+    public void cacheNamesCountedApart() {
+        for (int i = 0; i < 100; i++) {
+            detector.record("user", "cold" + i);
+        }
+        for (int i = 0; i < 9; i++) {
+            assertFalse(detector.record("order", 1L));
+        }
+        assertTrue(detector.record("order", 1L));
+        List<HotKey> top = detector.getTopKeys(10);
+        assertEquals(5, top.size());
+        for (HotKey hotKey : top) {
+            if ("order".equals(hotKey.getCacheName())) {
+                // never took over the count of a key of another cache
+                assertEquals(10, hotKey.getCount());
+                assertEquals(0, hotKey.getError());
+            }
+        }
+    }
+
+    @Test
+    public void countsHalvedEveryWindow() throws Exception {
+        detector.setWindow(20);
+        for (int i = 0; i < 8; i++) {
+            detector.record("user", "warm");
+        }
+        detector.record("user", "cold");
+        Thread.sleep(40);
+        detector.record("user", "other");
+        List<HotKey> top = detector.getTopKeys(10);
+        assertEquals(2, top.size());
+        assertEquals("warm", top.get(0).getKey());
+        assertEquals(4, top.get(0).getCount());
+        assertEquals("other", top.get(1).getKey());
+    }
+
+    @Test
+    public void replicasDroppedByOtherNodes() {
+        final List<InvalidationTransport.Listener> listeners = new CopyOnWriteArrayList<>();
+        InvalidationTransport transport = new InvalidationTransport() {
+            @Override
+            public void publish(byte[] message) {
+                for (Listener listener : listeners) {
+                    listener.onMessage(message);
+                }
+            }
+
+            @Override
+            public void subscribe(Listener listener) {
+                listeners.add(listener);
+            }
+        };
+        InvalidationBus bus = new InvalidationBus(transport);
+        InvalidationBus otherBus = new InvalidationBus(transport);
+        HotKeyDetector other = new HotKeyDetector();
+        detector.setInvalidationBus(bus);
+        other.setInvalidationBus(otherBus);
+        detector.promote("user", 1L, "user1", 0);
+        other.promote("user", 1L, "user1", 0);
+        other.promote("user", 2L, "user2", 0);
+        detector.evict("user", 1L);
+        bus.flush();
+        assertNull(other.get("user", 1L));
+        assertEquals("user2", other.get("user", 2L).get());
+        detector.clear("user");
+        bus.flush();
+        assertNull(other.get("user", 2L));
+        bus.destroy();
+        otherBus.destroy();
+    }
+}
@@ -0,0 +1,486 @@
+package com.youmu.maven.springframework.cache.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.annotation.AnnotationCacheOperationSource;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.interceptor.CacheOperation;
+import org.springframework.cache.interceptor.CacheOperationInvocationContext;
+import org.springframework.cache.interceptor.CacheResolver;
+import org.springframework.cache.interceptor.SimpleCacheResolver;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import com.youmu.maven.springframework.cache.annotation.ExpireableBatchCacheable;
+import com.youmu.maven.springframework.cache.annotation.ExpireableCachePut;
+import com.youmu.maven.springframework.cache.annotation.ExpireableCacheable;
+import com.youmu.maven.springframework.cache.hotkey.HotKeyDetector;
+import com.youmu.maven.springframework.cache.key.CompactKeyEncoder;
+import com.youmu.maven.springframework.cache.metrics.SimpleCacheMetrics;
+import com.youmu.maven.springframework.cache.parser.ExpireableCacheAnnotationParser;
+
+public class CustomableCacheInterceptorTest {
+
+    private CustomableCacheInterceptor interceptor;
+
+    private DefaultUserService target;
+
+    private UserService userService;
+
+    private final AtomicInteger operationLookups = new AtomicInteger();
+
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+
+    @Before
+    public void setUp() {
+        interceptor = new CustomableCacheInterceptor();
+        interceptor.setCacheOperationSources(
+                new AnnotationCacheOperationSource(new ExpireableCacheAnnotationParser()) {
+                    @Override
+                    public Collection<CacheOperation> getCacheOperations(Method method,
+                            Class<?> targetClass) {
+                        operationLookups.incrementAndGet();
+                        return super.getCacheOperations(method, targetClass);
+                    }
+                });
+        interceptor.setCacheManager(cacheManager);
+        interceptor.afterPropertiesSet();
+        interceptor.afterSingletonsInstantiated();
+        target = new DefaultUserService();
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.addAdvice(interceptor);
+        userService = (UserService) proxyFactory.getProxy();
+    }
+
+    @Test
+    public void cacheableHit() {
+        assertEquals("user1", userService.find(1L));
+        assertEquals("user1", userService.find(1L));
+        assertEquals(1, target.invocations.get());
+    }
+
+    @Test
+    public void compiledKeyAndUnless() {
+        assertEquals("user1", userService.findByKey(1L));
+        assertEquals("user1", cacheManager.getCache("user").get("user:1").get());
+        assertEquals(null, userService.findByKey(-1L));
+        assertEquals(null, cacheManager.getCache("user").get("user:-1"));
+    }
+
+    @Test
+    public void keysAreEncoded() {
+        interceptor.setKeyEncoder(new CompactKeyEncoder());
+        assertEquals("user1", userService.findByKey(1L));
+        assertEquals("user1",
+                cacheManager.getCache("user").get(new CompactKeyEncoder().encode("user:1")).get());
+        assertEquals("user1", userService.findByKey(1L));
+    }
+
+    @Test
+    public void metricsRecorded() {
+        SimpleCacheMetrics metrics = new SimpleCacheMetrics();
+        interceptor.setMetrics(metrics);
+        userService.find(1L);
+        userService.find(1L);
+        userService.findAll(Arrays.asList(1L, 2L));
+        userService.save(1L);
+        SimpleCacheMetrics.Stats user = metrics.getCacheStats("user");
+        assertEquals(2, user.getHits());
+        assertEquals(2, user.getMisses());
+        assertEquals(3, user.getPuts());
+        assertEquals(2, user.getLoads().getCount());
+        assertEquals(1, metrics.getCacheStats("users").getEvictions());
+    }
+
+    @Test
+    public void failedSyncLoadRecordedAsMiss() {
+        SimpleCacheMetrics metrics = new SimpleCacheMetrics();
+        interceptor.setMetrics(metrics);
+        target.failing = true;
+        try {
+            userService.findSync(1L);
+        } catch (IllegalStateException ex) {
+            // the loader failed
+        }
+        target.failing = false;
+        userService.findSync(1L);
+        userService.findSync(1L);
+        SimpleCacheMetrics.Stats user = metrics.getCacheStats("user");
+        assertEquals(1, user.getHits());
+        assertEquals(2, user.getMisses());
+        assertEquals(1, user.getPuts());
+        assertTrue(interceptor.getErrorHandler() == interceptor.getErrorHandler());
+    }
+
+    @Test
+    public void hotKeysServedFromReplica() {
+        HotKeyDetector detector = new HotKeyDetector();
+        detector.setSampleInterval(1);
+        detector.setThreshold(3);
+        detector.setReplicaTtl(60000);
+        interceptor.setHotKeyDetector(detector);
+        for (int i = 0; i < 4; i++) {
+            userService.find(1L);
+        }
+        cacheManager.getCache("user").put(1L, "changed");
+        assertEquals("user1", userService.find(1L));
+        assertEquals(1L, detector.getTopKeys(1).get(0).getKey());
+        userService.save(1L);
+        assertEquals("user1", cacheManager.getCache("user").get(1L).get());
+        cacheManager.getCache("user").put(1L, "changed");
+        assertEquals("changed", userService.find(1L));
+    }
+
+    @Test
+    public void hotKeyReplicasRefreshedAfterWrite() throws Exception {
+        HotKeyDetector detector = new HotKeyDetector();
+        detector.setSampleInterval(1);
+        detector.setThreshold(3);
+        detector.setReplicaTtl(60000);
+        interceptor.setHotKeyDetector(detector);
+        interceptor.setRefreshExecutor(new SyncTaskExecutor());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("user1#1", userService.findRefreshing(1L));
+        }
+        assertTrue(detector.getTopKeys(1).get(0).isReplicated());
+        Thread.sleep(60);
+        // the replica is due for a refresh like the cached entry
+        assertEquals("user1#1", userService.findRefreshing(1L));
+        assertEquals("user1#2", userService.findRefreshing(1L));
+    }
+
+    @Test
+    public void futureValueCachedOnCompletion() throws Exception {
+        interceptor.setRefreshExecutor(new SyncTaskExecutor());
+        CompletableFuture<String> first = userService.findAsync(1L);
+        CompletableFuture<String> second = userService.findAsync(1L);
+        assertFalse(first.isDone());
+        assertNull(cacheManager.getCache("user").get(1L));
+        target.pending.complete("user1");
+        assertEquals("user1", first.get());
+        assertEquals("user1", second.get());
+        assertEquals(1, target.invocations.get());
+        assertEquals("user1", cacheManager.getCache("user").get(1L).get());
+        CompletableFuture<String> hit = userService.findAsync(1L);
+        assertTrue(hit.isDone());
+        assertEquals("user1", hit.get());
+        assertEquals(1, target.invocations.get());
+    }
+
+    @Test
+    public void failedPutDoesNotFailFuture() throws Exception {
+        interceptor.setRefreshExecutor(new SyncTaskExecutor());
+        interceptor.setCacheResolver(new CacheResolver() {
+            @Override
+            public Collection<? extends Cache> resolveCaches(
+                    CacheOperationInvocationContext<?> context) {
+                return Arrays.asList(new ConcurrentMapCache("user") {
+                    @Override
+                    public void put(Object key, Object value) {
+                        throw new IllegalStateException("redis is down");
+                    }
+                });
+            }
+        });
+        CompletableFuture<String> future = userService.findAsync(1L);
+        target.pending.complete("user1");
+        assertEquals("user1", future.get());
+    }
+
+    @Test
+    public void failedFutureNotCached() {
+        CompletableFuture<String> failed = userService.findAsync(1L);
+        target.pending.completeExceptionally(new IllegalStateException("user service is down"));
+        assertTrue(failed.isCompletedExceptionally());
+        assertNull(cacheManager.getCache("user").get(1L));
+        assertFalse(userService.findAsync(1L).isDone());
+        assertEquals(2, target.invocations.get());
+    }
+
+    @Test
+    public void operationsLookedUpOncePerMethod() {
+        for (int i = 0; i < 10; i++) {
+            userService.find(1L);
+        }
+        assertEquals(1, operationLookups.get());
+    }
+
+    @Test
+    public void cachesResolvedOncePerOperation() {
+        final AtomicInteger resolutions = new AtomicInteger();
+        final SimpleCacheResolver cacheResolver = new SimpleCacheResolver(
+                new ConcurrentMapCacheManager());
+        interceptor.setCacheResolver(new CacheResolver() {
+            @Override
+            public Collection<? extends Cache> resolveCaches(
+                    CacheOperationInvocationContext<?> context) {
+                resolutions.incrementAndGet();
+                return cacheResolver.resolveCaches(context);
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            userService.find(1L);
+        }
+        assertEquals(100, resolutions.get());
+        resolutions.set(0);
+        for (int i = 0; i < 100; i++) {
+            userService.save(1L);
+        }
+        // one @ExpireableCachePut and one @CacheEvict
+        assertEquals(200, resolutions.get());
+    }
+
+    @Test
+    public void concurrentMissesInvokeOnce() throws Exception {
+        interceptor.setSingleFlight(true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return userService.findSlowly(1L);
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals("user1", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, target.invocations.get());
+    }
+
+    @Test
+    public void refreshAheadOfExpire() throws Exception {
+        assertEquals("user1", userService.findEarly(1L));
+        // the computation is long compared to the expire, so XFetch refreshes
+        assertEquals("user1", userService.findEarly(1L));
+        assertEquals(2, target.invocations.get());
+    }
+
+    @Test
+    public void refreshAfterWriteServesStale() throws Exception {
+        interceptor.setRefreshExecutor(new SyncTaskExecutor());
+        assertEquals("user1#1", userService.findRefreshing(1L));
+        Thread.sleep(60);
+        // served stale, refreshed in the background
+        assertEquals("user1#1", userService.findRefreshing(1L));
+        assertEquals("user1#2", userService.findRefreshing(1L));
+        assertEquals(2, target.invocations.get());
+    }
+
+    @Test
+    public void staleIfError() throws Exception {
+        assertEquals("user1#1", userService.findOrStale(1L));
+        Thread.sleep(60);
+        target.failing = true;
+        assertEquals("user1#1", userService.findOrStale(1L));
+        target.failing = false;
+        assertEquals("user1#3", userService.findOrStale(1L));
+        assertEquals(3, target.invocations.get());
+    }
+
+    @Test
+    public void batchInvokesMissingIdsOnly() {
+        assertEquals(Arrays.asList("user1", "user2"), userService.findAll(Arrays.asList(1L, 2L)));
+        assertEquals(Arrays.asList("user3", "user1", "user2"),
+                userService.findAll(Arrays.asList(3L, 1L, 2L)));
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(3L)), target.batches);
+        assertEquals("user3", cacheManager.getCache("user").get(3L).get());
+    }
+
+    @Test
+    public void batchReadsAndWritesEveryCache() {
+        cacheManager.getCache("users").put(1L, "user1");
+        assertEquals(Arrays.asList("user1", "user2"),
+                userService.findAllTwice(Arrays.asList(1L, 2L)));
+        assertEquals(Arrays.asList(Arrays.asList(2L)), target.batches);
+        assertEquals("user2", cacheManager.getCache("user").get(2L).get());
+        assertEquals("user2", cacheManager.getCache("users").get(2L).get());
+    }
+
+    @Test
+    public void batchMapResult() {
+        userService.findAll(Arrays.asList(1L));
+        Map<Long, String> users = userService.findAllById(
+                new LinkedHashSet<>(Arrays.asList(2L, 1L, -1L)));
+        assertEquals(2, users.size());
+        assertEquals("user2", users.get(2L));
+        assertEquals("user1", users.get(1L));
+        assertEquals(Arrays.asList(Arrays.asList(1L), Arrays.asList(2L, -1L)), target.batches);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noStaleBeyondWindow() throws Exception {
+        target.failing = true;
+        userService.findOrStale(1L);
+    }
+
+    public interface UserService {
+
+        String find(Long id);
+
+        String findEarly(Long id) throws InterruptedException;
+
+        String findRefreshing(Long id);
+
+        String findOrStale(Long id);
+
+        String findSync(Long id);
+
+        String save(Long id);
+
+        String findByKey(Long id);
+
+        String findSlowly(Long id) throws InterruptedException;
+
+        List<String> findAll(List<Long> ids);
+
+        Map<Long, String> findAllById(Set<Long> ids);
+
+        List<String> findAllTwice(List<Long> ids);
+
+        CompletableFuture<String> findAsync(Long id);
+    }
+
+    public static class DefaultUserService implements UserService {
+
+        final AtomicInteger invocations = new AtomicInteger();
+
+        volatile boolean failing;
+
+        volatile CompletableFuture<String> pending;
+
+        final List<List<Long>> batches = new ArrayList<>();
+
+        @Override
+        @Cacheable("user")
+        public String find(Long id) {
+            invocations.incrementAndGet();
+            return "user" + id;
+        }
+
+        @Override
+        @ExpireableCacheable(value = "user", expire = 1, beta = 1000000)
+        public String findEarly(Long id) throws InterruptedException {
+            invocations.incrementAndGet();
+            Thread.sleep(10);
+            return "user" + id;
+        }
+
+        @Override
+        @ExpireableCacheable(value = "user", refreshAfter = 50, timeUnit = TimeUnit.MILLISECONDS)
+        public String findRefreshing(Long id) {
+            return "user" + id + "#" + invocations.incrementAndGet();
+        }
+
+        @Override
+        @ExpireableCacheable(value = "user", expire = 50, staleIfError = 1000,
+                timeUnit = TimeUnit.MILLISECONDS)
+        public String findOrStale(Long id) {
+            int invocation = invocations.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("user service is down");
+            }
+            return "user" + id + "#" + invocation;
+        }
+
+        @Override
+        @Cacheable(value = "user", sync = true)
+        public String findSync(Long id) {
+            invocations.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("user service is down");
+            }
+            return "user" + id;
+        }
+
+        @Override
+        @ExpireableCachePut(value = "user", expire = 10)
+        @CacheEvict("users")
+        public String save(Long id) {
+            return "user" + id;
+        }
+
+        @Override
+        @Cacheable(value = "user", key = "'user:' + #id", unless = "#result == null")
+        public String findByKey(Long id) {
+            return id > 0 ? "user" + id : null;
+        }
+
+        @Override
+        @Cacheable(value = "user", unless = "#result == null")
+        public String findSlowly(Long id) throws InterruptedException {
+            invocations.incrementAndGet();
+            Thread.sleep(200);
+            return "user" + id;
+        }
+
+        @Override
+        @ExpireableBatchCacheable("user")
+        public List<String> findAll(List<Long> ids) {
+            batches.add(new ArrayList<>(ids));
+            List<String> users = new ArrayList<>();
+            for (Long id : ids) {
+                users.add("user" + id);
+            }
+            return users;
+        }
+
+        @Override
+        @ExpireableBatchCacheable({ "user", "users" })
+        public List<String> findAllTwice(List<Long> ids) {
+            return findAll(ids);
+        }
+
+        @Override
+        @ExpireableBatchCacheable("user")
+        public Map<Long, String> findAllById(Set<Long> ids) {
+            batches.add(new ArrayList<>(ids));
+            Map<Long, String> users = new HashMap<>();
+            for (Long id : ids) {
+                if (id > 0) {
+                    users.put(id, "user" + id);
+                }
+            }
+            return users;
+        }
+
+        @Override
+        @Cacheable("user")
+        public CompletableFuture<String> findAsync(Long id) {
+            invocations.incrementAndGet();
+            pending = new CompletableFuture<>();
+            return pending;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.youmu.maven.springframework.cache.key;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.springframework.cache.interceptor.SimpleKey;
+
+public class CompactKeyEncoderTest {
+
+    private final CompactKeyEncoder encoder = new CompactKeyEncoder();
+
+    @Test
+    public void simpleKeyIsCompact() {
+        EncodedKey key = (EncodedKey) encoder.encode(new SimpleKey(42L, "youmu", true));
+        // tag and count, then tag and value of each element
+        assertEquals(2 + 2 + 7 + 1, key.getBytes().length);
+        assertEquals(key, encoder.encode(new SimpleKey(42L, "youmu", true)));
+    }
+
+    @Test
+    public void typesAreKeptApart() {
+        assertNotEquals(encoder.encode(1L), encoder.encode(1));
+        assertNotEquals(encoder.encode("1"), encoder.encode(1L));
+        assertNotEquals(encoder.encode(new SimpleKey("a", "b")), encoder.encode("ab"));
+    }
+
+    @Test
+    public void longKeysAreDigested() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            name.append(i);
+        }
+        EncodedKey key = (EncodedKey) encoder.encode(name.toString());
+        assertEquals(17, key.getBytes().length);
+        assertNotEquals(key, encoder.encode(name.append('x').toString()));
+    }
+
+    @Test
+    public void otherKeysAreLeftAsTheyAre() {
+        Date date = new Date();
+        assertSame(date, encoder.encode(date));
+        SimpleKey simpleKey = new SimpleKey(1L, date);
+        assertSame(simpleKey, encoder.encode(simpleKey));
+    }
+}
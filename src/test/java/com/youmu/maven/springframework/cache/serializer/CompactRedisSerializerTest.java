@@ -0,0 +1,123 @@
+package com.youmu.maven.springframework.cache.serializer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import com.youmu.maven.springframework.cache.cache.ExpireableValue;
+
+public class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer();
+
+    @Test
+    public void builtInTypes() {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        map.put("id", 1L);
+        map.put(2, Arrays.asList("a", null, 3.5d, true));
+        map.put('c', new Date(1508112000000L));
+        map.put((short) -7, new BigDecimal("1.25"));
+        assertEquals(map, serializer.deserialize(serializer.serialize(map)));
+        assertNull(serializer.deserialize(serializer.serialize(null)));
+    }
+
+    @Test
+    public void registeredClassIsSmallerThanJava() {
+        serializer.register(User.class, 1);
+        serializer.register(Role.class, 2);
+        User user = new User(42, "youmu", Role.ADMIN);
+        byte[] bytes = serializer.serialize(new ExpireableValue(user, 1508112000000L, 3, 60000));
+        ExpireableValue value = (ExpireableValue) serializer.deserialize(bytes);
+        assertEquals(user, value.getValue());
+        assertEquals(60000, value.getExpire());
+        assertTrue(bytes.length * 4 < new JdkSerializationRedisSerializer()
+                .serialize(new ExpireableValue(user, 1508112000000L, 3, 60000)).length);
+    }
+
+    @Test
+    public void floatsTakeFourBytes() {
+        assertEquals(serializer.serialize(-1.5d).length - 4, serializer.serialize(-1.5f).length);
+        assertEquals(-1.5f, serializer.deserialize(serializer.serialize(-1.5f)));
+        serializer.register(Score.class, 3);
+        Score score = new Score(Float.NaN, 0.25f);
+        Score read = (Score) serializer.deserialize(serializer.serialize(score));
+        assertTrue(Float.isNaN(read.average));
+        assertEquals(0.25f, read.best, 0f);
+    }
+
+    @Test
+    public void largeValuesAreDeflated() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add("user" + (i % 10));
+        }
+        byte[] bytes = serializer.serialize(names);
+        assertTrue(bytes.length < 1000);
+        assertEquals(names, serializer.deserialize(bytes));
+    }
+
+    public enum Role {
+        USER, ADMIN
+    }
+
+    @SuppressWarnings("serial")
+    public static class User implements Serializable {
+
+        private long id;
+
+        private String name;
+
+        private Role role;
+
+        User() {
+        }
+
+        User(long id, String name, Role role) {
+            this.id = id;
+            this.name = name;
+            this.role = role;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof User)) {
+                return false;
+            }
+            User user = (User) other;
+            return id == user.id && name.equals(user.name) && role == user.role;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) id;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    public static class Score implements Serializable {
+
+        private float average;
+
+        private float best;
+
+        Score() {
+        }
+
+        Score(float average, float best) {
+            this.average = average;
+            this.best = best;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.interceptor.CacheOperation;
+import org.springframework.cache.interceptor.CacheOperationInvocationContext;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import com.youmu.maven.springframework.cache.ExpireableCacheableOperation;
+import com.youmu.maven.springframework.cache.cache.ExpireableCacheDecorator;
+
+public class DataRedisCacheResolverTest {
+
+    private FakeRedisConnectionFactory connectionFactory;
+
+    private DataRedisCacheResolver resolver;
+
+    @Before
+    public void setUp() {
+        connectionFactory = new FakeRedisConnectionFactory();
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+        RedisCacheManager cacheManager = new RedisCacheManager(redisTemplate);
+        cacheManager.setUsePrefix(true);
+        cacheManager.afterPropertiesSet();
+        resolver = new DataRedisCacheResolver(cacheManager);
+    }
+
+    @Test
+    public void operationsOfOneCacheKeepTheirExpire() {
+        Cache shortLived = resolve(operation("user", 10)).iterator().next();
+        Cache longLived = resolve(operation("user", 1000)).iterator().next();
+        shortLived.put("short", "youmu");
+        longLived.put("long", "youmu");
+        long shortTtl = connectionFactory.pTtl("user:short");
+        long longTtl = connectionFactory.pTtl("user:long");
+        assertTrue(shortTtl > 0 && shortTtl <= 10000);
+        assertTrue(longTtl > 10000 && longTtl <= 1000000);
+        assertEquals("youmu", shortLived.get("long").get());
+    }
+
+    @Test
+    public void cachesResolvedOncePerOperation() {
+        CacheOperation operation = operation("user", 10);
+        Collection<? extends Cache> caches = resolve(operation);
+        assertSame(caches, resolve(operation));
+        Cache other = resolve(operation("user", 1000)).iterator().next();
+        assertNotSame(caches.iterator().next(), other);
+        assertEquals(10000, ((ExpireableCacheDecorator) caches.iterator().next()).getExpire());
+        assertEquals(1000000, ((ExpireableCacheDecorator) other).getExpire());
+    }
+
+    private Collection<? extends Cache> resolve(final CacheOperation operation) {
+        return resolver.resolveCaches(new CacheOperationInvocationContext<CacheOperation>() {
+            @Override
+            public CacheOperation getOperation() {
+                return operation;
+            }
+
+            @Override
+            public Object getTarget() {
+                return this;
+            }
+
+            @Override
+            public Method getMethod() {
+                return null;
+            }
+
+            @Override
+            public Object[] getArgs() {
+                return new Object[0];
+            }
+        });
+    }
+
+    private static CacheOperation operation(String cacheName, long expire) {
+        ExpireableCacheableOperation.Builder builder = new ExpireableCacheableOperation.Builder();
+        builder.setName("find");
+        builder.setCacheName(cacheName);
+        builder.setExpire(expire);
+        builder.setTimeUnit(TimeUnit.SECONDS);
+        return builder.build();
+    }
+}
@@ -0,0 +1,265 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.ScanCursor;
+import org.springframework.data.redis.core.ScanIteration;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * In-process redis for tests, understands the commands used by the library and
+ * records every command name it receives.
+ */
+public class FakeRedisConnectionFactory implements RedisConnectionFactory {
+
+    private final Map<ByteBuffer, Entry> store = new ConcurrentHashMap<>();
+
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+
+    private volatile boolean recording = true;
+
+    private volatile long latency;
+
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * @param recording whether to record the command names, off for long runs
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * @param latency the milliseconds every command is delayed by
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @return the milliseconds the key has left, {@code -1} if it does not
+     *         expire and {@code -2} if it does not exist
+     */
+    public long pTtl(String key) {
+        Entry entry = store.get(ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8)));
+        if (null == entry) {
+            return -2;
+        }
+        return entry.deadline > 0 ? entry.deadline - System.currentTimeMillis() : -1;
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RedisConnection.class }, new ConnectionHandler());
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return false;
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return null;
+    }
+
+    protected Object handle(String command, Object[] args) throws Exception {
+        switch (command) {
+        case "get":
+            return read((byte[]) args[0]);
+        case "mGet": {
+            List<byte[]> values = new ArrayList<>();
+            for (Object key : (Object[]) args[0]) {
+                values.add(read((byte[]) key));
+            }
+            return values;
+        }
+        case "set":
+            if (args.length == 2) {
+                write((byte[]) args[0], (byte[]) args[1], 0);
+                return null;
+            }
+            Expiration expiration = (Expiration) args[2];
+            if (args[3] == RedisStringCommands.SetOption.SET_IF_ABSENT
+                    && null != read((byte[]) args[0])) {
+                return null;
+            }
+            write((byte[]) args[0], (byte[]) args[1],
+                    expiration.isPersistent() ? 0 : expiration.getExpirationTimeInMilliseconds());
+            return null;
+        case "exists":
+            return null != read((byte[]) args[0]);
+        case "expire": {
+            byte[] value = read((byte[]) args[0]);
+            if (null == value) {
+                return false;
+            }
+            write((byte[]) args[0], value, TimeUnit.SECONDS.toMillis((Long) args[1]));
+            return true;
+        }
+        case "pSetEx":
+            write((byte[]) args[0], (byte[]) args[2], (Long) args[1]);
+            return null;
+        case "eval": {
+            Object[] keysAndArgs = (Object[]) args[3];
+            if (new String((byte[]) args[0], StandardCharsets.UTF_8).contains("'KEYS'")) {
+                // the clear by prefix script of RedisCache
+                long deleted = 0;
+                for (byte[] key : matching(
+                        new String((byte[]) keysAndArgs[0], StandardCharsets.UTF_8))) {
+                    store.remove(ByteBuffer.wrap(key));
+                    deleted++;
+                }
+                return deleted;
+            }
+            // the put if absent script of RedisExpireableCache
+            byte[] existing = read((byte[]) keysAndArgs[0]);
+            if (null != existing) {
+                return existing;
+            }
+            write((byte[]) keysAndArgs[0], (byte[]) keysAndArgs[1],
+                    Long.parseLong(new String((byte[]) keysAndArgs[2], StandardCharsets.UTF_8)));
+            return null;
+        }
+        case "del": {
+            long deleted = 0;
+            for (Object key : (Object[]) args[0]) {
+                if (null != store.remove(ByteBuffer.wrap((byte[]) key))) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+        case "incr":
+        case "incrBy": {
+            byte[] current = read((byte[]) args[0]);
+            long value = (null == current ? 0
+                    : Long.parseLong(new String(current, StandardCharsets.UTF_8)))
+                    + (args.length > 1 ? (Long) args[1] : 1);
+            write((byte[]) args[0], String.valueOf(value).getBytes(StandardCharsets.UTF_8), 0);
+            return value;
+        }
+        case "scan":
+            return scan((ScanOptions) args[0]);
+        case "close":
+        case "openPipeline":
+        case "multi":
+            return null;
+        case "isClosed":
+        case "isPipelined":
+        case "isQueueing":
+            return false;
+        case "closePipeline":
+        case "exec":
+            return Collections.emptyList();
+        default:
+            throw new UnsupportedOperationException(command);
+        }
+    }
+
+    private byte[] read(byte[] key) {
+        ByteBuffer storeKey = ByteBuffer.wrap(key);
+        Entry entry = store.get(storeKey);
+        if (null == entry) {
+            return null;
+        }
+        if (entry.deadline > 0 && entry.deadline <= System.currentTimeMillis()) {
+            store.remove(storeKey, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private void write(byte[] key, byte[] value, long ttl) {
+        store.put(ByteBuffer.wrap(key),
+                new Entry(value, ttl > 0 ? System.currentTimeMillis() + ttl : 0));
+    }
+
+    private List<byte[]> matching(String pattern) {
+        List<byte[]> keys = new ArrayList<>();
+        for (ByteBuffer key : store.keySet()) {
+            String name = new String(key.array(), StandardCharsets.UTF_8);
+            if (null == pattern || PatternMatchUtils.simpleMatch(pattern, name)) {
+                keys.add(key.array());
+            }
+        }
+        return keys;
+    }
+
+    private ScanCursor<byte[]> scan(final ScanOptions options) {
+        final List<byte[]> keys = matching(options.getPattern());
+        return new ScanCursor<byte[]>(options) {
+            @Override
+            protected ScanIteration<byte[]> doScan(long cursorId, ScanOptions options) {
+                return new ScanIteration<>(0, keys);
+            }
+        }.open();
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String command = method.getName();
+            if (recording && !"close".equals(command) && !"isClosed".equals(command)
+                    && !command.startsWith("isPipelined") && !command.startsWith("isQueueing")) {
+                commands.add(command);
+            }
+            if (latency > 0 && !"close".equals(command)) {
+                Thread.sleep(latency);
+            }
+            try {
+                return handle(command, null == args ? new Object[0] : args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final byte[] value;
+
+        private final long deadline;
+
+        private Entry(byte[] value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.youmu.maven.springframework.cache.cache.CircuitBreaker;
+import com.youmu.maven.springframework.cache.cache.CircuitBreakerExpireableCache;
+import com.youmu.maven.springframework.cache.serializer.CompactRedisSerializer;
+
+public class RedisExpireableCacheTest {
+
+    private FakeRedisConnectionFactory connectionFactory;
+
+    private RedisExpireableCache cache;
+
+    @Before
+    public void setUp() {
+        connectionFactory = new FakeRedisConnectionFactory();
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        RedisExpireableCacheManager cacheManager = new RedisExpireableCacheManager(redisTemplate);
+        cacheManager.afterPropertiesSet();
+        cache = (RedisExpireableCache) cacheManager.getCache("user");
+        // the generation of the cache is read once per refresh interval
+        cache.get("warm");
+        connectionFactory.getCommands().clear();
+    }
+
+    @Test
+    public void putIsASingleCommand() {
+        cache.put("id", "youmu", 1000);
+        assertEquals(Arrays.asList("set"), connectionFactory.getCommands());
+        assertEquals("youmu", cache.get("id").get());
+    }
+
+    @Test
+    public void slowRedisIsBypassed() throws InterruptedException {
+        CircuitBreakerExpireableCache guarded = new CircuitBreakerExpireableCache(cache,
+                new CircuitBreaker("user", 10, 50, 4, 50, 1, null));
+        guarded.put("id", "youmu", 1000);
+        connectionFactory.setLatency(20);
+        // three slow reads of the last four calls open it
+        for (int i = 0; i < 3; i++) {
+            assertEquals("youmu", guarded.get("id").get());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, guarded.getCircuitBreaker().getState());
+        connectionFactory.getCommands().clear();
+        assertNull(guarded.get("id"));
+        assertEquals(Collections.emptyList(), connectionFactory.getCommands());
+        // the skipped write only deletes the older value
+        guarded.put("id", "yuyuko", 1000);
+        assertEquals(Arrays.asList("del"), connectionFactory.getCommands());
+        connectionFactory.setLatency(0);
+        Thread.sleep(60);
+        assertNull(guarded.get("id"));
+        assertEquals(CircuitBreaker.State.CLOSED, guarded.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void putExpires() throws InterruptedException {
+        cache.put("id", "youmu", 20);
+        Thread.sleep(50);
+        assertNull(cache.get("id"));
+    }
+
+    @Test
+    public void putIfAbsentReturnsExisting() {
+        assertNull(cache.putIfAbsent("id", "youmu", 1000));
+        assertEquals("youmu", cache.putIfAbsent("id", "other", 1000).get());
+        assertEquals("youmu", cache.get("id").get());
+    }
+
+    @Test
+    public void batchIsOneRoundTrip() {
+        Map<Object, Object> entries = new LinkedHashMap<>();
+        entries.put("1", "youmu");
+        entries.put("2", "yuyuko");
+        cache.putAll(entries, 1000);
+        assertEquals(Arrays.asList("openPipeline", "set", "set", "closePipeline"),
+                connectionFactory.getCommands());
+        connectionFactory.getCommands().clear();
+        List<ValueWrapper> values = cache.getAll(Arrays.asList("2", "3", "1"));
+        assertEquals(Arrays.asList("mGet"), connectionFactory.getCommands());
+        assertEquals("yuyuko", values.get(0).get());
+        assertNull(values.get(1));
+        assertEquals("youmu", values.get(2).get());
+    }
+
+    @Test
+    public void valueSerializerPerCacheName() {
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        RedisExpireableCacheManager cacheManager = new RedisExpireableCacheManager(redisTemplate);
+        cacheManager.setValueSerializers(Collections
+                .<String, RedisSerializer<Object>> singletonMap("compact", new CompactRedisSerializer()));
+        cacheManager.afterPropertiesSet();
+        RedisExpireableCache compact = (RedisExpireableCache) cacheManager.getCache("compact");
+        compact.put("id", "youmu");
+        assertEquals("youmu", compact.get("id").get());
+        byte[] bytes = connectionFactory.getConnection().get(compact.toKeyBytes("id"));
+        // format, tag, length and the utf-8 bytes
+        assertEquals(8, bytes.length);
+    }
+
+    @Test
+    public void evictionsAreOneDel() {
+        cache.put("1", "youmu", 1000);
+        cache.put("2", "yuyuko", 1000);
+        connectionFactory.getCommands().clear();
+        cache.evictAll(Arrays.asList("1", "2"));
+        assertEquals(Arrays.asList("del"), connectionFactory.getCommands());
+        assertNull(cache.get("1"));
+        assertNull(cache.get("2"));
+    }
+
+    @Test
+    public void clearIsOneIncr() {
+        cache.put("id", "youmu");
+        connectionFactory.getConnection().set("other".getBytes(), "value".getBytes());
+        connectionFactory.getCommands().clear();
+        cache.clear();
+        assertEquals(Arrays.asList("incr"), connectionFactory.getCommands());
+        assertNull(cache.get("id"));
+        cache.put("id", "yuyuko");
+        assertEquals("yuyuko", cache.get("id").get());
+    }
+
+    @Test
+    public void purgeOnlyTouchesItsPrefix() {
+        cache.put("id", "youmu");
+        cache.clear();
+        cache.put("id", "yuyuko");
+        connectionFactory.getConnection().set("other".getBytes(), "value".getBytes());
+        cache.purge();
+        assertNull(cache.get("id"));
+        // the other key and the generation counter
+        assertEquals(2, connectionFactory.size());
+    }
+
+    @Test
+    public void purgeKeepsTheGeneration() {
+        cache.put("id", "youmu");
+        cache.clear();
+        cache.purge();
+        cache.clear();
+        assertNull(cache.get("id"));
+        assertEquals("2", new String(connectionFactory.getConnection()
+                .get("user:~version".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+    }
+}
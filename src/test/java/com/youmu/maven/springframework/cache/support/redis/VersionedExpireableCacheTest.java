@@ -0,0 +1,156 @@
+package com.youmu.maven.springframework.cache.support.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import com.youmu.maven.springframework.cache.cache.LocalExpireableCache;
+
+public class VersionedExpireableCacheTest {
+
+    private FakeRedisConnectionFactory connectionFactory;
+
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    private LocalExpireableCache target;
+
+    @Before
+    public void setUp() {
+        connectionFactory = new FakeRedisConnectionFactory();
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        target = new LocalExpireableCache("user", 64, Long.MAX_VALUE, null, 0, true);
+    }
+
+    @Test
+    public void clearIsOneIncr() {
+        VersionedExpireableCache cache = createCache(60000);
+        cache.put("id", "youmu");
+        assertEquals("youmu", cache.get("id").get());
+        connectionFactory.getCommands().clear();
+        cache.clear();
+        assertEquals(Arrays.asList("incr"), connectionFactory.getCommands());
+        assertNull(cache.get("id"));
+        assertEquals("youmu", target.get("0~id").get());
+    }
+
+    @Test
+    public void otherNodesFollowWithinRefreshInterval() throws InterruptedException {
+        VersionedExpireableCache cache = createCache(20);
+        VersionedExpireableCache other = createCache(20);
+        cache.put(1L, "youmu");
+        assertEquals("youmu", other.get(1L).get());
+        cache.clear();
+        Thread.sleep(50);
+        assertNull(other.get(1L));
+    }
+
+    @Test
+    public void refreshNeverMovesBack() {
+        VersionedExpireableCache cache = createCache(60000);
+        cache.clear();
+        cache.clear();
+        // a refresh that read the counter before the last clear
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) {
+                connection.set("user~version".getBytes(StandardCharsets.UTF_8),
+                        "1".getBytes(StandardCharsets.UTF_8));
+                return null;
+            }
+        });
+        cache.getVersion().refresh();
+        assertEquals(2, cache.getVersion().get());
+        // a lost counter neither moves back nor reuses a cleared generation
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) {
+                connection.del("user~version".getBytes(StandardCharsets.UTF_8));
+                return null;
+            }
+        });
+        cache.getVersion().refresh();
+        assertEquals(2, cache.getVersion().get());
+        cache.clear();
+        assertEquals(3, cache.getVersion().get());
+    }
+
+    @Test
+    public void firstReadWaitsForTheGeneration() throws InterruptedException {
+        createCache(60000).clear();
+        final VersionedExpireableCache cache = createCache(60000);
+        connectionFactory.setLatency(20);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger stale = new AtomicInteger();
+        Thread[] readers = new Thread[8];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    if (cache.getVersion().get() != 1) {
+                        stale.incrementAndGet();
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        start.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, stale.get());
+    }
+
+    @Test
+    public void purgeDropsEveryGeneration() {
+        VersionedExpireableCache cache = createCache(60000);
+        cache.put("id", "youmu");
+        cache.clear();
+        cache.put("id", "yuyuko");
+        cache.purge();
+        assertEquals(0, target.estimatedSize());
+    }
+
+    @Test
+    public void purgeKeepsTheGeneration() {
+        RedisCache redisCache = new RedisCache("user", "user:".getBytes(StandardCharsets.UTF_8),
+                redisTemplate, 0);
+        VersionedExpireableCache cache = new VersionedExpireableCache(
+                new ExpireableRedisCacheAdapter(redisCache,
+                        "user:".getBytes(StandardCharsets.UTF_8), redisTemplate),
+                new RedisCacheVersion("user~version".getBytes(StandardCharsets.UTF_8),
+                        redisTemplate, 60000));
+        cache.put("id", "youmu");
+        cache.clear();
+        long purged = cache.getVersion().get();
+        cache.purge();
+        cache.clear();
+        assertNull(cache.get("id"));
+        assertTrue(cache.getVersion().get() > purged);
+        cache.getVersion().refresh();
+        assertTrue(cache.getVersion().get() > purged);
+    }
+
+    private VersionedExpireableCache createCache(long refreshInterval) {
+        return new VersionedExpireableCache(target, new RedisCacheVersion(
+                "user~version".getBytes(StandardCharsets.UTF_8), redisTemplate, refreshInterval));
+    }
+}
@@ -0,0 +1,121 @@
+package com.youmu.maven.springframework.cache.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class GroupCommitTest {
+
+    @Test
+    public void concurrentItemsCommittedTogether() throws Exception {
+        final List<List<Integer>> commits = new CopyOnWriteArrayList<>();
+        BlockingGroupCommit groupCommit = new BlockingGroupCommit() {
+            @Override
+            protected void commitUnblocked(List<Integer> items) {
+                commits.add(new ArrayList<>(items));
+            }
+        };
+        List<Future<Object>> submits = groupCommit.submitConcurrently(9);
+        for (Future<Object> submitted : submits) {
+            submitted.get();
+        }
+        assertEquals(2, commits.size());
+        assertEquals(8, commits.get(1).size());
+    }
+
+    @Test
+    public void failureReachesEveryCaller() throws Exception {
+        BlockingGroupCommit groupCommit = new BlockingGroupCommit() {
+            @Override
+            protected void commitUnblocked(List<Integer> items) {
+                throw new IllegalStateException("redis is down");
+            }
+        };
+        List<Future<Object>> submits = groupCommit.submitConcurrently(9);
+        for (Future<Object> submitted : submits) {
+            try {
+                submitted.get();
+                fail("no failure");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof IllegalStateException);
+                assertTrue(ex.getCause().getMessage().contains("down"));
+            }
+        }
+    }
+
+    /**
+     * Holds the first commit until every other caller queued its item, so
+     * they are committed together in the second one.
+     */
+    private abstract static class BlockingGroupCommit extends GroupCommit<Integer> {
+
+        private final CountDownLatch firstCommit = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private volatile CountDownLatch queued;
+
+        private List<Future<Object>> submitConcurrently(int callers) throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(callers);
+            try {
+                List<Future<Object>> submits = new ArrayList<>();
+                submits.add(executor.submit(GroupCommitTest.submit(this, 0)));
+                firstCommit.await();
+                queued = new CountDownLatch(callers - 1);
+                for (int i = 1; i < callers; i++) {
+                    submits.add(executor.submit(GroupCommitTest.submit(this, i)));
+                }
+                queued.await();
+                release.countDown();
+                return submits;
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        @Override
+        protected void queued(Collection<? extends Integer> items) {
+            CountDownLatch latch = queued;
+            if (null != latch) {
+                latch.countDown();
+            }
+        }
+
+        @Override
+        protected void commit(List<Integer> items) {
+            firstCommit.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            commitUnblocked(items);
+        }
+
+        protected abstract void commitUnblocked(List<Integer> items);
+    }
+
+    private static Callable<Object> submit(final GroupCommit<Integer> groupCommit, final int item) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() {
+                groupCommit.submit(Collections.singletonList(item));
+                return null;
+            }
+        };
+    }
+}